@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.mongodb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.springsource.insight.plugin.mongodb.MongoArgumentUtils;
+import com.springsource.insight.util.StringUtil;
+
+/**
+ * Compares the former full <code>DBObject.toString()</code> followed by trimming
+ * with the bounded rendering now used by {@link MongoArgumentUtils} on large nested
+ * documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class MongoArgumentUtilsBenchmark {
+    private static final int MAX_LENGTH = 256;
+
+    @Param({ "100", "10000", "100000" })
+    public int entries;
+
+    private DBObject doc;
+
+    @Setup
+    public void setUp() {
+        BasicDBList items = new BasicDBList();
+        for (int index = 0; index < entries; index++) {
+            items.add(new BasicDBObject("index", Integer.valueOf(index))
+                    .append("name", "item-" + index)
+                    .append("nested", new BasicDBObject("value", Long.valueOf(index * 1000L))));
+        }
+        doc = new BasicDBObject("items", items);
+    }
+
+    @Benchmark
+    public String full() {
+        return StringUtil.trimWithEllipsis(doc.toString(), MAX_LENGTH);
+    }
+
+    @Benchmark
+    public String bounded() {
+        return MongoArgumentUtils.toString(doc, MAX_LENGTH);
+    }
+}
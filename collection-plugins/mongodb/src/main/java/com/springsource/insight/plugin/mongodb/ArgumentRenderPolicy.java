@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import java.util.List;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationList;
+
+/**
+ * Decides when the arguments of a MongoDB operation are rendered. By default
+ * they are rendered as soon as the operation is entered. If a slow-operation
+ * threshold is configured (see {@link #SLOW_THRESHOLD_PROPERTY}) the arguments
+ * are only captured by reference and rendered once the call returns - provided
+ * it took at least the threshold or failed. Fast calls therefore carry only
+ * the collection, the method and the timing. <B>Note:</B> deferred arguments
+ * are rendered as they are at exit - e.g., inserted documents include the
+ * <code>_id</code> assigned by the driver.
+ */
+final class ArgumentRenderPolicy {
+    /**
+     * Name of the system property holding the slow-operation threshold (msec.) -
+     * negative (the default) renders the arguments of all operations on entry
+     */
+    static final String SLOW_THRESHOLD_PROPERTY = "insight.plugin.mongodb.args.slowThreshold";
+    public static final long DEFAULT_SLOW_THRESHOLD = (-1L);
+    /**
+     * Renders the arguments of all operations on entry
+     */
+    public static final ArgumentRenderPolicy EAGER = new ArgumentRenderPolicy(DEFAULT_SLOW_THRESHOLD);
+
+    private final long thresholdNanos;
+
+    /**
+     * @param slowThreshold The slow-operation threshold (msec.) - negative if
+     * the arguments are to be rendered on entry
+     */
+    ArgumentRenderPolicy(long slowThreshold) {
+        this.thresholdNanos = (slowThreshold < 0L) ? (-1L) : slowThreshold * 1000000L;
+    }
+
+    static ArgumentRenderPolicy fromSystemProperties() {
+        long slowThreshold = Long.getLong(SLOW_THRESHOLD_PROPERTY, DEFAULT_SLOW_THRESHOLD).longValue();
+        return (slowThreshold < 0L) ? EAGER : new ArgumentRenderPolicy(slowThreshold);
+    }
+
+    /**
+     * @return <code>true</code> if the arguments rendering is deferred to the
+     * operation exit
+     */
+    boolean isDeferred() {
+        return thresholdNanos >= 0L;
+    }
+
+    /**
+     * @param durationNanos The operation duration (nanoseconds)
+     * @param failed <code>true</code> if the operation threw an exception
+     * @return <code>true</code> if the deferred arguments should be rendered
+     */
+    boolean isRendered(long durationNanos, boolean failed) {
+        return failed || (!isDeferred()) || (durationNanos >= thresholdNanos);
+    }
+
+    /**
+     * Renders the arguments as the <code>args</code> list of the operation
+     * @param op The {@link Operation}
+     * @param args The operation arguments
+     * @return The same operation
+     */
+    static Operation render(Operation op, Object[] args) {
+        OperationList opList = op.createList("args");
+        List<String> values = MongoArgumentUtils.toString(args);
+        for (String arg : values) {
+            opList.add(arg);
+        }
+        return op;
+    }
+}
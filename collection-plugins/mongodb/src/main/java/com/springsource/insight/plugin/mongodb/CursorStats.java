@@ -0,0 +1,106 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Accumulates the iteration of a single {@link com.mongodb.DBCursor} - the number
+ * of returned documents, the time spent inside the driver <code>next()/hasNext()</code>
+ * calls and the time the application spent between these calls - so that the
+ * whole iteration is reported as a single operation once the cursor is exhausted
+ * or closed. <B>Note:</B> not thread-safe - like the cursor itself.
+ */
+final class CursorStats {
+    public static final String EXHAUSTED = "exhausted";
+    public static final String CLOSED = "closed";
+    public static final String FAILED = "failed";
+
+    private int documents;
+    private long firstCallTime, callStartTime, lastCallEndTime;
+    private long driverNanos, applicationNanos;
+    private boolean reported;
+
+    CursorStats() {
+        super();
+    }
+
+    /**
+     * @param now The {@link System#nanoTime()} at which a <code>next()/hasNext()</code>
+     * call started
+     */
+    void callStarted(long now) {
+        if (firstCallTime == 0L) {
+            firstCallTime = now;
+        } else if (lastCallEndTime != 0L) {
+            applicationNanos += Math.max(0L, now - lastCallEndTime);
+        }
+        callStartTime = now;
+    }
+
+    /**
+     * @param now The {@link System#nanoTime()} at which the call ended
+     * @param returnedDocument <code>true</code> if the call returned a document
+     */
+    void callEnded(long now, boolean returnedDocument) {
+        driverNanos += Math.max(0L, now - callStartTime);
+        lastCallEndTime = now;
+        if (returnedDocument) {
+            documents++;
+        }
+    }
+
+    int getDocuments() {
+        return documents;
+    }
+
+    long getDriverNanos() {
+        return driverNanos;
+    }
+
+    long getApplicationNanos() {
+        return applicationNanos;
+    }
+
+    /**
+     * @return <code>true</code> if the iteration was already reported - any later
+     * call on the cursor is ignored
+     */
+    boolean isReported() {
+        return reported;
+    }
+
+    /**
+     * Adds the iteration counters to the operation and marks the iteration as reported
+     * @param op The cursor {@link Operation}
+     * @param endReason Why the iteration ended - {@link #EXHAUSTED}, {@link #CLOSED} or {@link #FAILED}
+     * @param getMores Number of batches retrieved after the initial query - negative if unknown
+     */
+    Operation applyTo(Operation op, String endReason, int getMores) {
+        reported = true;
+        op.put("endReason", endReason)
+          .put("documents", documents)
+          .put("driverTime", driverNanos / 1000L)
+          .put("applicationTime", applicationNanos / 1000L)
+          ;
+        if (getMores >= 0) {
+            op.put("getMores", getMores);
+        }
+        return op;
+    }
+}
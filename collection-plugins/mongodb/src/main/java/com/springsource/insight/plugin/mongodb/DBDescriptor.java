@@ -0,0 +1,85 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import com.mongodb.DB;
+import com.mongodb.Mongo;
+import com.mongodb.ServerAddress;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Immutable snapshot of the {@link DB} data stamped onto every MongoDB
+ * {@link Operation} - the database name and the address of the server the
+ * driver currently talks to. Resolved once and cached by {@link DBDescriptorCache}
+ * for as long as the driver keeps the same {@link ServerAddress} instance.
+ */
+final class DBDescriptor {
+    private final String dbName;
+    private final ServerAddress address;
+    private final String host;
+    private final Integer port;
+
+    DBDescriptor(DB db, ServerAddress address) {
+        this.dbName = db.getName();
+        this.address = address;
+        this.host = (address == null) ? null : address.getHost();
+        this.port = (address == null) ? null : Integer.valueOf(address.getPort());
+    }
+
+    /**
+     * @param db The {@link DB}
+     * @return The {@link ServerAddress} the driver currently talks to - <code>null</code>
+     * if unknown. For a replica set it changes when a new master is elected
+     */
+    static ServerAddress getCurrentAddress(DB db) {
+        Mongo mongo = db.getMongo();
+        return (mongo == null) ? null : mongo.getAddress();
+    }
+
+    String getDbName() {
+        return dbName;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    Integer getPort() {
+        return port;
+    }
+
+    /**
+     * @param current The current {@link ServerAddress} of the database
+     * @return <code>true</code> if this descriptor was resolved for the same
+     * address instance - an identity check, so it costs nothing per operation
+     */
+    boolean isCurrent(ServerAddress current) {
+        return address == current;
+    }
+
+    Operation applyTo(Operation op) {
+        op.put("dbName", dbName);
+        if (host != null) {
+            op.put("host", host);
+        }
+        if (port != null) {
+            op.put("port", port.intValue());
+        }
+        return op;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.DB;
+import com.mongodb.ServerAddress;
+
+/**
+ * Weak-keyed cache of {@link DBDescriptor}s. An entry is built the first time
+ * a {@link DB} is seen and rebuilt whenever its {@link com.mongodb.Mongo} reports
+ * a different {@link ServerAddress} instance (e.g., a replica-set fail-over) -
+ * it is dropped when the database is garbage collected. <B>Note:</B> the entries
+ * are a copy-on-write array, so the per-operation lookup takes no lock - an
+ * application uses only a handful of databases, and they are looked up far
+ * more often than they are added.
+ */
+final class DBDescriptorCache {
+    private static final DBDescriptorCache instance = new DBDescriptorCache();
+
+    // replaced - under the instance lock - whenever an entry is added or rebuilt
+    private volatile Entry[] entries = new Entry[0];
+
+    DBDescriptorCache() {
+        super();
+    }
+
+    static DBDescriptorCache getInstance() {
+        return instance;
+    }
+
+    DBDescriptor get(DB db) {
+        ServerAddress address = DBDescriptor.getCurrentAddress(db);
+        DBDescriptor descriptor = find(entries, db);
+        if ((descriptor != null) && descriptor.isCurrent(address)) {
+            return descriptor;
+        }
+
+        return update(db, address);
+    }
+
+    int size() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized DBDescriptor update(DB db, ServerAddress address) {
+        Entry[] current = entries;
+        // another thread may have updated it in the meantime
+        DBDescriptor descriptor = find(current, db);
+        if ((descriptor != null) && descriptor.isCurrent(address)) {
+            return descriptor;
+        }
+
+        descriptor = new DBDescriptor(db, address);
+        // drop the replaced entry and those of garbage collected databases
+        List<Entry> updated = new ArrayList<Entry>(current.length + 1);
+        for (Entry entry : current) {
+            DB key = entry.get();
+            if ((key != null) && (key != db)) {
+                updated.add(entry);
+            }
+        }
+        updated.add(new Entry(db, descriptor));
+        entries = updated.toArray(new Entry[updated.size()]);
+        return descriptor;
+    }
+
+    private static DBDescriptor find(Entry[] entries, DB db) {
+        for (Entry entry : entries) {
+            if (entry.get() == db) {
+                return entry.descriptor;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry extends WeakReference<DB> {
+        final DBDescriptor descriptor;
+
+        @SuppressWarnings("hiding")
+        Entry(DB db, DBDescriptor descriptor) {
+            super(db);
+            this.descriptor = descriptor;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.springsource.insight.plugin.mongodb;
 
+import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -34,6 +35,7 @@ import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.mongodb.util.JSON;
 
 /**
  * Utilities for converting method arguments for MongoDB-related operations
@@ -56,10 +58,16 @@ public class MongoArgumentUtils {
      * With care, we can treat these MongoDB classes simply too
      */
     private static final Class<?>[] SIMPLE_MONGO_CLASSES = new Class<?>[]{
-            ObjectId.class, CommandResult.class, BasicDBList.class,
-            BasicDBObject.class, DBCollection.class, WriteConcern.class,
+            ObjectId.class, DBCollection.class, WriteConcern.class,
             WriteResult.class};
 
+    /**
+     * These documents may be arbitrarily large, so they are rendered only up
+     * to the requested length - see {@link BoundedRenderer}
+     */
+    private static final Class<?>[] DOCUMENT_CLASSES = new Class<?>[]{
+            CommandResult.class, BasicDBList.class, BasicDBObject.class};
+
     /**
      * A little helper interface to convert an {@link Object} to a
      * {@link String}
@@ -69,9 +77,11 @@ public class MongoArgumentUtils {
     private interface StringForm<T extends Object> {
         /**
          * @param object guaranteed non-null
+         * @param maxLength the length the result is going to be trimmed to -
+         * a form may use it to avoid generating what is going to be trimmed
          * @return
          */
-        String stringify(T object);
+        String stringify(T object, int maxLength);
     }
 
     /**
@@ -80,17 +90,27 @@ public class MongoArgumentUtils {
      * it
      */
     private static final StringForm<Object> DefaultStringForm = new StringForm<Object>() {
-        public String stringify(final Object object) {
+        public String stringify(final Object object, final int maxLength) {
             return object.toString();
         }
     };
 
+    /**
+     * Same output as the document {@link DBObject#toString()}, but stops as soon
+     * as the requested length is exceeded instead of serializing the whole document
+     */
+    private static final StringForm<Object> DocumentStringForm = new StringForm<Object>() {
+        public String stringify(final Object object, final int maxLength) {
+            return render(object, maxLength);
+        }
+    };
+
     /**
      * For a {@link DBCursor}, we get the {@link DBCollection} name, the query
      * and the keys wanted
      */
     private static final StringForm<DBCursor> DBCursorStringForm = new StringForm<DBCursor>() {
-        public String stringify(final DBCursor cursor) {
+        public String stringify(final DBCursor cursor, final int maxLength) {
             return "DBCursor(" + MongoArgumentUtils.toString(cursor.getQuery()) + ", "
                     + MongoArgumentUtils.toString(cursor.getKeysWanted()) + ")";
         }
@@ -101,7 +121,7 @@ public class MongoArgumentUtils {
      * converted to a {@link DBObject}[]
      */
     private static final StringForm<DBObject[]> DBObjectArrayStringForm = new StringForm<DBObject[]>() {
-        public String stringify(final DBObject[] array) {
+        public String stringify(final DBObject[] array, final int maxLength) {
             return "DBObject" + MongoArgumentUtils.toString(array);
         }
     };
@@ -129,6 +149,10 @@ public class MongoArgumentUtils {
                 put(cls, DefaultStringForm);
             }
 
+            for (Class<?> cls : DOCUMENT_CLASSES) {
+                put(cls, DocumentStringForm);
+            }
+
             put(DBCursor.class, DBCursorStringForm);
             put(DBObject[].class, DBObjectArrayStringForm);
         }
@@ -197,14 +221,196 @@ public class MongoArgumentUtils {
                 .get(cls);
 
         if (stringForm != null) {
-            return StringUtil.trimWithEllipsis(stringForm.stringify(object), maxLength);
+            return StringUtil.trimWithEllipsis(stringForm.stringify(object, maxLength), maxLength);
         }
 
         return cls.getSimpleName();
     }
 
     private static String toString(final DBObject dbObject) {
-        return dbObject == null ? null : trimWithEllipsis(dbObject.toString());
+        return dbObject == null ? null : trimWithEllipsis(render(dbObject, MAX_STRING_LENGTH));
+    }
+
+    /**
+     * Renders a value the way the driver serializes it to JSON, but only up to
+     * one character beyond <code>maxLength</code> - just enough for the caller
+     * to know that the result has to be trimmed.
+     *
+     * @param value the value to render - may be <code>null</code>
+     * @param maxLength the length the result is going to be trimmed to
+     * @return the (possibly partial) JSON rendering
+     */
+    static String render(final Object value, final int maxLength) {
+        BoundedRenderer renderer = new BoundedRenderer(Math.max(0, maxLength) + 1);
+        renderer.appendValue(value);
+        return renderer.toString();
+    }
+
+    /**
+     * Walks a {@link DBObject}/{@link BasicDBList} tree and writes the same
+     * output as {@link JSON#serialize(Object)} into a buffer that never grows
+     * beyond the limit - each append returns <code>false</code> once the limit
+     * is reached so that the walk stops right away. Leaf values the walk does
+     * not know (e.g., dates, patterns) are delegated to the driver serializer.
+     */
+    private static final class BoundedRenderer {
+        private final int limit;
+        private final StringBuilder buf;
+
+        BoundedRenderer(final int limit) {
+            this.limit = limit;
+            this.buf = new StringBuilder(Math.min(limit, MAX_STRING_LENGTH + 1));
+        }
+
+        boolean appendValue(final Object value) {
+            if (value == null) {
+                return append(" null ");
+            }
+            if ((value instanceof Number) || (value instanceof Boolean)) {
+                return append(value.toString());
+            }
+            if (value instanceof String) {
+                return appendString((String) value);
+            }
+            if (value instanceof Iterable<?>) {
+                return appendIterable((Iterable<?>) value);
+            }
+            if (value instanceof ObjectId) {
+                return append("{ \"$oid\" : ") && appendString(value.toString()) && append("}");
+            }
+            if (value instanceof DBObject) {
+                DBObject dbObject = (DBObject) value;
+                return appendEntries(dbObject.keySet(), dbObject, null);
+            }
+            if (value instanceof Map<?, ?>) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                return appendEntries(map.keySet(), null, map);
+            }
+            if ((value.getClass().isArray()) && (!(value instanceof byte[]))) {
+                return appendArray(value);
+            }
+
+            return append(JSON.serialize(value));
+        }
+
+        private boolean appendEntries(final Iterable<?> keys, final DBObject dbObject, final Map<?, ?> map) {
+            if (!append("{ ")) {
+                return false;
+            }
+
+            boolean first = true;
+            for (Object key : keys) {
+                if ((!first) && (!append(" , "))) {
+                    return false;
+                }
+                first = false;
+
+                Object value = (dbObject != null) ? dbObject.get(String.valueOf(key)) : map.get(key);
+                if ((!appendString(String.valueOf(key))) || (!append(" : ")) || (!appendValue(value))) {
+                    return false;
+                }
+            }
+            return append("}");
+        }
+
+        private boolean appendIterable(final Iterable<?> values) {
+            if (!append("[ ")) {
+                return false;
+            }
+
+            boolean first = true;
+            for (Object value : values) {
+                if ((!first) && (!append(" , "))) {
+                    return false;
+                }
+                first = false;
+
+                if (!appendValue(value)) {
+                    return false;
+                }
+            }
+            return append("]");
+        }
+
+        private boolean appendArray(final Object array) {
+            if (!append("[ ")) {
+                return false;
+            }
+
+            int length = Array.getLength(array);
+            for (int index = 0; index < length; index++) {
+                if ((index > 0) && (!append(" , "))) {
+                    return false;
+                }
+                if (!appendValue(Array.get(array, index))) {
+                    return false;
+                }
+            }
+            return append("]");
+        }
+
+        private boolean appendString(final String value) {
+            if (!append('"')) {
+                return false;
+            }
+
+            for (int index = 0; index < value.length(); index++) {
+                char c = value.charAt(index);
+                boolean room;
+                switch (c) {
+                    case '\\':
+                        room = append("\\\\");
+                        break;
+                    case '"':
+                        room = append("\\\"");
+                        break;
+                    case '\n':
+                        room = append("\\n");
+                        break;
+                    case '\r':
+                        room = append("\\r");
+                        break;
+                    case '\t':
+                        room = append("\\t");
+                        break;
+                    case '\b':
+                        room = append("\\b");
+                        break;
+                    default:
+                        // the driver drops the other control characters
+                        room = (c < 32) || append(c);
+                }
+
+                if (!room) {
+                    return false;
+                }
+            }
+            return append('"');
+        }
+
+        private boolean append(final char c) {
+            if (buf.length() >= limit) {
+                return false;
+            }
+            buf.append(c);
+            return true;
+        }
+
+        private boolean append(final String s) {
+            int room = limit - buf.length();
+            if (s.length() <= room) {
+                buf.append(s);
+                return true;
+            }
+
+            buf.append(s, 0, room);
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return buf.toString();
+        }
     }
 
     public static String trimWithEllipsis(final String string) {
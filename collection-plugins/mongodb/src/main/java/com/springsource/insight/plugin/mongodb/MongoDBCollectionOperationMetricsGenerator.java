@@ -14,13 +14,61 @@
  * limitations under the License.
  */
 
+
 package com.springsource.insight.plugin.mongodb;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.metrics.MetricsBag;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+import com.springsource.insight.intercept.trace.Trace;
 
+/**
+ * In addition to the execution time and invocation count, reports the count and
+ * total execution time of each (collection, operation, query shape) - see {@link QueryShape},
+ * e.g., <code>mongo_collection_operation.shape.db.users.find.&lt;shapeId&gt;:type=counter</code>
+ * and <code>mongo_collection_operation.shape.db.users.find.&lt;shapeId&gt;.time:type=counter</code> (msec.).
+ * Both are counters, so the average time of a shape is their ratio.
+ * The shape itself is recorded in the operation along with its identifier.
+ */
 public class MongoDBCollectionOperationMetricsGenerator extends AbstractMongoDBMetricsGenerator {
+	public static final String COUNT_SUFFIX = ":type=counter";
+	static final String SHAPE_KEY = ".shape.";
 
 	MongoDBCollectionOperationMetricsGenerator() {
 		super(MongoDBCollectionOperationAnalyzer.TYPE);
 	}
 
+	@Override
+	protected void addExtraExternalResourceMetrics(Trace trace, Frame opTypeFrame, MetricsBag mb) {
+		Operation op = opTypeFrame.getOperation();
+		long durationMillis = opTypeFrame.getRange().getDurationMillis();
+		Map<String, Integer> metrics = getShapeMetrics(opType.getName(), op, durationMillis);
+		for (Map.Entry<String, Integer> me : metrics.entrySet()) {
+			addCounterMetricToBag(trace, mb, me.getKey(), me.getValue().intValue());
+		}
+	}
+
+	/**
+	 * @param opTypeName The operation type name used as the keys prefix
+	 * @param op The collection {@link Operation} - may be <code>null</code>
+	 * @param durationMillis The operation execution time (msec.)
+	 * @return A {@link Map} of the per-shape count and total execution time - empty
+	 * if the operation has no query shape
+	 */
+	static Map<String, Integer> getShapeMetrics(String opTypeName, Operation op, long durationMillis) {
+		String shapeId = (op == null) ? null : op.get(MongoCollectionOperationCollectionAspect.SHAPE_ID, String.class);
+		if (shapeId == null) {
+			return Collections.emptyMap();
+		}
+
+		String prefix = opTypeName + SHAPE_KEY + op.get("collection", String.class) + "." + op.get("method", String.class) + "." + shapeId;
+		Map<String, Integer> metrics = new LinkedHashMap<String, Integer>();
+		metrics.put(prefix + COUNT_SUFFIX, Integer.valueOf(1));
+		metrics.put(prefix + ".time" + COUNT_SUFFIX, Integer.valueOf((int) Math.min(Math.max(0L, durationMillis), Integer.MAX_VALUE)));
+		return metrics;
+	}
 }
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * A thread-confined stack of in-progress {@link Operation}s along with the
+ * {@link System#nanoTime()} at which each was started and its arguments - if
+ * their rendering was deferred (see {@link ArgumentRenderPolicy}). Backed by
+ * parallel arrays so that pushing/popping does not allocate. This is a copy of
+ * the rabbitmq-client plugin one extended with the deferred arguments - plugins
+ * cannot share code, and the stack of the idk collection aspects holds only the
+ * operations. <B>Note:</B> not thread-safe.
+ */
+final class OperationStack {
+    private Operation[] operations = new Operation[4];
+    private Object[][] arguments = new Object[4][];
+    private long[] timestamps = new long[4];
+    private int size;
+
+    OperationStack() {
+        super();
+    }
+
+    /**
+     * @param op The {@link Operation}
+     * @param args The arguments to be rendered on exit - <code>null</code> if
+     * already rendered
+     * @param timestamp The {@link System#nanoTime()} at which the call started
+     */
+    void push(Operation op, Object[] args, long timestamp) {
+        if (size == operations.length) {
+            Operation[] newOps = new Operation[size * 2];
+            System.arraycopy(operations, 0, newOps, 0, size);
+            operations = newOps;
+
+            Object[][] newArgs = new Object[size * 2][];
+            System.arraycopy(arguments, 0, newArgs, 0, size);
+            arguments = newArgs;
+
+            long[] newTimestamps = new long[size * 2];
+            System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+            timestamps = newTimestamps;
+        }
+
+        operations[size] = op;
+        arguments[size] = args;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    /**
+     * @return The start time of the top entry
+     * @throws IllegalStateException if the stack is empty
+     */
+    long peekTimestamp() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+        return timestamps[size - 1];
+    }
+
+    /**
+     * @return The deferred arguments of the top entry - <code>null</code> if none
+     * @throws IllegalStateException if the stack is empty
+     */
+    Object[] peekArguments() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+        return arguments[size - 1];
+    }
+
+    /**
+     * @return The top {@link Operation}
+     * @throws IllegalStateException if the stack is empty
+     */
+    Operation pop() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+
+        size--;
+        Operation op = operations[size];
+        operations[size] = null;    // don't hold on to it
+        arguments[size] = null;
+        return op;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
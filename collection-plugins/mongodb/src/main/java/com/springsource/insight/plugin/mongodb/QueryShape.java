@@ -0,0 +1,191 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.DBObject;
+import com.springsource.insight.intercept.topology.MD5NameGenerator;
+import com.springsource.insight.util.StringUtil;
+
+/**
+ * Extracts the shape of the query/sort/projection documents of a collection
+ * operation - i.e., the documents with their literal values replaced by
+ * <code>?</code> - so that operations can be grouped by query pattern rather
+ * than by the actual values, e.g., <code>{ "age" : { "$gt" : ?}}</code>.
+ * Arrays are reduced to their distinct element shapes, so an <code>$in</code>
+ * list of any length has the same shape. The number of distinct shapes is
+ * bounded (see {@link #MAX_SHAPES_PROPERTY}) - beyond it, new shapes are reported
+ * as {@link #OTHER_SHAPE} so that the per-shape metrics cannot grow unbounded.
+ * The documents are walked only up to the {@link #MAX_SHAPE_LENGTH}.
+ */
+final class QueryShape {
+    static final String MAX_SHAPES_PROPERTY = "insight.plugin.mongodb.shapes.maxCount";
+    public static final int DEFAULT_MAX_SHAPES = 1024;
+    public static final String PLACEHOLDER = "?";
+    public static final String OTHER_SHAPE = "(other)";
+    /**
+     * The maximum length of a shape - longer ones are trimmed
+     */
+    static final int MAX_SHAPE_LENGTH = 256;
+
+    private static final QueryShape instance =
+            new QueryShape(Integer.getInteger(MAX_SHAPES_PROPERTY, DEFAULT_MAX_SHAPES).intValue());
+
+    private final int maxShapes;
+    // shape => its identifier - synchronized
+    private final Map<String, String> shapes = new LinkedHashMap<String, String>();
+
+    QueryShape(int maxShapes) {
+        this.maxShapes = Math.max(0, maxShapes);
+    }
+
+    static QueryShape getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param args The operation arguments - only the {@link DBObject}s are used
+     * @return The (cached) shape of the documents - <code>null</code> if none
+     */
+    String shapeOf(Object... args) {
+        StringBuilder sb = null;
+        for (Object arg : args) {
+            if (!(arg instanceof DBObject)) {
+                continue;
+            }
+
+            if (sb == null) {
+                sb = new StringBuilder();
+            } else {
+                sb.append(", ");
+            }
+            if (!appendShape(sb, arg, MAX_SHAPE_LENGTH)) {
+                break;  // the rest would be trimmed anyway
+            }
+        }
+
+        if (sb == null) {
+            return null;
+        }
+        return intern(StringUtil.trimWithEllipsis(sb.toString(), MAX_SHAPE_LENGTH));
+    }
+
+    /**
+     * @param shape A shape returned by {@link #shapeOf(Object...)}
+     * @return A short identifier of the shape suitable as a metric key component
+     */
+    String idOf(String shape) {
+        synchronized (shapes) {
+            String id = shapes.get(shape);
+            return (id != null) ? id : MD5NameGenerator.getName(shape);
+        }
+    }
+
+    int size() {
+        synchronized (shapes) {
+            return shapes.size();
+        }
+    }
+
+    private String intern(String shape) {
+        synchronized (shapes) {
+            if (shapes.containsKey(shape)) {
+                return shape;
+            }
+            if (shapes.size() >= maxShapes) {
+                return OTHER_SHAPE;
+            }
+
+            shapes.put(shape, MD5NameGenerator.getName(shape));
+            return shape;
+        }
+    }
+
+    /**
+     * Appends the shape of a value - the walk stops as soon as the builder holds
+     * more than <code>maxLength</code> characters, so a huge document or array
+     * costs no more than the (trimmed) shape it yields
+     * @param sb The {@link StringBuilder} to append to
+     * @param value The value
+     * @param maxLength The max. length of the shape
+     * @return <code>false</code> if the walk stopped due to the length limit
+     */
+    static boolean appendShape(StringBuilder sb, Object value, int maxLength) {
+        if (sb.length() > maxLength) {
+            return false;
+        }
+
+        if (value instanceof Iterable<?>) {
+            // the distinct element shapes - in order of appearance
+            Set<String> elements = new LinkedHashSet<String>();
+            int length = sb.length();
+            for (Object element : (Iterable<?>) value) {
+                String shape = elementShapeOf(element, maxLength);
+                if (elements.add(shape)) {
+                    length += shape.length() + 3;
+                    if (length > maxLength) {
+                        break;  // any further element would be trimmed
+                    }
+                }
+            }
+
+            sb.append("[ ");
+            boolean first = true;
+            for (String element : elements) {
+                if (!first) {
+                    sb.append(" , ");
+                }
+                first = false;
+                sb.append(element);
+            }
+            sb.append("]");
+        } else if (value instanceof DBObject) {
+            DBObject dbObject = (DBObject) value;
+            sb.append("{ ");
+            boolean first = true;
+            for (String key : dbObject.keySet()) {
+                if (!first) {
+                    sb.append(" , ");
+                }
+                first = false;
+                sb.append('"').append(key).append("\" : ");
+                if (!appendShape(sb, dbObject.get(key), maxLength)) {
+                    return false;
+                }
+            }
+            sb.append("}");
+        } else {
+            sb.append(PLACEHOLDER);
+        }
+
+        return sb.length() <= maxLength;
+    }
+
+    private static String elementShapeOf(Object element, int maxLength) {
+        if ((element instanceof Iterable<?>) || (element instanceof DBObject)) {
+            StringBuilder sb = new StringBuilder();
+            appendShape(sb, element, maxLength);
+            return sb.toString();
+        }
+        return PLACEHOLDER;
+    }
+}
@@ -5,6 +5,7 @@
     <@insight.entry name="Collection">
     	${operation.collection?html}
     </@insight.entry>
+    <@insight.entry name="Query Shape" value=operation.shape if=operation.shape?? />
     <@insight.entry name="Params" if=operation.args?has_content>
         <@insight.list type="ordered" collection=operation.args />
     </@insight.entry>
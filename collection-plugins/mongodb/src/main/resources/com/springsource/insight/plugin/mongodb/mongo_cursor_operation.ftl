@@ -11,7 +11,18 @@
     <@insight.entry name="Keys Wanted">
     	${operation.keysWanted?html}
     </@insight.entry>
+    <#if operation.returnValue??>
     <@insight.entry name="Return">
     	${operation.returnValue?html}
     </@insight.entry>
+    </#if>
 </@insight.group>
+<#if operation.endReason??>
+<@insight.group label="Iteration">
+    <@insight.entry name="End Reason" value=operation.endReason />
+    <@insight.entry name="Documents" value=operation.documents />
+    <@insight.entry name="GetMore Batches" value=operation.getMores if=operation.getMores?? />
+    <@insight.entry name="Time in Driver (us)" value=operation.driverTime />
+    <@insight.entry name="Time in Application (us)" value=operation.applicationTime />
+</@insight.group>
+</#if>
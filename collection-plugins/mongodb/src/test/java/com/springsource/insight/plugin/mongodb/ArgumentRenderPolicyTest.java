@@ -0,0 +1,86 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationList;
+
+public class ArgumentRenderPolicyTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testEager() {
+        assertFalse(ArgumentRenderPolicy.EAGER.isDeferred());
+        assertTrue(ArgumentRenderPolicy.EAGER.isRendered(0L, false));
+        assertFalse(new ArgumentRenderPolicy(-5L).isDeferred());
+    }
+
+    @Test
+    public void testThreshold() {
+        ArgumentRenderPolicy policy = new ArgumentRenderPolicy(10L);
+        assertTrue(policy.isDeferred());
+        assertFalse(policy.isRendered(10L * MSEC - 1L, false));
+        assertTrue(policy.isRendered(10L * MSEC, false));
+        assertTrue(policy.isRendered(0L, true));
+    }
+
+    @Test
+    public void testZeroThreshold() {
+        ArgumentRenderPolicy policy = new ArgumentRenderPolicy(0L);
+        assertTrue(policy.isDeferred());
+        assertTrue(policy.isRendered(0L, false));
+    }
+
+    @Test
+    public void testFromSystemProperties() {
+        String prev = System.getProperty(ArgumentRenderPolicy.SLOW_THRESHOLD_PROPERTY);
+        try {
+            System.clearProperty(ArgumentRenderPolicy.SLOW_THRESHOLD_PROPERTY);
+            assertSame(ArgumentRenderPolicy.EAGER, ArgumentRenderPolicy.fromSystemProperties());
+
+            System.setProperty(ArgumentRenderPolicy.SLOW_THRESHOLD_PROPERTY, "100");
+            ArgumentRenderPolicy policy = ArgumentRenderPolicy.fromSystemProperties();
+            assertTrue(policy.isDeferred());
+            assertFalse(policy.isRendered(99L * MSEC, false));
+            assertTrue(policy.isRendered(100L * MSEC, false));
+        } finally {
+            if (prev == null) {
+                System.clearProperty(ArgumentRenderPolicy.SLOW_THRESHOLD_PROPERTY);
+            } else {
+                System.setProperty(ArgumentRenderPolicy.SLOW_THRESHOLD_PROPERTY, prev);
+            }
+        }
+    }
+
+    @Test
+    public void testRender() {
+        Operation op = ArgumentRenderPolicy.render(new Operation(), new Object[] { "hello", new BasicDBObject("a", "b") });
+        OperationList args = op.get("args", OperationList.class);
+        assertEquals(2, args.size());
+        assertEquals("hello", args.get(0));
+        assertEquals(MongoArgumentUtils.toString(new BasicDBObject("a", "b")), args.get(1));
+    }
+}
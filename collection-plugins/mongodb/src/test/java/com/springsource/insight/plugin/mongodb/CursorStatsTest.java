@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class CursorStatsTest {
+    private static final long USEC = 1000L;
+
+    @Test
+    public void testDriverVersusApplicationTime() {
+        CursorStats stats = new CursorStats();
+        stats.callStarted(1L * USEC);
+        stats.callEnded(11L * USEC, true);
+        // the application spends 100 usec. on the document
+        stats.callStarted(111L * USEC);
+        stats.callEnded(116L * USEC, true);
+        stats.callStarted(216L * USEC);
+        stats.callEnded(217L * USEC, false);
+
+        assertEquals(2, stats.getDocuments());
+        assertEquals(16L * USEC, stats.getDriverNanos());
+        assertEquals(200L * USEC, stats.getApplicationNanos());
+    }
+
+    @Test
+    public void testApplyTo() {
+        CursorStats stats = new CursorStats();
+        stats.callStarted(0L);
+        stats.callEnded(5L * USEC, true);
+        assertFalse(stats.isReported());
+
+        Operation op = stats.applyTo(new Operation(), CursorStats.CLOSED, 3);
+        assertTrue(stats.isReported());
+        assertEquals(CursorStats.CLOSED, op.get("endReason"));
+        assertEquals(Integer.valueOf(1), op.get("documents", Integer.class));
+        assertEquals(Long.valueOf(5L), op.get("driverTime", Long.class));
+        assertEquals(Long.valueOf(0L), op.get("applicationTime", Long.class));
+        assertEquals(Integer.valueOf(3), op.get("getMores", Integer.class));
+
+        op = new CursorStats().applyTo(new Operation(), CursorStats.EXHAUSTED, -1);
+        assertNull(op.get("getMores"));
+    }
+}
@@ -20,18 +20,46 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  */
 public class DBCursorDummy extends DBCursor {
+    private final List<DBObject> results;
+    private int index;
+
     public DBCursorDummy(DBCollection collection, DBObject q, DBObject k) {
+        this(collection, q, k, Collections.<DBObject>emptyList());
+    }
+
+    public DBCursorDummy(DBCollection collection, DBObject q, DBObject k, List<DBObject> results) {
         super(collection, q, k);
+        this.results = results;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < results.size();
     }
 
     @Override
     public DBObject next() {
-        return null;
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more results");
+        }
+        return results.get(index++);
+    }
+
+    @Override
+    public void close() {
+        index = results.size();
+    }
+
+    @Override
+    public int numGetMores() {
+        return results.size() / 2;
     }
 
     @Override
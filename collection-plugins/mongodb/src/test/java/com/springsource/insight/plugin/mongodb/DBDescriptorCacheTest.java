@@ -0,0 +1,134 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import com.mongodb.DB;
+import com.mongodb.Mongo;
+import com.mongodb.ServerAddress;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class DBDescriptorCacheTest {
+
+    @Test
+    public void testDescriptorValues() {
+        Mongo mongo = mock(Mongo.class);
+        ServerAddress address = createAddress("primary", 27017);
+        when(mongo.getAddress()).thenReturn(address);
+
+        DBDescriptor descriptor = new DBDescriptorCache().get(new DBDummy(mongo, "my thing"));
+        assertEquals("my thing", descriptor.getDbName());
+        assertEquals("primary", descriptor.getHost());
+        assertEquals(Integer.valueOf(27017), descriptor.getPort());
+
+        Operation op = descriptor.applyTo(new Operation());
+        assertEquals("my thing", op.get("dbName", String.class));
+        assertEquals("primary", op.get("host", String.class));
+        assertEquals(Integer.valueOf(27017), op.get("port", Integer.class));
+    }
+
+    @Test
+    public void testResolvedOncePerAddress() {
+        Mongo mongo = mock(Mongo.class);
+        ServerAddress address = createAddress("primary", 27017);
+        when(mongo.getAddress()).thenReturn(address);
+
+        DBDescriptorCache cache = new DBDescriptorCache();
+        DB db = new DBDummy(mongo, "my thing");
+        DBDescriptor descriptor = cache.get(db);
+        for (int i = 0; i < 10; i++) {
+            assertSame(descriptor, cache.get(db));
+        }
+
+        assertEquals(1, cache.size());
+        verify(address, times(1)).getHost();
+        verify(address, times(1)).getPort();
+    }
+
+    @Test
+    public void testAddressChangeDetected() {
+        Mongo mongo = mock(Mongo.class);
+        ServerAddress primary = createAddress("primary", 27017);
+        when(mongo.getAddress()).thenReturn(primary);
+
+        DBDescriptorCache cache = new DBDescriptorCache();
+        DB db = new DBDummy(mongo, "my thing");
+        DBDescriptor descriptor = cache.get(db);
+
+        // e.g., a replica set fail-over
+        when(mongo.getAddress()).thenReturn(createAddress("secondary", 27018));
+        DBDescriptor changed = cache.get(db);
+        assertNotSame(descriptor, changed);
+        assertEquals("secondary", changed.getHost());
+        assertEquals(Integer.valueOf(27018), changed.getPort());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testMultipleDatabases() {
+        Mongo mongo = mock(Mongo.class);
+        when(mongo.getAddress()).thenReturn(createAddress("primary", 27017));
+
+        DBDescriptorCache cache = new DBDescriptorCache();
+        DB first = new DBDummy(mongo, "first");
+        DB second = new DBDummy(mongo, "second");
+        DBDescriptor firstDescriptor = cache.get(first);
+        DBDescriptor secondDescriptor = cache.get(second);
+        assertEquals("first", firstDescriptor.getDbName());
+        assertEquals("second", secondDescriptor.getDbName());
+        assertSame(firstDescriptor, cache.get(first));
+        assertSame(secondDescriptor, cache.get(second));
+        assertEquals(2, cache.size());
+
+        // rebuilding one entry keeps the other
+        when(mongo.getAddress()).thenReturn(createAddress("secondary", 27018));
+        assertEquals("secondary", cache.get(first).getHost());
+        assertEquals(2, cache.size());
+        assertEquals("secondary", cache.get(second).getHost());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testNoAddress() {
+        DBDescriptor descriptor = new DBDescriptorCache().get(new DBDummy(mock(Mongo.class), "my thing"));
+        assertEquals("my thing", descriptor.getDbName());
+        assertNull(descriptor.getHost());
+        assertNull(descriptor.getPort());
+
+        Operation op = descriptor.applyTo(new Operation());
+        assertNull(op.get("host"));
+        assertNull(op.get("port"));
+    }
+
+    private static ServerAddress createAddress(String host, int port) {
+        ServerAddress address = mock(ServerAddress.class);
+        when(address.getHost()).thenReturn(host);
+        when(address.getPort()).thenReturn(Integer.valueOf(port));
+        return address;
+    }
+}
@@ -22,6 +22,10 @@ import java.util.Random;
 
 import org.bson.types.ObjectId;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
 import static org.junit.Assert.*;
 
 import org.junit.Test;
@@ -107,4 +111,43 @@ public class MongoArgumentUtilsTest {
     public void testUnknownClass() {
         assertEquals("Random", MongoArgumentUtils.toString(new Random()));
     }
+
+    @Test
+    public void testDocumentRenderedAsDriver() {
+        BasicDBList tags = new BasicDBList();
+        tags.add("a\"b");
+        tags.add(Integer.valueOf(7));
+        tags.add(null);
+        DBObject doc = new BasicDBObject("_id", new ObjectId("0123456789abcd0123456789"))
+                .append("name", "Slartibartfast\n")
+                .append("active", Boolean.TRUE)
+                .append("tags", tags)
+                .append("nested", new BasicDBObject("x", Double.valueOf(4.2)));
+        assertEquals(doc.toString(), MongoArgumentUtils.toString(doc));
+        assertEquals(tags.toString(), MongoArgumentUtils.toString(tags));
+    }
+
+    @Test
+    public void testLargeDocumentTruncatedToLimit() {
+        DBObject doc = createLargeDocument(1000);
+        assertEquals(doc.toString().substring(0, 256) + "...", MongoArgumentUtils.toString(doc));
+    }
+
+    @Test
+    public void testRenderStopsAtLimit() {
+        DBObject doc = createLargeDocument(1000);
+        String rendered = MongoArgumentUtils.render(doc, 100);
+        assertEquals(101, rendered.length());
+        assertEquals(doc.toString().substring(0, 101), rendered);
+    }
+
+    static DBObject createLargeDocument(int entries) {
+        BasicDBList items = new BasicDBList();
+        for (int index = 0; index < entries; index++) {
+            items.add(new BasicDBObject("index", Integer.valueOf(index))
+                    .append("name", "item-" + index)
+                    .append("nested", new BasicDBObject("value", Long.valueOf(index * 1000L))));
+        }
+        return new BasicDBObject("items", items);
+    }
 }
@@ -23,7 +23,11 @@ import com.springsource.insight.intercept.operation.Operation;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -52,6 +56,23 @@ public class MongoCollectionOperationCollectionAspectTest
         standardAsserts(op);
     }
 
+    @Test
+    public void testFindDeferredFast() {
+        AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(new ArgumentRenderPolicy(Long.MAX_VALUE / 1000000L));
+        try {
+            getMeACollection().find(new BasicDBObject("whoa", "there"));
+        } finally {
+            AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(ArgumentRenderPolicy.EAGER);
+        }
+
+        Operation op = getLastEntered();
+        standardAsserts(op);
+        assertEquals("find", op.get("method"));
+        // the shape is still extracted on entry
+        assertNotNull(op.get(MongoCollectionOperationCollectionAspect.SHAPE));
+        assertNull("Unexpected arguments", op.get("args"));
+    }
+
 //	execution(WriteResult DBCollection.update(DBObject, DBObject, boolean, boolean));
     @Test
     public void testUpdate() {
@@ -60,6 +81,33 @@ public class MongoCollectionOperationCollectionAspectTest
         standardAsserts(op);
     }
 
+    @Test
+    public void testUpdateDocumentNotShaped() {
+        getMeACollection().update(new BasicDBObject("whoa", "there"), new BasicDBObject("$set", new BasicDBObject("whoa", "here")), true, true);
+        Operation op = getLastEntered();
+        standardAsserts(op);
+        assertEquals("{ \"whoa\" : ?}", op.get(MongoCollectionOperationCollectionAspect.SHAPE));
+    }
+
+    @Test
+    public void testQueryArguments() {
+        Object query = new BasicDBObject("a", "1");
+        Object fields = new BasicDBObject("b", Integer.valueOf(1));
+        Object sort = new BasicDBObject("c", Integer.valueOf(1));
+        Object update = new BasicDBObject("$set", new BasicDBObject("d", "2"));
+        assertNull(MongoCollectionOperationCollectionAspect.getQueryArguments("insert", new Object[] { query }));
+        assertNull(MongoCollectionOperationCollectionAspect.getQueryArguments("save", new Object[] { query }));
+        assertArrayEquals(new Object[] { query },
+                MongoCollectionOperationCollectionAspect.getQueryArguments("update", new Object[] { query, update, Boolean.TRUE, Boolean.FALSE }));
+        assertArrayEquals(new Object[] { query, sort },
+                MongoCollectionOperationCollectionAspect.getQueryArguments("findAndModify", new Object[] { query, sort, update }));
+        assertArrayEquals(new Object[] { query, fields, sort, Boolean.FALSE, Boolean.TRUE, Boolean.FALSE },
+                MongoCollectionOperationCollectionAspect.getQueryArguments("findAndModify",
+                        new Object[] { query, fields, sort, Boolean.FALSE, update, Boolean.TRUE, Boolean.FALSE }));
+        Object[] args = { query, fields };
+        assertSame(args, MongoCollectionOperationCollectionAspect.getQueryArguments("find", args));
+    }
+
 //	execution(WriteResult DBCollection.remove(DBObject, WriteConcern));
     @Test
     public void testRemove() {
@@ -83,6 +131,9 @@ public class MongoCollectionOperationCollectionAspectTest
         getMeACollection().find(new BasicDBObject("whoa", "there"), new BasicDBObject("whoa", "there"));
         Operation op = getLastEntered();
         standardAsserts(op);
+        assertEquals("find", op.get("method"));
+        assertEquals("{ \"whoa\" : ?}, { \"whoa\" : ?}", op.get(MongoCollectionOperationCollectionAspect.SHAPE));
+        assertNotNull(op.get(MongoCollectionOperationCollectionAspect.SHAPE_ID));
     }
 //	execution(void DBCollection.createIndex(DBObject, DBObject));
     @Test
@@ -16,6 +16,10 @@
 
 package com.springsource.insight.plugin.mongodb;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -27,7 +31,10 @@ import com.springsource.insight.intercept.operation.OperationList;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 
@@ -47,6 +54,17 @@ public class MongoCursorOperationCollectionAspectTest
 
         return cursor;
     }
+
+    DBCursor testCursor(int documents) {
+        DBCollection collection = mock(DBCollection.class);
+        when(collection.getFullName()).thenReturn(collectionName);
+        List<DBObject> results = new ArrayList<DBObject>();
+        for (int index = 0; index < documents; index++) {
+            results.add(new BasicDBObject("index", Integer.valueOf(index)));
+        }
+
+        return new DBCursorDummy(collection, new BasicDBObject("query", "value"), new BasicDBObject("key", "value"), results);
+    }
     public void standardAsserts(Operation op) {
         assertEquals(MongoCursorOperationCollectionAspect.TYPE, op.getType());
         assertEquals("{ \"key\" : \"value\"}", op.get("keysWanted"));
@@ -54,14 +72,72 @@ public class MongoCursorOperationCollectionAspectTest
     }
 
 
-    //execution(* DBCursor.next());
+    //execution(* DBCursor.next()) || execution(boolean DBCursor.hasNext())
+    @Test
+    public void iterationExhausted() throws Exception {
+        DBCursor cursor = testCursor(4);
+        int count = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        assertEquals(4, count);
+
+        Operation op = assertIterationOperation(CursorStats.EXHAUSTED, 4);
+        assertEquals(Integer.valueOf(2), op.get("getMores", Integer.class));
+        assertNotNull(op.get("driverTime", Long.class));
+        assertNotNull(op.get("applicationTime", Long.class));
+        // later calls are not reported again
+        cursor.hasNext();
+        cursor.close();
+        assertEquals(CursorStats.EXHAUSTED, getLastEntered().get("endReason"));
+    }
+
     @Test
-    public void next() throws Exception {
-        testCursor().next();
+    public void iterationNextBeyondLast() throws Exception {
+        DBCursor cursor = testCursor(1);
+        cursor.next();
+        try {
+            cursor.next();
+            fail("Unexpected next document");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        assertIterationOperation(CursorStats.EXHAUSTED, 1);
+    }
+
+    @Test
+    public void iterationClosed() throws Exception {
+        DBCursor cursor = testCursor(3);
+        cursor.next();
+        cursor.close();
+        assertIterationOperation(CursorStats.CLOSED, 1);
+    }
+
+    @Test
+    public void iterationStatsPerCursor() throws Exception {
+        DBCursor first = testCursor(3);
+        DBCursor second = testCursor(3);
+        first.next();
+        second.next();
+        first.next();
+        assertEquals(2, MongoCursorOperationCollectionAspect.getStats(first, false).getDocuments());
+        assertEquals(1, MongoCursorOperationCollectionAspect.getStats(second, false).getDocuments());
+        assertNull(MongoCursorOperationCollectionAspect.getStats(testCursor(1), false));
+
+        second.close();
+        assertIterationOperation(CursorStats.CLOSED, 1);
+        assertFalse(MongoCursorOperationCollectionAspect.getStats(first, false).isReported());
+    }
+
+    private Operation assertIterationOperation(String endReason, int documents) {
         Operation op = getLastEntered();
         assertNotNull(op);
-        assertEquals("MongoDB: DBCursor.next()", op.getLabel());
+        assertEquals("MongoDB: DBCursor iteration", op.getLabel());
+        assertEquals(endReason, op.get("endReason"));
+        assertEquals(Integer.valueOf(documents), op.get("documents", Integer.class));
         standardAsserts(op);
+        return op;
     }
 
     //execution(* DBCursor.skip());
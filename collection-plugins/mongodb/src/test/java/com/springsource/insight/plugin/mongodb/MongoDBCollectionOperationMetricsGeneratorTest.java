@@ -16,8 +16,16 @@
 
 package com.springsource.insight.plugin.mongodb;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
 import com.springsource.insight.intercept.metrics.MetricsGenerator;
 import com.springsource.insight.intercept.metrics.AbstractMetricsGeneratorTest;
+import com.springsource.insight.intercept.operation.Operation;
 import com.springsource.insight.intercept.operation.OperationType;
 
 
@@ -33,4 +41,26 @@ public class MongoDBCollectionOperationMetricsGeneratorTest extends AbstractMetr
 		return MongoDBCollectionOperationAnalyzer.TYPE;
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testShapeMetrics() {
+		String prefix = MongoDBCollectionOperationAnalyzer.TYPE.getName();
+		Operation op = new Operation()
+				.type(MongoDBCollectionOperationAnalyzer.TYPE)
+				.put("collection", "db.users")
+				.put("method", "find")
+				.put(MongoCollectionOperationCollectionAspect.SHAPE, "{ \"age\" : ?}")
+				.put(MongoCollectionOperationCollectionAspect.SHAPE_ID, "abc");
+
+		Map<String, Integer> metrics = MongoDBCollectionOperationMetricsGenerator.getShapeMetrics(prefix, op, 12L);
+		assertEquals(2, metrics.size());
+		assertEquals(Integer.valueOf(1), metrics.get(prefix + ".shape.db.users.find.abc" + MongoDBCollectionOperationMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(12), metrics.get(prefix + ".shape.db.users.find.abc.time" + MongoDBCollectionOperationMetricsGenerator.COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoShapeMetrics() {
+		String prefix = MongoDBCollectionOperationAnalyzer.TYPE.getName();
+		assertTrue(MongoDBCollectionOperationMetricsGenerator.getShapeMetrics(prefix, new Operation(), 1L).isEmpty());
+		assertTrue(MongoDBCollectionOperationMetricsGenerator.getShapeMetrics(prefix, null, 1L).isEmpty());
+	}
+}
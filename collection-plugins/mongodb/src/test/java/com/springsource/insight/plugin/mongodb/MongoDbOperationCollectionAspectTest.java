@@ -16,6 +16,7 @@
 
 package com.springsource.insight.plugin.mongodb;
 
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.Mongo;
 import com.mongodb.ServerAddress;
@@ -23,11 +24,14 @@ import com.springsource.insight.collection.OperationCollectionAspectSupport;
 import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
 import com.springsource.insight.intercept.operation.Operation;
 import com.springsource.insight.intercept.operation.OperationList;
+import org.junit.After;
 import org.junit.Test;
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  */
@@ -73,8 +77,63 @@ public class MongoDbOperationCollectionAspectTest
         assertNull(op.get("port", Integer.class));
     }
 
+    @Test
+    public void dbCommandDeferredFast() throws Exception {
+        AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(new ArgumentRenderPolicy(Long.MAX_VALUE / 1000000L));
+        DB db = new DBDummy(mock(Mongo.class), "my thing");
+        db.command("Hello there");
+        Operation op = (Operation) getLastEntered();
+        assertEquals("MongoDB: DB.command()", op.getLabel());
+        assertEquals("my thing",  op.get("dbName", String.class));
+        assertNull("Unexpected arguments", op.get("args"));
+    }
+
+    @Test
+    public void dbCommandDeferredSlow() throws Exception {
+        AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(new ArgumentRenderPolicy(0L));
+        DB db = new DBDummy(mock(Mongo.class), "my thing");
+        db.command("Hello there");
+        Operation op = (Operation) getLastEntered();
+        assertEquals("Hello there", ((OperationList)op.get("args")).get(0));
+    }
+
+    @Test
+    public void dbCommandDeferredFailed() throws Exception {
+        AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(new ArgumentRenderPolicy(Long.MAX_VALUE / 1000000L));
+        IllegalStateException expected = new IllegalStateException("dbCommandDeferredFailed");
+        DB db = new FailingDBDummy(mock(Mongo.class), "my thing", expected);
+        try {
+            db.command("Hello there");
+            fail("Unexpected command success");
+        } catch (IllegalStateException e) {
+            assertSame(expected, e);
+        }
+
+        Operation op = (Operation) getLastEntered();
+        assertEquals("Hello there", ((OperationList)op.get("args")).get(0));
+    }
+
+    @After
+    public void restoreArgumentRenderPolicy() {
+        AbstractMongoOperationCollectionAspect.setArgumentRenderPolicy(ArgumentRenderPolicy.EAGER);
+    }
+
     @Override
     public OperationCollectionAspectSupport getAspect() {
         return MongoDbOperationCollectionAspect.aspectOf();
     }
+
+    private static class FailingDBDummy extends DBDummy {
+        private final RuntimeException failure;
+
+        FailingDBDummy(Mongo mongo, String name, RuntimeException failure) {
+            super(mongo, name);
+            this.failure = failure;
+        }
+
+        @Override
+        public CommandResult command(String cmd) {
+            throw failure;
+        }
+    }
 }
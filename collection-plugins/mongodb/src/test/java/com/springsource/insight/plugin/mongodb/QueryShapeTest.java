@@ -0,0 +1,111 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.mongodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+
+public class QueryShapeTest {
+
+    @Test
+    public void testLiteralsReplaced() {
+        QueryShape shapes = new QueryShape(10);
+        String shape = shapes.shapeOf(new BasicDBObject("name", "Arthur")
+                .append("age", new BasicDBObject("$gt", Integer.valueOf(42))));
+        assertEquals("{ \"name\" : ? , \"age\" : { \"$gt\" : ?}}", shape);
+    }
+
+    @Test
+    public void testArraysReducedToDistinctShapes() {
+        BasicDBList ids = new BasicDBList();
+        for (int i = 0; i < 100; i++) {
+            ids.add(Integer.valueOf(i));
+        }
+        BasicDBList or = new BasicDBList();
+        or.add(new BasicDBObject("a", "x"));
+        or.add(new BasicDBObject("b", "y"));
+        or.add(new BasicDBObject("a", "z"));
+
+        QueryShape shapes = new QueryShape(10);
+        assertEquals("{ \"_id\" : { \"$in\" : [ ?]}}", shapes.shapeOf(new BasicDBObject("_id", new BasicDBObject("$in", ids))));
+        assertEquals("{ \"$or\" : [ { \"a\" : ?} , { \"b\" : ?}]}", shapes.shapeOf(new BasicDBObject("$or", or)));
+    }
+
+    @Test
+    public void testSameShapeInterned() {
+        QueryShape shapes = new QueryShape(10);
+        String first = shapes.shapeOf(new BasicDBObject("name", "Arthur"), new BasicDBObject("name", Integer.valueOf(1)));
+        String second = shapes.shapeOf(new BasicDBObject("name", "Ford"), new BasicDBObject("name", Integer.valueOf(1)));
+        assertEquals("{ \"name\" : ?}, { \"name\" : ?}", first);
+        assertSame(first, second);
+        assertEquals(1, shapes.size());
+        assertNotNull(shapes.idOf(first));
+        assertEquals(shapes.idOf(first), shapes.idOf(second));
+    }
+
+    @Test
+    public void testShapesBounded() {
+        QueryShape shapes = new QueryShape(2);
+        shapes.shapeOf(new BasicDBObject("a", "1"));
+        shapes.shapeOf(new BasicDBObject("b", "1"));
+        assertEquals(QueryShape.OTHER_SHAPE, shapes.shapeOf(new BasicDBObject("c", "1")));
+        assertEquals("{ \"a\" : ?}", shapes.shapeOf(new BasicDBObject("a", "2")));
+        assertEquals(2, shapes.size());
+    }
+
+    @Test
+    public void testWalkBoundedByLength() {
+        BasicDBObject doc = new BasicDBObject();
+        BasicDBList items = new BasicDBList();
+        for (int i = 0; i < 10000; i++) {
+            doc.append("key" + i, Integer.valueOf(i));
+            items.add(new BasicDBObject("item" + i, Integer.valueOf(i)));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        assertTrue(QueryShape.appendShape(sb, new BasicDBObject("a", "1"), QueryShape.MAX_SHAPE_LENGTH));
+        assertEquals("{ \"a\" : ?}", sb.toString());
+
+        sb.setLength(0);
+        assertFalse(QueryShape.appendShape(sb, doc, QueryShape.MAX_SHAPE_LENGTH));
+        assertTrue("Walked too far: " + sb.length(), sb.length() <= 2 * QueryShape.MAX_SHAPE_LENGTH);
+
+        sb.setLength(0);
+        assertFalse(QueryShape.appendShape(sb, items, QueryShape.MAX_SHAPE_LENGTH));
+        assertTrue("Walked too far: " + sb.length(), sb.length() <= 2 * QueryShape.MAX_SHAPE_LENGTH);
+
+        // the bounded walk yields the same (trimmed) shape
+        String shape = new QueryShape(10).shapeOf(doc);
+        assertTrue(shape.startsWith("{ \"key0\" : ? , \"key1\" : ?"));
+        assertTrue(shape.length() <= QueryShape.MAX_SHAPE_LENGTH + 3);
+    }
+
+    @Test
+    public void testNoDocuments() {
+        assertNull(new QueryShape(10).shapeOf("smoosh", null));
+    }
+}
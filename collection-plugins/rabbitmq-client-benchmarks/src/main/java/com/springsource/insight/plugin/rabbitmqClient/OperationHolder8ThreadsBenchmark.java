@@ -0,0 +1,29 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the {@link OperationHolderBenchmark} benchmarks from 8 threads at once.
+ */
+@Threads(8)
+public class OperationHolder8ThreadsBenchmark extends OperationHolderBenchmark {
+    public OperationHolder8ThreadsBenchmark() {
+        super();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rabbitmq.client.Channel;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.plugin.rabbitmqClient.benchmarks.BenchmarkChannel;
+import com.springsource.insight.plugin.rabbitmqClient.benchmarks.BenchmarkConnection;
+
+/**
+ * Compares the per-<code>basicGet</code> bookkeeping of the in-progress operation
+ * - the former <code>ConcurrentHashMap&lt;Channel, Operation&gt;</code> shared by
+ * all the threads versus the thread-confined {@link OperationStack} now used by
+ * the {@link RabbitMQConsumerCollectionAspect} - i.e., a put/get/remove of the
+ * polled channel versus a push/peek/pop. Runs from a single thread - see
+ * {@link OperationHolder8ThreadsBenchmark} and {@link OperationHolder64ThreadsBenchmark}
+ * for the contended runs. <B>Note:</B> declared in the plugin package since the
+ * stack is package private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@Threads(1)
+public class OperationHolderBenchmark {
+    private static final int CHANNELS_PER_THREAD = 8;
+
+    private final Map<Channel, Operation> sharedHolder = new ConcurrentHashMap<Channel, Operation>();
+    private final ThreadLocal<OperationStack> stackHolder = new ThreadLocal<OperationStack>() {
+        @Override
+        protected OperationStack initialValue() {
+            return new OperationStack();
+        }
+    };
+    private final Operation op = new Operation();
+
+    /**
+     * The channels polled by each thread - as channels should not be shared
+     */
+    @State(Scope.Thread)
+    public static class PolledChannels {
+        private Channel[] channels;
+        private int next;
+
+        @Setup
+        public void setUp() {
+            BenchmarkConnection connection = new BenchmarkConnection();
+            channels = new Channel[CHANNELS_PER_THREAD];
+            for (int index = 0; index < channels.length; index++) {
+                channels[index] = new BenchmarkChannel(connection, null);
+            }
+        }
+
+        Channel next() {
+            Channel channel = channels[next];
+            next = (next + 1) % channels.length;
+            return channel;
+        }
+    }
+
+    @Benchmark
+    public Operation sharedMap(PolledChannels polled) {
+        Channel channel = polled.next();
+        sharedHolder.put(channel, op);
+        Operation result = sharedHolder.get(channel);
+        sharedHolder.remove(channel);
+        return result;
+    }
+
+    @Benchmark
+    public Operation threadStack() {
+        OperationStack ops = stackHolder.get();
+        ops.push(op, 0L);
+        ops.peekTimestamp();
+        return ops.pop();
+    }
+}
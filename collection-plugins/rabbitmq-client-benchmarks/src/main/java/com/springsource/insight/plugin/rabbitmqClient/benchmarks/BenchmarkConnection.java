@@ -0,0 +1,135 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * An always open in-process {@link Connection} that does no I/O, so that the
+ * aspects resolve (and cache) its descriptor exactly as they would for a real
+ * connection.
+ */
+public class BenchmarkConnection implements Connection {
+    private final InetAddress address;
+    private final Map<String, Object> properties =
+            Collections.<String, Object>singletonMap("version", "2.5.1");
+
+    public BenchmarkConnection() {
+        try {
+            address = InetAddress.getByAddress("localhost", new byte[] { 127, 0, 0, 1 });
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void addShutdownListener(ShutdownListener arg0) {
+        // do nothing
+    }
+
+    public void removeShutdownListener(ShutdownListener arg0) {
+        // do nothing
+    }
+
+    public ShutdownSignalException getCloseReason() {
+        return null;
+    }
+
+    public void notifyListeners() {
+        // do nothing
+    }
+
+    public boolean isOpen() {
+        return true;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return 5672;
+    }
+
+    public int getChannelMax() {
+        return 0;
+    }
+
+    public int getFrameMax() {
+        return 0;
+    }
+
+    public int getHeartbeat() {
+        return 0;
+    }
+
+    public Map<String, Object> getClientProperties() {
+        return properties;
+    }
+
+    public Map<String, Object> getServerProperties() {
+        return properties;
+    }
+
+    public Channel createChannel() throws IOException {
+        return null;
+    }
+
+    public Channel createChannel(int arg0) throws IOException {
+        return null;
+    }
+
+    public void close() throws IOException {
+        // do nothing
+    }
+
+    public void close(int arg0, String arg1) throws IOException {
+        // do nothing
+    }
+
+    public void close(int arg0) throws IOException {
+        // do nothing
+    }
+
+    public void close(int arg0, String arg1, int arg2) throws IOException {
+        // do nothing
+    }
+
+    public void abort() {
+        // do nothing
+    }
+
+    public void abort(int arg0, String arg1) {
+        // do nothing
+    }
+
+    public void abort(int arg0) {
+        // do nothing
+    }
+
+    public void abort(int arg0, String arg1, int arg2) {
+        // do nothing
+    }
+}
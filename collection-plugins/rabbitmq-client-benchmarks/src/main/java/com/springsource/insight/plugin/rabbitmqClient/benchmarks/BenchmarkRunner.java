@@ -0,0 +1,53 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.springsource.insight.plugin.rabbitmqClient.OperationHolderBenchmark;
+
+/**
+ * Runs the benchmarks with the GC profiler so that the allocated bytes per
+ * operation (<code>gc.alloc.rate.norm</code>) are reported alongside ns/op.
+ * Any standard JMH command line options may be given. The aspects are woven
+ * only if the JVM is started with the AspectJ weaver agent - the forked
+ * benchmark JVMs inherit it:
+ * <pre>
+ *   java -javaagent:aspectjweaver.jar -jar target/rabbitmq-client-benchmarks.jar
+ * </pre>
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+        // no instance
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(RabbitMQAspectBenchmark.class.getPackage().getName())
+                .include(OperationHolderBenchmark.class.getPackage().getName() + ".OperationHolder")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
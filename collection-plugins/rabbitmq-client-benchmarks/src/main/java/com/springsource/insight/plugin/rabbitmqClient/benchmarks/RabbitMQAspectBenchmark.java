@@ -0,0 +1,124 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+
+/**
+ * Measures the per-message cost of the RabbitMQ collection aspects on the hot
+ * paths - <code>basicPublish</code>, <code>handleDelivery</code>,
+ * <code>basicGet</code> and <code>basicGet</code> followed by <code>basicAck</code>
+ * - with and without message headers. The aspects are woven at load time (see
+ * {@link BenchmarkRunner}), so running the same benchmarks without the weaver
+ * agent provides the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class RabbitMQAspectBenchmark {
+    private static final int BODY_SIZE = 256;
+
+    @Param({ "false", "true" })
+    public boolean headers;
+
+    private BasicProperties props;
+    private byte[] body;
+    private Envelope envelope;
+    private BenchmarkChannel channel;
+    private DefaultConsumer consumer;
+    private long deliveryTag;
+
+    @Setup
+    public void setUp() {
+        BasicProperties.Builder builder = new BasicProperties.Builder()
+                .appId("benchmark")
+                .contentType("application/octet-stream")
+                .deliveryMode(Integer.valueOf(2))
+                .messageId("message-1")
+                ;
+        if (headers) {
+            Map<String, Object> values = new HashMap<String, Object>();
+            for (int index = 0; index < 8; index++) {
+                values.put("header-" + index, "value-" + index);
+            }
+            builder.headers(values);
+        }
+
+        props = builder.build();
+        body = new byte[BODY_SIZE];
+        envelope = new Envelope(1L, false, "exchange", "orders.created");
+        channel = new BenchmarkChannel(new BenchmarkConnection(), new GetResponse(envelope, props, body, 0));
+        consumer = new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope env, BasicProperties properties, byte[] data)
+                    throws IOException {
+                // do nothing
+            }
+        };
+    }
+
+    @Benchmark
+    public void publish() throws IOException {
+        channel.basicPublish("exchange", "orders.created", false, false, props, body);
+    }
+
+    @Benchmark
+    public void handleDelivery() throws IOException {
+        // a new tag per delivery, as the broker would assign
+        consumer.handleDelivery("consumer", new Envelope(++deliveryTag, false, "exchange", "orders.created"), props, body);
+    }
+
+    @Benchmark
+    public GetResponse basicGet() throws IOException {
+        return channel.basicGet("queue", true);
+    }
+
+    /**
+     * Manual acknowledgment - the delivery is tracked until it is acknowledged.
+     * The pre-built response always carries the same delivery tag, which is
+     * acknowledged before it is delivered again.
+     */
+    @Benchmark
+    public GetResponse basicGetAndAck() throws IOException {
+        GetResponse resp = channel.basicGet("queue", false);
+        channel.basicAck(resp.getEnvelope().getDeliveryTag(), false);
+        return resp;
+    }
+}
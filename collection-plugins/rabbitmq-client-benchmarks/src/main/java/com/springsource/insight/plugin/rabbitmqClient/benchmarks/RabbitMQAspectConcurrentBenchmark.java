@@ -0,0 +1,32 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the {@link RabbitMQAspectBenchmark} benchmarks from several threads at
+ * once. Each thread has its own channel - as channels should not be shared - so
+ * the contention measured is that of the state the aspects share across channels
+ * (throughput meters, connection descriptors, consumer queues, etc.).
+ */
+@Threads(4)
+public class RabbitMQAspectConcurrentBenchmark extends RabbitMQAspectBenchmark {
+    public RabbitMQAspectConcurrentBenchmark() {
+        super();
+    }
+}
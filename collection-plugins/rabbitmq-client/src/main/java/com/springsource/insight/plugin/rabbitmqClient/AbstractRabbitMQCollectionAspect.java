@@ -16,16 +16,12 @@
 
 package com.springsource.insight.plugin.rabbitmqClient;
 
-import java.net.InetAddress;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.aspectj.lang.JoinPoint;
 
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.impl.AMQConnection;
-import com.rabbitmq.client.impl.LongString;
 import com.springsource.insight.collection.OperationCollectionAspectSupport;
 import com.springsource.insight.collection.strategies.BasicCollectionAspectProperties;
 import com.springsource.insight.collection.strategies.CollectionAspectProperties;
@@ -34,6 +30,14 @@ import com.springsource.insight.intercept.operation.OperationMap;
 
 public abstract class AbstractRabbitMQCollectionAspect extends OperationCollectionAspectSupport {
     protected static final CollectionAspectProperties aspectProperties=new BasicCollectionAspectProperties(false);
+    // Connection metadata never changes, so it is resolved once per Connection
+    static final ConnectionDescriptorCache connectionCache=new ConnectionDescriptorCache();
+    // bounds the headers copied per message - see HeaderCapturePolicy
+    private static volatile HeaderCapturePolicy headerPolicy=HeaderCapturePolicy.fromSystemProperties();
+    // pairs RPC requests with their replies - shared by the publish and consume aspects
+    private static volatile RpcTracker rpcTracker=RpcTracker.fromSystemProperties();
+    // links consumed messages to their publishing - shared by the publish and consume aspects
+    private static volatile PublishIndex publishIndex=PublishIndex.fromSystemProperties();
     protected static final boolean collect (JoinPoint.StaticPart staticPart) {
         return strategies.collect(aspectProperties, staticPart);
     }
@@ -60,60 +64,104 @@ public abstract class AbstractRabbitMQCollectionAspect extends OperationCollecti
 
         if (headers != null) {
             OperationMap headersMap = op.createMap("headers");
+            headerPolicy.capture(headers, headersMap);
+        }
+    }
+
+    static HeaderCapturePolicy getHeaderCapturePolicy() {
+        return headerPolicy;
+    }
 
-            for (Entry<String, Object> entry : headers.entrySet()) {
-                Object value = entry.getValue();
-                
-                if (value instanceof LongString) {
-                    byte[] bytes = ((LongString) value).getBytes();
-                    value = new String(bytes);
-                }
-                
-                headersMap.putAnyNonEmpty(entry.getKey(), value);
-            }
+    static void setHeaderCapturePolicy(HeaderCapturePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("No header capture policy specified");
         }
+        headerPolicy = policy;
     }
 
-    protected void applyConnectionData(Operation op, Connection conn) {
-        String connectionUrl = null;
-        
-        if (conn instanceof AMQConnection) {
-            connectionUrl = conn.toString();
+    static RpcTracker getRpcTracker() {
+        return rpcTracker;
+    }
+
+    static void setRpcTracker(RpcTracker tracker) {
+        if (tracker == null) {
+            throw new IllegalArgumentException("No RPC tracker specified");
+        }
+        rpcTracker = tracker;
+    }
+
+    static PublishIndex getPublishIndex() {
+        return publishIndex;
+    }
+
+    static void setPublishIndex(PublishIndex index) {
+        if (index == null) {
+            throw new IllegalArgumentException("No publish index specified");
+        }
+        publishIndex = index;
+    }
+
+    /**
+     * Reports an RPC reply - if the delivered message is the reply of a pending
+     * request - along with the requests that timed out since the last report
+     * @param queue The queue the message was delivered from - <code>null</code> if unknown
+     * @param props The delivered message {@link BasicProperties} - may be <code>null</code>
+     * @param collect <code>false</code> if the reply should only be matched - e.g.,
+     * the delivery was not sampled
+     */
+    protected void collectRpcReply(String queue, BasicProperties props, boolean collect) {
+        RpcTracker tracker = rpcTracker;
+        if (!tracker.isEnabled()) {
+            return;
+        }
+
+        String correlationId = (props == null) ? null : props.getCorrelationId();
+        long now = System.nanoTime();
+        RpcTracker.Request request = tracker.reply(correlationId, queue, now);
+        if (!collect) {
+            return;
+        }
+
+        if (request != null) {
+            collectInstant(RpcTracker.createReplyOperation(correlationId, request, now));
+        }
+        collectRpcTimeouts(tracker);
+    }
+
+    /**
+     * Registers an RPC request - if the published message carries a <code>replyTo</code>
+     * and a <code>correlationId</code> - and reports the requests that timed out
+     * since the last report
+     */
+    protected void collectRpcRequest(String exchange, String routingKey, BasicProperties props) {
+        RpcTracker tracker = rpcTracker;
+        if (!tracker.isEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if ((props != null) && (props.getReplyTo() != null) && (props.getCorrelationId() != null)) {
+            tracker.request(props.getCorrelationId(), props.getReplyTo(), exchange, routingKey, now);
         } else {
-            InetAddress address = conn.getAddress();
-            int port = conn.getPort();
-            
-            StringBuilder sb = new StringBuilder("amqp://");
-            sb.append(address.getHostAddress()).append(":").append(port);
-            
-            connectionUrl = sb.toString();
+            tracker.sweep(now);
         }
-        
-        op.put("host", conn.getAddress().getHostAddress());
-        op.put("port", conn.getPort());
-        op.put("connectionUrl", connectionUrl);
-        
-        //try to extract server version
-        String version = getVersion(conn.getServerProperties());
-        op.put("serverVersion", version);
-        
-        //try to extract client version
-        version = getVersion(conn.getClientProperties());
-        op.put("clientVersion", version);
+        collectRpcTimeouts(tracker);
     }
 
-    private String getVersion(Map<String, Object> properties) {
-        String version = null;
-        
-        if (properties != null) {
-            Object obj = properties.get("version");
-            
-            if (obj != null) {
-                version = String.valueOf(obj); 
-            }
+    // the timeouts of any routing key are reported by whichever collected publish/delivery comes next
+    private void collectRpcTimeouts(RpcTracker tracker) {
+        for (RpcTracker.Timeouts timeouts : tracker.drainTimeouts()) {
+            collectInstant(RpcTracker.createTimeoutOperation(timeouts));
         }
-        
-        return version;
     }
 
+    // the RPC operations are nested in the frame of the publish/delivery that detected them
+    private void collectInstant(Operation op) {
+        getCollector().enter(op);
+        getCollector().exitNormal();
+    }
+
+    protected void applyConnectionData(Operation op, Connection conn) {
+        connectionCache.get(conn).applyTo(op);
+    }
 }
@@ -35,6 +35,8 @@ import com.springsource.insight.intercept.trace.Trace;
 public abstract class AbstractRabbitMQResourceAnalyzer implements EndPointAnalyzer, ExternalResourceAnalyzer {
 
 	static final String RABBIT = "RabbitMQ";
+	// bounds the endpoints/resources cardinality - see RoutingKeyNormalizer
+	private static volatile RoutingKeyNormalizer routingKeyNormalizer = RoutingKeyNormalizer.fromSystemProperties();
 
 	final RabbitPluginOperationType operationType;
 
@@ -77,6 +79,11 @@ public abstract class AbstractRabbitMQResourceAnalyzer implements EndPointAnalyz
 			Operation op = queueFrame.getOperation();
 
 			String label = buildLabel(op);
+			// e.g., an acknowledgment of an untracked delivery
+			if (label.length() == 0) {
+				continue;
+			}
+
 			String host = op.get("host", String.class);            
 			Integer portProperty = op.get("port", Integer.class);
 			int port = portProperty == null ? -1 : portProperty.intValue();
@@ -108,7 +115,7 @@ public abstract class AbstractRabbitMQResourceAnalyzer implements EndPointAnalyz
 	private String buildLabel(Operation op) {
 		StringBuilder sb = new StringBuilder();
 
-		String routingKey = getRoutingKey(op);
+		String routingKey = routingKeyNormalizer.normalize(getRoutingKey(op));
 		String exchange = getExchange(op);      
 
 		boolean hasExchange = !isTrimEmpty(exchange);		
@@ -124,9 +131,28 @@ public abstract class AbstractRabbitMQResourceAnalyzer implements EndPointAnalyz
 			sb.append("RoutingKey#").append(routingKey);
 		}
 
+		// e.g., an empty basicGet poll summary has neither
+		if (sb.length() == 0) {
+			String queue = op.get("queue", String.class);
+			if (!isTrimEmpty(queue)) {
+				sb.append("Queue#").append(queue);
+			}
+		}
+
 		return sb.toString();
 	}
 
+	static RoutingKeyNormalizer getRoutingKeyNormalizer() {
+		return routingKeyNormalizer;
+	}
+
+	static void setRoutingKeyNormalizer(RoutingKeyNormalizer normalizer) {
+		if (normalizer == null) {
+			throw new IllegalArgumentException("No routing key normalizer specified");
+		}
+		routingKeyNormalizer = normalizer;
+	}
+
 	private static boolean isTrimEmpty(String str){
 		return (str == null) || (str.trim().length() == 0);
 	}
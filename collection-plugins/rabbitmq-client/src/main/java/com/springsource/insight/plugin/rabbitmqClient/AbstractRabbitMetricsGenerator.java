@@ -17,17 +17,25 @@
 package com.springsource.insight.plugin.rabbitmqClient;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
 
 import com.springsource.insight.intercept.metrics.AbstractMetricsGenerator;
 import com.springsource.insight.intercept.metrics.MetricsBag;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
 import com.springsource.insight.intercept.resource.ResourceKey;
 import com.springsource.insight.intercept.trace.Frame;
 import com.springsource.insight.intercept.trace.Trace;
 
 abstract class AbstractRabbitMetricsGenerator extends AbstractMetricsGenerator {
 	public static final String RABBIT_COUNT_SUFFIX = ":type=counter";
+	static final String LATENCY_KEY = ".latency.";
+	static final String SIZE_KEY = ".size.";
+	static final String BYTES_KEY = ".bytes";
+	static final String THROUGHPUT_KEY = ".throughput.";
 
 	private final String   rabbitMetricKey;
 
@@ -43,13 +51,89 @@ abstract class AbstractRabbitMetricsGenerator extends AbstractMetricsGenerator {
         }
 
         MetricsBag    mb=MetricsBag.create(resourceKey, trace.getRange());
-        addCounterMetricToBag(trace, mb, createMetricKey(), externalFrames.size());
+        addCounterMetricToBag(trace, mb, createMetricKey(), getMessageCount(externalFrames));
+        addExtraCounters(trace, externalFrames, mb);
+        addSizeMetrics(trace, mb, getSizeHistogram(externalFrames));
         return Collections.singletonList(mb);
 	}
 
 	@Override
 	protected void addExtraExternalResourceMetrics(Trace trace,  Frame opTypeFrame, MetricsBag mb) {
-		addCounterMetricToBag(trace, mb, createMetricKey(), 1);
+		addCounterMetricToBag(trace, mb, createMetricKey(), getMessageCount(opTypeFrame));
+		addExtraCounters(trace, Collections.singletonList(opTypeFrame), mb);
+		addSizeMetrics(trace, mb, getSizeHistogram(Collections.singletonList(opTypeFrame)));
+	}
+
+	private void addSizeMetrics(Trace trace, MetricsBag mb, LogHistogram sizes) {
+		Map<String, Integer> metrics = getSizeMetrics(opType.getName(), sizes);
+		for (Map.Entry<String, Integer> me : metrics.entrySet()) {
+			addCounterMetricToBag(trace, mb, me.getKey(), me.getValue().intValue());
+		}
+	}
+
+	private void addExtraCounters(Trace trace, Collection<Frame> frames, MetricsBag mb) {
+		Map<String, Integer> counters = sumExtraCounters(frames);
+		for (Map.Entry<String, Integer> ce : counters.entrySet()) {
+			addCounterMetricToBag(trace, mb, ce.getKey(), ce.getValue().intValue());
+		}
+	}
+
+	/**
+	 * @param frames The reported {@link Frame}s
+	 * @return A {@link Map} of the extra and throughput counters of the frames
+	 * operations - summed by key, so that each counter is added once to the bag
+	 */
+	Map<String, Integer> sumExtraCounters(Collection<Frame> frames) {
+		Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+		for (Frame frame : frames) {
+			Operation op = frame.getOperation();
+			if (op == null) {
+				continue;
+			}
+
+			sumCounters(counters, getExtraCounters(op));
+			sumCounters(counters, getThroughputCounters(opType.getName(), op));
+		}
+		return counters;
+	}
+
+	static void sumCounters(Map<String, Integer> sums, Map<String, Integer> counters) {
+		for (Map.Entry<String, Integer> ce : counters.entrySet()) {
+			String key = ce.getKey();
+			Integer sum = sums.get(key);
+			long value = ce.getValue().longValue();
+			sums.put(key, toInt((sum == null) ? value : sum.longValue() + value));
+		}
+	}
+
+	/**
+	 * @param opTypeName The operation type name used as the keys prefix
+	 * @param op The reported {@link Operation} - may be <code>null</code>
+	 * @return A {@link Map} of the throughput totals published by the {@link ThroughputMeter}
+	 * - e.g., <code>rabbitmq-client-publish.throughput.msgs:type=counter</code>. Since
+	 * each interval is published by a single operation the counters add up to the
+	 * exchange/queue traffic - sampled or not. Empty if none published
+	 */
+	static Map<String, Integer> getThroughputCounters(String opTypeName, Operation op) {
+		OperationMap totals = (op == null) ? null : op.get(ThroughputMeter.INTERVAL_MAP, OperationMap.class);
+		if (totals == null) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+		for (String counter : ThroughputMeter.COUNTERS) {
+			addTotalCounter(counters, opTypeName + THROUGHPUT_KEY + counter, totals.get(counter, Number.class));
+		}
+		return counters;
+	}
+
+	/**
+	 * @param op The reported {@link Operation}
+	 * @return A {@link Map} of additional counter metric keys and their values
+	 * - none by default
+	 */
+	Map<String, Integer> getExtraCounters(Operation op) {
+		return Collections.emptyMap();
 	}
 
 	@Override
@@ -57,6 +141,120 @@ abstract class AbstractRabbitMetricsGenerator extends AbstractMetricsGenerator {
 		return trace.getLastFramesOfType(opType);
 	}
 
+	/**
+	 * @return The number of messages represented by the frames - taking into
+	 * account the unsampled messages accounted for by each sampled operation
+	 */
+	static int getMessageCount(Collection<Frame> frames) {
+		int count = 0;
+		for (Frame frame : frames) {
+			count += getMessageCount(frame);
+		}
+		return count;
+	}
+
+	static int getMessageCount(Frame frame) {
+		return getMessageCount(frame.getOperation());
+	}
+
+	static int getMessageCount(Operation op) {
+		Integer weight = (op == null) ? null : op.get(DeliverySampler.SAMPLE_WEIGHT, Integer.class);
+		return (weight == null) ? 1 : Math.max(1, weight.intValue());
+	}
+
+	/**
+	 * @return A {@link LogHistogram} of the message body sizes (bytes) of the
+	 * frames - taking into account the sampling weight of each
+	 */
+	static LogHistogram getSizeHistogram(Collection<Frame> frames) {
+		LogHistogram sizes = new LogHistogram();
+		for (Frame frame : frames) {
+			Operation op = frame.getOperation();
+			Integer bytes = (op == null) ? null : op.get("bytes", Integer.class);
+			if (bytes != null) {
+				sizes.record(bytes.longValue(), getMessageCount(frame));
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * @param opTypeName The operation type name used as the keys prefix
+	 * @param sizes The message sizes {@link LogHistogram}
+	 * @return A {@link Map} of the message size metrics - the total bytes and the
+	 * size buckets counters, from which the throughput, mean and distribution over
+	 * any period can be derived. Empty if no sizes were recorded
+	 */
+	static Map<String, Integer> getSizeMetrics(String opTypeName, LogHistogram sizes) {
+		Map<String, Integer> metrics = new LinkedHashMap<String, Integer>();
+		if (sizes.isEmpty()) {
+			return metrics;
+		}
+
+		metrics.put(opTypeName + BYTES_KEY + RABBIT_COUNT_SUFFIX, toInt(sizes.getSum()));
+		for (int bucket = 0; bucket < LogHistogram.NUM_BUCKETS; bucket++) {
+			long count = sizes.getCount(bucket);
+			if (count > 0L) {
+				metrics.put(opTypeName + SIZE_KEY + LogHistogram.bucketName(bucket) + "b" + RABBIT_COUNT_SUFFIX, toInt(count));
+			}
+		}
+		return metrics;
+	}
+
+	private static Integer toInt(long value) {
+		return Integer.valueOf((int) Math.min(value, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Adds a counter per non-empty bucket of a {@link LogHistogram} stored in
+	 * an operation - e.g., <code>prefix + "le16" + unit + ":type=counter"</code>
+	 * @param counters The counters {@link Map} to update
+	 * @param prefix The counter keys prefix
+	 * @param unit The bucket bounds unit suffix
+	 * @param histogram The histogram {@link OperationMap} - ignored if <code>null</code>
+	 */
+	static void addHistogramCounters(Map<String, Integer> counters, String prefix, String unit, OperationMap histogram) {
+		if (histogram == null) {
+			return;
+		}
+
+		for (int bucket = 0; bucket < LogHistogram.NUM_BUCKETS; bucket++) {
+			String name = LogHistogram.bucketName(bucket);
+			Number value = histogram.get(name, Number.class);
+			if ((value != null) && (value.intValue() > 0)) {
+				counters.put(prefix + name + unit + RABBIT_COUNT_SUFFIX, Integer.valueOf(value.intValue()));
+			}
+		}
+	}
+
+	/**
+	 * Counts a value in its {@link LogHistogram} bucket - e.g.,
+	 * <code>prefix + "le16" + unit + ":type=counter"</code>. Unlike the value
+	 * itself, the bucket counters can be summed over any period.
+	 * @param counters The counters {@link Map} to update
+	 * @param prefix The counter keys prefix
+	 * @param unit The bucket bounds unit suffix
+	 * @param value The counted value - ignored if <code>null</code>
+	 * @param count The number of times the value is counted
+	 */
+	static void addBucketCounter(Map<String, Integer> counters, String prefix, String unit, Number value, int count) {
+		if (value != null) {
+			String bucket = LogHistogram.bucketName(LogHistogram.bucketOf(value.longValue()));
+			counters.put(prefix + bucket + unit + RABBIT_COUNT_SUFFIX, Integer.valueOf(count));
+		}
+	}
+
+	/**
+	 * @param counters The counters {@link Map} to update
+	 * @param name The counter name - without the type suffix
+	 * @param value The value to be added to the counter - ignored if <code>null</code>
+	 */
+	static void addTotalCounter(Map<String, Integer> counters, String name, Number value) {
+		if (value != null) {
+			counters.put(name + RABBIT_COUNT_SUFFIX, toInt(Math.max(0L, value.longValue())));
+		}
+	}
+
 	final String createMetricKey() {
 		return rabbitMetricKey;
 	}
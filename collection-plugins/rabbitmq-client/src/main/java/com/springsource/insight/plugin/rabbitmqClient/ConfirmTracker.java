@@ -0,0 +1,438 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Remembers when each message was published on a {@link Channel} in confirm
+ * mode so that the matching <code>ConfirmListener#handleAck/handleNack</code>
+ * can compute the confirm round-trip latency. Publish sequence numbers are
+ * monotonic per channel, so the un-confirmed publishes are appended to a ring
+ * of primitive arrays that is sorted by construction - a <code>multiple</code>
+ * confirm consumes its head and a single one is located by binary search. At
+ * most {@link #MAX_OUTSTANDING} un-confirmed publishes are tracked - beyond that
+ * the oldest ones are dropped.
+ * The tracker is also bound to the {@link ConfirmListener} of its channel, since
+ * the listener is not told which channel it is invoked for.
+ */
+final class ConfirmTracker {
+    static final int INITIAL_CAPACITY = 16;     // must be a power of 2
+    static final int MAX_OUTSTANDING = 4096;    // must be a power of 2
+    // marks a publish that was confirmed while older ones were still outstanding
+    private static final long CONFIRMED = Long.MIN_VALUE;
+
+    /**
+     * Max. number of tracked channels - a safety net for channels that are
+     * never closed
+     */
+    static final int MAX_CHANNELS = 4096;
+    private static final ConcurrentMap<Channel, ConfirmTracker> trackers = new ConcurrentHashMap<Channel, ConfirmTracker>();
+    private static final ConcurrentMap<ConfirmListener, ConfirmTracker> listeners = new ConcurrentHashMap<ConfirmListener, ConfirmTracker>();
+
+    private final Channel channel;
+    private ConfirmListener listener;
+
+    private long[] seqNos = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private String[] exchanges = new String[INITIAL_CAPACITY];
+    private String[] routingKeys = new String[INITIAL_CAPACITY];
+    private int head, size;     // size includes the confirmed entries not yet removed
+    private int outstanding;
+    private long dropped;
+    private final Map<String, Outstanding> outstandingByExchange = new HashMap<String, Outstanding>();
+
+    ConfirmTracker() {
+        this(null);
+    }
+
+    @SuppressWarnings("hiding")
+    ConfirmTracker(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @param channel The {@link Channel}
+     * @param create <code>true</code> if a tracker should be created if none exists
+     * - i.e., the channel has just been put in confirm mode
+     * @return The {@link ConfirmTracker} of the channel - <code>null</code> if
+     * none exists and none was created
+     */
+    static ConfirmTracker forChannel(Channel channel, boolean create) {
+        if (channel == null) {
+            return null;
+        }
+
+        ConfirmTracker tracker = trackers.get(channel);
+        if ((tracker != null) || (!create) || (trackers.size() >= MAX_CHANNELS)) {
+            return tracker;
+        }
+
+        tracker = new ConfirmTracker(channel);
+        ConfirmTracker prev = trackers.putIfAbsent(channel, tracker);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the channel is already closed the listener is invoked immediately
+        channel.addShutdownListener(new Remover(channel, tracker));
+        return tracker;
+    }
+
+    /**
+     * @param confirmListener The invoked {@link ConfirmListener}
+     * @return The {@link ConfirmTracker} of the channel the listener was last set
+     * on - <code>null</code> if none
+     */
+    static ConfirmTracker forListener(ConfirmListener confirmListener) {
+        return (confirmListener == null) ? null : listeners.get(confirmListener);
+    }
+
+    /**
+     * Binds the tracker to the {@link ConfirmListener} set on its channel. A
+     * listener shared by several channels is bound to the last one it was set on.
+     * @param confirmListener The listener - ignored if <code>null</code>
+     */
+    synchronized void bind(ConfirmListener confirmListener) {
+        ConfirmListener prev = listener;
+        if (prev == confirmListener) {
+            return;
+        }
+        if (prev != null) {
+            listeners.remove(prev, this);
+        }
+
+        listener = confirmListener;
+        if ((confirmListener != null) && (listeners.size() < MAX_CHANNELS)) {
+            listeners.put(confirmListener, this);
+        }
+    }
+
+    /**
+     * @return The tracked {@link Channel} - <code>null</code> if not known
+     */
+    Channel getChannel() {
+        return channel;
+    }
+
+    static int getTrackedChannels() {
+        return trackers.size();
+    }
+
+    synchronized void published(long seqNo, long timestamp, String exchange, String routingKey) {
+        if (seqNo <= 0L) {
+            return;
+        }
+
+        // sequence numbers restart only if the channel is re-used after a failure
+        if ((size > 0) && (seqNo <= seqNos[indexOf(size - 1)])) {
+            clear();
+        }
+
+        if (size == seqNos.length) {
+            if (size < MAX_OUTSTANDING) {
+                grow();
+            } else {
+                dropOldest();
+            }
+        }
+
+        int index = indexOf(size);
+        seqNos[index] = seqNo;
+        timestamps[index] = timestamp;
+        exchanges[index] = exchange;
+        routingKeys[index] = routingKey;
+        size++;
+        outstanding++;
+        updateOutstanding(exchange, 1);
+    }
+
+    /**
+     * @param seqNo The confirmed sequence number
+     * @param multiple <code>true</code> if all sequence numbers up to and including this one are confirmed
+     * @param now The {@link System#nanoTime()} of the confirmation
+     * @param result The {@link Confirmation} to be updated with the round-trip
+     * latency (msec.) of each confirmed publish and the exchange and routing key
+     * of the latest one - may be <code>null</code>
+     * @return Number of tracked publishes that were confirmed
+     */
+    synchronized int confirm(long seqNo, boolean multiple, long now, Confirmation result) {
+        int count = 0;
+        if (multiple) {
+            while ((size > 0) && (seqNos[head] <= seqNo)) {
+                if (timestamps[head] != CONFIRMED) {
+                    record(head, now, result);
+                    count++;
+                }
+                removeHead();
+            }
+            return count;
+        }
+
+        int pos = find(seqNo);
+        if (pos < 0) {
+            return 0;
+        }
+
+        int index = indexOf(pos);
+        if (timestamps[index] == CONFIRMED) {
+            return 0;
+        }
+
+        record(index, now, result);
+        timestamps[index] = CONFIRMED;
+        exchanges[index] = null;
+        routingKeys[index] = null;
+        // compact the confirmed entries at the head
+        while ((size > 0) && (timestamps[head] == CONFIRMED)) {
+            removeHead();
+        }
+        return 1;
+    }
+
+    /**
+     * @return Number of tracked publishes that have not been confirmed yet
+     */
+    synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @param exchange The exchange name - <code>null</code>/empty for the default one
+     * @return Number of publishes to the exchange that have not been confirmed yet
+     */
+    synchronized int getOutstanding(String exchange) {
+        Outstanding count = outstandingByExchange.get((exchange == null) ? "" : exchange);
+        return (count == null) ? 0 : count.count;
+    }
+
+    /**
+     * Samples the un-confirmed publishes to an exchange at most once per second,
+     * so that summing the samples of all the channels over an interval and
+     * dividing by its length yields the average outstanding publishes
+     * @param exchange The exchange name - <code>null</code>/empty for the default one
+     * @param second The current second - see {@link ThroughputMeter#currentSecond()}
+     * @return Number of publishes to the exchange that have not been confirmed
+     * yet - zero if already sampled during this second
+     */
+    synchronized int sampleOutstanding(String exchange, long second) {
+        Outstanding count = outstandingByExchange.get((exchange == null) ? "" : exchange);
+        if ((count == null) || (count.sampledSecond == second)) {
+            return 0;
+        }
+
+        count.sampledSecond = second;
+        return count.count;
+    }
+
+    /**
+     * @return Number of publishes that were dropped without being confirmed since
+     * more than {@link #MAX_OUTSTANDING} were outstanding
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    int getCapacity() {
+        return seqNos.length;
+    }
+
+    private int indexOf(int pos) {
+        return (head + pos) & (seqNos.length - 1);
+    }
+
+    // binary search over the ring positions - the sequence numbers are sorted
+    private int find(long seqNo) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midSeqNo = seqNos[indexOf(mid)];
+            if (midSeqNo < seqNo) {
+                low = mid + 1;
+            } else if (midSeqNo > seqNo) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void record(int index, long now, Confirmation result) {
+        if (result != null) {
+            result.confirmed(exchanges[index], routingKeys[index], (now - timestamps[index]) / 1000000L);
+        }
+        outstanding--;
+        updateOutstanding(exchanges[index], -1);
+    }
+
+    private void removeHead() {
+        exchanges[head] = null;
+        routingKeys[head] = null;
+        head = (head + 1) & (seqNos.length - 1);
+        size--;
+    }
+
+    private void dropOldest() {
+        if (timestamps[head] != CONFIRMED) {
+            outstanding--;
+            updateOutstanding(exchanges[head], -1);
+            dropped++;
+        }
+        removeHead();
+    }
+
+    private void grow() {
+        int capacity = seqNos.length * 2;
+        long[] newSeqNos = new long[capacity];
+        long[] newTimestamps = new long[capacity];
+        String[] newExchanges = new String[capacity];
+        String[] newRoutingKeys = new String[capacity];
+        for (int pos = 0; pos < size; pos++) {
+            int index = indexOf(pos);
+            newSeqNos[pos] = seqNos[index];
+            newTimestamps[pos] = timestamps[index];
+            newExchanges[pos] = exchanges[index];
+            newRoutingKeys[pos] = routingKeys[index];
+        }
+
+        seqNos = newSeqNos;
+        timestamps = newTimestamps;
+        exchanges = newExchanges;
+        routingKeys = newRoutingKeys;
+        head = 0;
+    }
+
+    private void clear() {
+        while (size > 0) {
+            removeHead();
+        }
+        head = 0;
+        outstanding = 0;
+        outstandingByExchange.clear();
+    }
+
+    private void updateOutstanding(String exchange, int delta) {
+        String key = (exchange == null) ? "" : exchange;
+        Outstanding count = outstandingByExchange.get(key);
+        if (count == null) {
+            if (delta <= 0) {
+                return;
+            }
+            count = new Outstanding();
+            outstandingByExchange.put(key, count);
+        }
+
+        count.count += delta;
+        if (count.count <= 0) {
+            outstandingByExchange.remove(key);
+        }
+    }
+
+    /**
+     * The outcome of a confirm - reused by the confirming thread so that nothing
+     * is allocated per confirm. <B>Note:</B> not thread-safe.
+     */
+    static final class Confirmation {
+        private final LogHistogram latencies = new LogHistogram();
+        private String exchange, routingKey;
+        private int count;
+
+        Confirmation() {
+            super();
+        }
+
+        @SuppressWarnings("hiding")
+        void confirmed(String exchange, String routingKey, long latency) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            latencies.record(latency);
+            count++;
+        }
+
+        /**
+         * @return Number of tracked publishes that were confirmed
+         */
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The round-trip latencies (msec.) of the confirmed publishes
+         */
+        LogHistogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return The exchange of the latest confirmed publish
+         */
+        String getExchange() {
+            return exchange;
+        }
+
+        /**
+         * @return The routing key of the latest confirmed publish
+         */
+        String getRoutingKey() {
+            return routingKey;
+        }
+
+        Confirmation reset() {
+            if (count > 0) {
+                latencies.clear();
+            }
+            exchange = null;
+            routingKey = null;
+            count = 0;
+            return this;
+        }
+    }
+
+    private static final class Outstanding {
+        int count;
+        long sampledSecond = Long.MIN_VALUE;
+
+        Outstanding() {
+            super();
+        }
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Channel channel;
+        private final ConfirmTracker tracker;
+
+        @SuppressWarnings("hiding")
+        Remover(Channel channel, ConfirmTracker tracker) {
+            this.channel = channel;
+            this.tracker = tracker;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            trackers.remove(channel, tracker);
+            tracker.bind(null);
+        }
+    }
+}
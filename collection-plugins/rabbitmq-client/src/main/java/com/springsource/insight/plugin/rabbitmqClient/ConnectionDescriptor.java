@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.net.InetAddress;
+import java.util.Map;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.impl.AMQConnection;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Immutable snapshot of the {@link Connection} data stamped onto every
+ * RabbitMQ {@link Operation}. The values never change for the life of a
+ * connection, so they are resolved once and cached by {@link ConnectionDescriptorCache}.
+ */
+final class ConnectionDescriptor {
+    private final String host;
+    private final int port;
+    private final String connectionUrl;
+    private final String serverVersion;
+    private final String clientVersion;
+
+    ConnectionDescriptor(Connection conn) {
+        InetAddress address = conn.getAddress();
+
+        host = (address == null) ? null : address.getHostAddress();
+        port = conn.getPort();
+
+        if (conn instanceof AMQConnection) {
+            connectionUrl = conn.toString();
+        } else {
+            connectionUrl = "amqp://" + host + ":" + port;
+        }
+
+        serverVersion = getVersion(conn.getServerProperties());
+        clientVersion = getVersion(conn.getClientProperties());
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getConnectionUrl() {
+        return connectionUrl;
+    }
+
+    String getServerVersion() {
+        return serverVersion;
+    }
+
+    String getClientVersion() {
+        return clientVersion;
+    }
+
+    Operation applyTo(Operation op) {
+        op.put("host", host);
+        op.put("port", port);
+        op.put("connectionUrl", connectionUrl);
+        op.put("serverVersion", serverVersion);
+        op.put("clientVersion", clientVersion);
+        return op;
+    }
+
+    private static String getVersion(Map<String, Object> properties) {
+        String version = null;
+
+        if (properties != null) {
+            Object obj = properties.get("version");
+
+            if (obj != null) {
+                version = String.valueOf(obj);
+            }
+        }
+
+        return version;
+    }
+}
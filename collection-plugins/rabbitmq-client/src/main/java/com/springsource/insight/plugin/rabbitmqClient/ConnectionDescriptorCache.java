@@ -0,0 +1,86 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Cache of {@link ConnectionDescriptor}s. An entry is built the first time an
+ * open {@link Connection} is seen and dropped when the connection signals its
+ * shutdown. Lookups do not lock, and the shutdown listener is registered only
+ * by the thread whose entry was added. Closed connections are not cached - nor
+ * are new ones once {@link #MAX_CONNECTIONS} are tracked (a safety net for
+ * connections that are never closed) - their descriptor is built per call.
+ */
+final class ConnectionDescriptorCache {
+    /**
+     * Max. number of cached connections
+     */
+    static final int MAX_CONNECTIONS = 1024;
+    private final ConcurrentMap<Connection, ConnectionDescriptor> cache = new ConcurrentHashMap<Connection, ConnectionDescriptor>();
+
+    ConnectionDescriptorCache() {
+        super();
+    }
+
+    ConnectionDescriptor get(Connection conn) {
+        ConnectionDescriptor descriptor = cache.get(conn);
+        if (descriptor != null) {
+            return descriptor;
+        }
+
+        descriptor = new ConnectionDescriptor(conn);
+        if ((!conn.isOpen()) || (cache.size() >= MAX_CONNECTIONS)) {
+            return descriptor;
+        }
+
+        ConnectionDescriptor prev = cache.putIfAbsent(conn, descriptor);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the connection was closed meanwhile the listener is invoked immediately
+        conn.addShutdownListener(new Invalidator(conn));
+        return descriptor;
+    }
+
+    void invalidate(Connection conn) {
+        cache.remove(conn);
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private final class Invalidator implements ShutdownListener {
+        private final Connection conn;
+
+        @SuppressWarnings("hiding")
+        Invalidator(Connection conn) {
+            this.conn = conn;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            invalidate(conn);
+        }
+    }
+}
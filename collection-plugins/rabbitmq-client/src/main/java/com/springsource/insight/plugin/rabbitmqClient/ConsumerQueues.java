@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the queue (and acknowledgment mode) each consumer tag was registered
+ * for via <code>basicConsume</code>, since the deliveries themselves
+ * (<code>handleDelivery</code>) only carry the consumer tag. The entries are
+ * removed by <code>basicCancel</code>.
+ */
+final class ConsumerQueues {
+    /**
+     * Max. number of remembered consumers - a safety net for consumers that
+     * are never cancelled explicitly (e.g., their channel is simply closed)
+     */
+    static final int MAX_CONSUMERS = 4096;
+    private static final ConcurrentMap<String, Registration> consumers = new ConcurrentHashMap<String, Registration>();
+
+    private ConsumerQueues() {
+        // no instance
+    }
+
+    static void register(String consumerTag, String queue, boolean autoAck) {
+        if ((consumerTag == null) || (queue == null)) {
+            return;
+        }
+
+        if ((consumers.size() < MAX_CONSUMERS) || consumers.containsKey(consumerTag)) {
+            consumers.put(consumerTag, new Registration(queue, autoAck));
+        }
+    }
+
+    /**
+     * @param consumerTag The consumer tag
+     * @return The queue it consumes from - <code>null</code> if unknown
+     */
+    static String queueOf(String consumerTag) {
+        Registration registration = (consumerTag == null) ? null : consumers.get(consumerTag);
+        return (registration == null) ? null : registration.queue;
+    }
+
+    /**
+     * @param consumerTag The consumer tag
+     * @return <code>true</code> if the consumer is known to have been registered
+     * with automatic acknowledgments - i.e., its deliveries are never acknowledged
+     */
+    static boolean isAutoAck(String consumerTag) {
+        Registration registration = (consumerTag == null) ? null : consumers.get(consumerTag);
+        return (registration != null) && registration.autoAck;
+    }
+
+    static void unregister(String consumerTag) {
+        if (consumerTag != null) {
+            consumers.remove(consumerTag);
+        }
+    }
+
+    static int size() {
+        return consumers.size();
+    }
+
+    private static final class Registration {
+        final String queue;
+        final boolean autoAck;
+
+        @SuppressWarnings("hiding")
+        Registration(String queue, boolean autoAck) {
+            this.queue = queue;
+            this.autoAck = autoAck;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Accumulates the topology declarations - exchanges, queues, bindings and QoS
+ * settings - made by the application on a {@link Connection}, so that each
+ * declaration operation can report the summary so far: typically the declarations are made at startup,
+ * so the summary shows how much of the startup time they took and which one
+ * was the slowest. The summary is dropped once the connection is shut down, so
+ * a reconnecting application starts a new one. <B>Note:</B> the declarations are usually few, so the
+ * summary is simply synchronized.
+ */
+final class DeclareSummary {
+    /**
+     * Name of the {@link Operation} map holding the summary
+     */
+    public static final String SUMMARY_MAP = "declareSummary";
+
+    static final int EXCHANGE = 0;
+    static final int QUEUE = 1;
+    static final int BIND = 2;
+    static final int QOS = 3;
+    /**
+     * Values of the declaration type - indexed by the kind
+     */
+    static final String[] DECLARE_TYPES = { "exchange", "queue", "bind", "qos" };
+    private static final String[] SUMMARY_NAMES = { "exchanges", "queues", "bindings", "qos" };
+
+    /**
+     * Max. number of tracked connections - a safety net for connections that are
+     * never closed
+     */
+    static final int MAX_CONNECTIONS = 1024;
+    private static final ConcurrentMap<Connection, DeclareSummary> summaries = new ConcurrentHashMap<Connection, DeclareSummary>();
+
+    private final int[] counts = new int[DECLARE_TYPES.length];
+    private final long[] totalNanos = new long[DECLARE_TYPES.length];
+    private long firstStartTime, lastEndTime;
+    private String slowestName;
+    private int slowestKind = -1;
+    private long slowestNanos = -1L;
+
+    DeclareSummary() {
+        super();
+    }
+
+    /**
+     * @param connection The {@link Connection}
+     * @param create <code>true</code> if a summary should be created if none exists
+     * @return The {@link DeclareSummary} of the connection - <code>null</code> if
+     * none exists and none was created
+     */
+    static DeclareSummary forConnection(Connection connection, boolean create) {
+        if (connection == null) {
+            return null;
+        }
+
+        DeclareSummary summary = summaries.get(connection);
+        if ((summary != null) || (!create) || (summaries.size() >= MAX_CONNECTIONS)) {
+            return summary;
+        }
+
+        summary = new DeclareSummary();
+        DeclareSummary prev = summaries.putIfAbsent(connection, summary);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the connection is already closed the listener is invoked immediately
+        connection.addShutdownListener(new Remover(connection));
+        return summary;
+    }
+
+    static int getTrackedConnections() {
+        return summaries.size();
+    }
+
+    /**
+     * @param kind The declaration kind - one of {@link #EXCHANGE}, {@link #QUEUE},
+     * {@link #BIND} or {@link #QOS}
+     * @param name The declared name - may be <code>null</code>
+     * @param startTime The {@link System#nanoTime()} at which the declaration started
+     * @param endTime The {@link System#nanoTime()} at which the declaration ended
+     */
+    synchronized void record(int kind, String name, long startTime, long endTime) {
+        if ((kind < 0) || (kind >= DECLARE_TYPES.length)) {
+            return;
+        }
+
+        long duration = Math.max(0L, endTime - startTime);
+        if (getCount() <= 0) {
+            firstStartTime = startTime;
+        }
+        lastEndTime = endTime;
+        counts[kind]++;
+        totalNanos[kind] += duration;
+
+        if (duration > slowestNanos) {
+            slowestNanos = duration;
+            slowestKind = kind;
+            slowestName = name;
+        }
+    }
+
+    synchronized int getCount() {
+        int count = 0;
+        for (int value : counts) {
+            count += value;
+        }
+        return count;
+    }
+
+    synchronized int getCount(int kind) {
+        return counts[kind];
+    }
+
+    synchronized long getTotalNanos() {
+        long total = 0L;
+        for (long value : totalNanos) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Adds the {@link #SUMMARY_MAP} to the operation - if any declaration was recorded
+     * @param op The declaration {@link Operation}
+     */
+    synchronized Operation applyTo(Operation op) {
+        if (getCount() <= 0) {
+            return op;
+        }
+
+        op.createMap(SUMMARY_MAP)
+          .put("count", getCount())
+          .put(SUMMARY_NAMES[EXCHANGE], counts[EXCHANGE])
+          .put(SUMMARY_NAMES[QUEUE], counts[QUEUE])
+          .put(SUMMARY_NAMES[BIND], counts[BIND])
+          .put(SUMMARY_NAMES[QOS], counts[QOS])
+          .put("totalTime", getTotalNanos() / 1000L)
+          .put("span", Math.max(0L, lastEndTime - firstStartTime) / 1000000L)
+          .put("slowestType", DECLARE_TYPES[slowestKind])
+          .putAnyNonEmpty("slowestName", slowestName)
+          .put("slowestTime", slowestNanos / 1000L)
+          ;
+        return op;
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Connection connection;
+
+        @SuppressWarnings("hiding")
+        Remover(Connection connection) {
+            this.connection = connection;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            summaries.remove(connection);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which consumed messages get a full {@link com.springsource.insight.intercept.operation.Operation}.
+ * Sampling is done per key (consumer tag for deliveries, queue name for <code>basicGet</code>),
+ * either 1-in-N or via a token bucket allowing N operations per second. Unsampled messages
+ * are counted so that the next sampled operation can report how many messages it stands for
+ * (see {@link #SAMPLE_WEIGHT}). The defaults may be overridden via the
+ * <code>insight.plugin.rabbitmq.sampling.*</code> system properties.
+ */
+final class DeliverySampler {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.sampling.";
+    static final String MODE_PROPERTY = PROPERTY_PREFIX + "mode";
+    static final String RATE_PROPERTY = PROPERTY_PREFIX + "rate";
+
+    /**
+     * Name of the {@link com.springsource.insight.intercept.operation.Operation} property
+     * holding the number of messages a sampled operation represents - set only if &gt; 1
+     */
+    public static final String SAMPLE_WEIGHT = "sampleWeight";
+
+    /**
+     * Max. number of keys tracked separately - any others share a single state
+     */
+    static final int MAX_KEYS = 1024;
+    private static final String OVERFLOW_KEY = "*";
+
+    static enum Mode {
+        /**
+         * Every message is collected
+         */
+        ALL,
+        /**
+         * One of every <I>rate</I> messages per key is collected
+         */
+        ONE_IN_N,
+        /**
+         * At most <I>rate</I> messages per second per key are collected
+         */
+        TOKEN_BUCKET
+    }
+
+    private final Mode mode;
+    private final int rate;
+    private final ConcurrentMap<String, KeyState> states = new ConcurrentHashMap<String, KeyState>();
+
+    DeliverySampler(Mode mode, int rate) {
+        if (mode == null) {
+            throw new IllegalArgumentException("No sampling mode specified");
+        }
+        if ((mode != Mode.ALL) && (rate <= 0)) {
+            throw new IllegalArgumentException("Bad sampling rate for " + mode + ": " + rate);
+        }
+
+        this.mode = mode;
+        this.rate = rate;
+    }
+
+    static DeliverySampler fromSystemProperties() {
+        String modeName = System.getProperty(MODE_PROPERTY, Mode.ALL.name());
+        int rate = Integer.getInteger(RATE_PROPERTY, 1).intValue();
+        try {
+            return new DeliverySampler(Mode.valueOf(modeName.trim().toUpperCase()), rate);
+        } catch (IllegalArgumentException e) {
+            // bad configuration must not prevent the collection
+            return new DeliverySampler(Mode.ALL, 1);
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    int getRate() {
+        return rate;
+    }
+
+    /**
+     * @param key The consumer tag or queue name
+     * @return Zero if the message should not be collected, otherwise the number of
+     * messages - including this one - the collected operation stands for
+     */
+    int sample(String key) {
+        if (mode == Mode.ALL) {
+            return 1;
+        }
+
+        KeyState state = getState(key);
+        boolean sampled = (mode == Mode.ONE_IN_N) ? state.nextInSequence(rate) : state.acquireToken(rate, System.nanoTime());
+        if (!sampled) {
+            state.skipped.incrementAndGet();
+            return 0;
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, state.skipped.getAndSet(0) + 1L);
+    }
+
+    /**
+     * @return Total number of messages not collected so far and not yet
+     * accounted for by a sampled operation
+     */
+    long getPendingUnsampled() {
+        long total = 0L;
+        for (KeyState state : states.values()) {
+            total += state.skipped.get();
+        }
+        return total;
+    }
+
+    private KeyState getState(String key) {
+        String effectiveKey = (key == null) ? "" : key;
+        KeyState state = states.get(effectiveKey);
+        if (state != null) {
+            return state;
+        }
+
+        if (states.size() >= MAX_KEYS) {
+            effectiveKey = OVERFLOW_KEY;
+            state = states.get(effectiveKey);
+            if (state != null) {
+                return state;
+            }
+        }
+
+        state = new KeyState(rate);
+        KeyState prev = states.putIfAbsent(effectiveKey, state);
+        return (prev == null) ? state : prev;
+    }
+
+    private static final class KeyState {
+        private static final long NANOS_PER_SECOND = 1000000000L;
+
+        final AtomicLong skipped = new AtomicLong(0L);
+        private final AtomicLong sequence = new AtomicLong(0L);
+        // token bucket state - guarded by "this"
+        private double tokens;
+        private long lastRefill;
+
+        KeyState(int capacity) {
+            tokens = capacity;
+            lastRefill = System.nanoTime();
+        }
+
+        boolean nextInSequence(int n) {
+            return (sequence.getAndIncrement() % n) == 0L;
+        }
+
+        synchronized boolean acquireToken(int permitsPerSecond, long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed > 0L) {
+                tokens = Math.min(permitsPerSecond, tokens + ((double) elapsed * permitsPerSecond) / NANOS_PER_SECOND);
+                lastRefill = now;
+            }
+
+            if (tokens < 1.0d) {
+                return false;
+            }
+
+            tokens -= 1.0d;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Remembers when each message was delivered on a {@link Channel} so that the
+ * matching <code>basicAck/Nack/Reject</code> can compute the delivery-to-ack
+ * latency. Delivery tags are monotonic per channel, so the entries are kept in
+ * a ring of primitive arrays indexed by the tag - at most {@link #CAPACITY}
+ * un-acknowledged deliveries are tracked and older ones are simply overwritten.
+ * The gap between the latest delivered tag and the oldest un-acknowledged one
+ * approximates how far the consumer of the channel falls behind its deliveries.
+ */
+final class DeliveryTracker {
+    static final int CAPACITY = 1024;   // must be a power of 2
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * Max. number of tracked channels - a safety net for channels that are
+     * never closed
+     */
+    static final int MAX_CHANNELS = 4096;
+    private static final ConcurrentMap<Channel, DeliveryTracker> trackers = new ConcurrentHashMap<Channel, DeliveryTracker>();
+
+    // zero means empty slot - delivery tags start at 1
+    private final long[] tags = new long[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+    private final String[] queues = new String[CAPACITY];
+    private long oldestTag;
+    private long lastTag;
+
+    DeliveryTracker() {
+        super();
+    }
+
+    /**
+     * @param channel The {@link Channel}
+     * @param create <code>true</code> if a tracker should be created if none exists
+     * @return The {@link DeliveryTracker} of the channel - <code>null</code> if
+     * none exists and none was created
+     */
+    static DeliveryTracker forChannel(Channel channel, boolean create) {
+        if (channel == null) {
+            return null;
+        }
+
+        DeliveryTracker tracker = trackers.get(channel);
+        if ((tracker != null) || (!create) || (trackers.size() >= MAX_CHANNELS)) {
+            return tracker;
+        }
+
+        tracker = new DeliveryTracker();
+        DeliveryTracker prev = trackers.putIfAbsent(channel, tracker);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the channel is already closed the listener is invoked immediately
+        channel.addShutdownListener(new Remover(channel));
+        return tracker;
+    }
+
+    static int getTrackedChannels() {
+        return trackers.size();
+    }
+
+    /**
+     * @param deliveryTag The delivered tag
+     * @param timestamp The {@link System#nanoTime()} of the delivery
+     * @param queue The queue the message was consumed from - <code>null</code> if unknown
+     */
+    synchronized void delivered(long deliveryTag, long timestamp, String queue) {
+        if (deliveryTag <= 0L) {
+            return;
+        }
+
+        int index = (int) (deliveryTag & MASK);
+        tags[index] = deliveryTag;
+        timestamps[index] = timestamp;
+        queues[index] = queue;
+
+        if ((oldestTag <= 0L) || (deliveryTag < lastTag)) {
+            // first delivery - or the channel delivery tags restarted
+            oldestTag = deliveryTag;
+            lastTag = deliveryTag;
+        } else if (deliveryTag - oldestTag >= CAPACITY) {
+            oldestTag = deliveryTag - MASK;
+        }
+
+        lastTag = Math.max(lastTag, deliveryTag);
+        advanceOldest();
+    }
+
+    /**
+     * @param deliveryTag The acknowledged tag
+     * @param multiple <code>true</code> if all tags up to and including this one are acknowledged
+     * @param now The {@link System#nanoTime()} of the acknowledgment
+     * @param result The {@link Acknowledgment} to be updated with the latency (msec.)
+     * of each acknowledged delivery and the queue of the latest one - may be <code>null</code>
+     * @return Number of tracked deliveries that were acknowledged
+     */
+    synchronized int acknowledge(long deliveryTag, boolean multiple, long now, Acknowledgment result) {
+        long first = deliveryTag;
+        if (multiple) {
+            first = Math.max(Math.max(oldestTag, 1L), deliveryTag - MASK);
+        }
+
+        int count = 0;
+        for (long tag = first; tag <= deliveryTag; tag++) {
+            int index = (int) (tag & MASK);
+            if (tags[index] != tag) {
+                continue;
+            }
+
+            if (result != null) {
+                result.acknowledged(queues[index], (now - timestamps[index]) / 1000000L);
+            }
+
+            tags[index] = 0L;
+            queues[index] = null;
+            count++;
+        }
+
+        if (multiple || (deliveryTag == oldestTag)) {
+            oldestTag = Math.max(oldestTag, deliveryTag + 1L);
+        }
+        advanceOldest();
+
+        return count;
+    }
+
+    /**
+     * @return The number of deliveries made on the channel since the oldest
+     * one that was not acknowledged yet - zero if all have been acknowledged.
+     * At most {@link #CAPACITY} - 1 since older deliveries are not tracked
+     */
+    synchronized long getDeliveryTagGap() {
+        if ((oldestTag <= 0L) || (tags[(int) (oldestTag & MASK)] != oldestTag)) {
+            return 0L;
+        }
+        return lastTag - oldestTag;
+    }
+
+    // skips the acknowledged (or never tracked) tags - amortized since it only moves forward
+    private void advanceOldest() {
+        while ((oldestTag < lastTag) && (tags[(int) (oldestTag & MASK)] != oldestTag)) {
+            oldestTag++;
+        }
+    }
+
+    /**
+     * @return Number of tracked deliveries that have not been acknowledged yet
+     */
+    synchronized int getOutstanding() {
+        int count = 0;
+        for (long tag : tags) {
+            if (tag != 0L) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The outcome of an acknowledgment - reused by the acknowledging thread so
+     * that nothing is allocated per acknowledgment. <B>Note:</B> not thread-safe.
+     */
+    static final class Acknowledgment {
+        private final LogHistogram latencies = new LogHistogram();
+        private String queue;
+        private int count;
+
+        Acknowledgment() {
+            super();
+        }
+
+        void acknowledged(String ackedQueue, long latency) {
+            if (ackedQueue != null) {
+                queue = ackedQueue;
+            }
+            latencies.record(latency);
+            count++;
+        }
+
+        /**
+         * @return Number of tracked deliveries that were acknowledged
+         */
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The latencies (msec.) of the acknowledged deliveries
+         */
+        LogHistogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return The queue of the latest acknowledged delivery - <code>null</code>
+         * if unknown
+         */
+        String getQueue() {
+            return queue;
+        }
+
+        Acknowledgment reset() {
+            if (count > 0) {
+                latencies.clear();
+            }
+            queue = null;
+            count = 0;
+            return this;
+        }
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Channel channel;
+
+        @SuppressWarnings("hiding")
+        Remover(Channel channel) {
+            this.channel = channel;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            trackers.remove(channel);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.impl.LongString;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Opt-in measurement of the time a message spends in the broker: when enabled,
+ * published messages are stamped with a send-time header (msec. since epoch),
+ * which the consumer side subtracts from its own clock. Since producer and
+ * consumer may run on different hosts, a negative result is reported as a
+ * clock skew rather than as a dwell time. Controlled via the
+ * <code>insight.plugin.rabbitmq.dwell.*</code> system properties - when
+ * disabled the published messages are left untouched.
+ */
+final class DwellTimeHeader {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.dwell.";
+    static final String ENABLED_PROPERTY = PROPERTY_PREFIX + "enabled";
+    static final String HEADER_PROPERTY = PROPERTY_PREFIX + "header";
+
+    public static final String DEFAULT_HEADER = "x-insight-sent";
+    /**
+     * Name of the {@link Operation} property holding the dwell time (msec.)
+     */
+    public static final String DWELL_TIME = "dwellTime";
+    /**
+     * Name of the {@link Operation} property set to <code>true</code> if the
+     * dwell time is negative - i.e., the producer's clock is ahead of the consumer's
+     */
+    public static final String CLOCK_SKEW = "clockSkew";
+
+    static final String headerName = System.getProperty(HEADER_PROPERTY, DEFAULT_HEADER);
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private DwellTimeHeader() {
+        // no instance
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * @param props The original {@link BasicProperties} - may be <code>null</code>
+     * @param sentTime The send time (msec. since epoch)
+     * @return A copy of the properties with the send-time header added - the
+     * original properties (and their headers) are never modified
+     */
+    static BasicProperties stamp(BasicProperties props, long sentTime) {
+        if (props == null) {
+            return new BasicProperties.Builder()
+                    .headers(createHeaders(null, sentTime))
+                    .build();
+        }
+
+        return new BasicProperties.Builder()
+                .contentType(props.getContentType())
+                .contentEncoding(props.getContentEncoding())
+                .headers(createHeaders(props.getHeaders(), sentTime))
+                .deliveryMode(props.getDeliveryMode())
+                .priority(props.getPriority())
+                .correlationId(props.getCorrelationId())
+                .replyTo(props.getReplyTo())
+                .expiration(props.getExpiration())
+                .messageId(props.getMessageId())
+                .timestamp(props.getTimestamp())
+                .type(props.getType())
+                .userId(props.getUserId())
+                .appId(props.getAppId())
+                .clusterId(props.getClusterId())
+                .build();
+    }
+
+    private static Map<String, Object> createHeaders(Map<String, Object> headers, long sentTime) {
+        Map<String, Object> stamped = (headers == null)
+                ? new HashMap<String, Object>(2)
+                : new HashMap<String, Object>(headers)
+                ;
+        stamped.put(headerName, Long.valueOf(sentTime));
+        return stamped;
+    }
+
+    /**
+     * @param props The received {@link BasicProperties} - may be <code>null</code>
+     * @return The send time (msec. since epoch) - negative if not stamped
+     */
+    static long getSentTime(BasicProperties props) {
+        Map<String, Object> headers = (props == null) ? null : props.getHeaders();
+        Object value = (headers == null) ? null : headers.get(headerName);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        // e.g., re-published by a client that converted it to a string
+        if ((value instanceof LongString) || (value instanceof String)) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Adds the dwell time if the message was stamped
+     * @param op The consumer {@link Operation}
+     * @param props The received {@link BasicProperties} - may be <code>null</code>
+     * @param now The receive time (msec. since epoch)
+     */
+    static Operation applyTo(Operation op, BasicProperties props, long now) {
+        long sentTime = getSentTime(props);
+        if (sentTime < 0L) {
+            return op;
+        }
+
+        long dwellTime = now - sentTime;
+        op.put(DWELL_TIME, dwellTime);
+        if (dwellTime < 0L) {
+            op.put(CLOCK_SKEW, true);
+        }
+        return op;
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.FlowListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Tracks the flow-control windows of a {@link Connection} - i.e., the periods
+ * during which the broker (typically due to a memory alarm) has stopped at
+ * least one of its channels from publishing via <code>channel.flow</code>.
+ * A {@link FlowListener} is set on each channel as it is created - invoking
+ * the application's listener, including one set later (see {@link #chain(Channel, FlowListener)}) -
+ * and the (wall-clock) union of the windows is accumulated as the connection
+ * stall time, so that publishes that overlapped a window can be annotated with it.
+ */
+final class FlowControlMonitor {
+    /**
+     * Name of the {@link Operation} property holding the time (msec.) the
+     * publish overlapped a flow-control window
+     */
+    public static final String FLOW_STALL_TIME = "flowStallTime";
+    /**
+     * Name of the {@link Operation} property holding the accumulated stall time
+     * (msec.) of the publishing connection
+     */
+    public static final String CONNECTION_STALL_TIME = "connectionStallTime";
+
+    /**
+     * Max. number of tracked connections - a safety net for connections that are
+     * never closed
+     */
+    static final int MAX_CONNECTIONS = 1024;
+    private static final ConcurrentMap<Connection, FlowControlMonitor> monitors = new ConcurrentHashMap<Connection, FlowControlMonitor>();
+
+    private final Set<Channel> blockedChannels = new HashSet<Channel>();
+    private int windowCount;
+    private long windowStart, lastWindowStart, lastWindowEnd;
+    private long totalStallNanos;
+
+    FlowControlMonitor() {
+        super();
+    }
+
+    /**
+     * @param connection The {@link Connection}
+     * @param create <code>true</code> if a monitor should be created if none exists
+     * @return The {@link FlowControlMonitor} of the connection - <code>null</code> if
+     * none exists and none was created
+     */
+    static FlowControlMonitor forConnection(Connection connection, boolean create) {
+        if (connection == null) {
+            return null;
+        }
+
+        FlowControlMonitor monitor = monitors.get(connection);
+        if ((monitor != null) || (!create) || (monitors.size() >= MAX_CONNECTIONS)) {
+            return monitor;
+        }
+
+        monitor = new FlowControlMonitor();
+        FlowControlMonitor prev = monitors.putIfAbsent(connection, monitor);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the connection is already closed the listener is invoked immediately
+        connection.addShutdownListener(new Remover(connection));
+        return monitor;
+    }
+
+    static int getTrackedConnections() {
+        return monitors.size();
+    }
+
+    /**
+     * Sets a {@link FlowListener} on a newly created channel of the connection -
+     * the channel has a single listener, so the one already set (if any) is
+     * invoked by the registered one
+     * @param channel The {@link Channel} - ignored if <code>null</code>
+     */
+    void register(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+
+        FlowListener current = channel.getFlowListener();
+        if (current instanceof ChannelListener) {
+            return; // already registered
+        }
+
+        ChannelListener listener = new ChannelListener(this, channel, current);
+        channel.setFlowListener(listener);
+        // a channel closed while blocked no longer stalls the connection
+        channel.addShutdownListener(listener);
+    }
+
+    /**
+     * @param channel The {@link Channel} whose listener is being set
+     * @param listener The {@link FlowListener} set by the application
+     * @return The listener to be actually set - if the channel is monitored, its
+     * monitoring listener now chaining the application's one, otherwise the
+     * application's one as is
+     */
+    static FlowListener chain(Channel channel, FlowListener listener) {
+        FlowListener current = (channel == null) ? null : channel.getFlowListener();
+        if ((!(current instanceof ChannelListener)) || (listener instanceof ChannelListener)) {
+            return listener;
+        }
+
+        ((ChannelListener) current).setDelegate(listener);
+        return current;
+    }
+
+    /**
+     * @param channel The {@link Channel} whose flow state changed
+     * @param active <code>false</code> if the channel was stopped from publishing
+     * @param now The {@link System#nanoTime()} of the change
+     */
+    synchronized void flow(Channel channel, boolean active, long now) {
+        if (!active) {
+            if (blockedChannels.add(channel) && (blockedChannels.size() == 1)) {
+                windowStart = now;
+                windowCount++;
+            }
+        } else if (blockedChannels.remove(channel) && blockedChannels.isEmpty()) {
+            totalStallNanos += Math.max(0L, now - windowStart);
+            lastWindowStart = windowStart;
+            lastWindowEnd = now;
+        }
+    }
+
+    synchronized boolean isBlocked() {
+        return !blockedChannels.isEmpty();
+    }
+
+    synchronized int getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * @param now The current {@link System#nanoTime()}
+     * @return The accumulated stall time - including the current window (if any)
+     */
+    synchronized long getStallNanos(long now) {
+        return isBlocked() ? totalStallNanos + Math.max(0L, now - windowStart) : totalStallNanos;
+    }
+
+    /**
+     * @param startTime The {@link System#nanoTime()} at which the publish started
+     * @param endTime The {@link System#nanoTime()} at which the publish ended
+     * @return The time the publish overlapped the current or latest flow-control
+     * window - zero if none
+     */
+    synchronized long getOverlapNanos(long startTime, long endTime) {
+        if (isBlocked()) {
+            return Math.max(0L, endTime - Math.max(startTime, windowStart));
+        }
+        if ((windowCount <= 0) || (lastWindowEnd - startTime < 0L)) {
+            return 0L;
+        }
+        return Math.max(0L, lastWindowEnd - Math.max(startTime, lastWindowStart));
+    }
+
+    /**
+     * Annotates a publish that overlapped a flow-control window
+     * @param op The publish {@link Operation}
+     * @param startTime The {@link System#nanoTime()} at which the publish started
+     * @param endTime The {@link System#nanoTime()} at which the publish ended
+     */
+    Operation applyTo(Operation op, long startTime, long endTime) {
+        long overlap = getOverlapNanos(startTime, endTime);
+        if (overlap > 0L) {
+            op.put(FLOW_STALL_TIME, overlap / 1000000L)
+              .put(CONNECTION_STALL_TIME, getStallNanos(endTime) / 1000000L)
+              ;
+        }
+        return op;
+    }
+
+    private static final class ChannelListener implements FlowListener, ShutdownListener {
+        private final FlowControlMonitor monitor;
+        private final Channel channel;
+        // the application's listener - if any
+        private volatile FlowListener delegate;
+
+        @SuppressWarnings("hiding")
+        ChannelListener(FlowControlMonitor monitor, Channel channel, FlowListener delegate) {
+            this.monitor = monitor;
+            this.channel = channel;
+            this.delegate = delegate;
+        }
+
+        @SuppressWarnings("hiding")
+        void setDelegate(FlowListener delegate) {
+            this.delegate = delegate;
+        }
+
+        public void handleFlow(boolean active) throws IOException {
+            monitor.flow(channel, active, System.nanoTime());
+
+            FlowListener listener = delegate;
+            if (listener != null) {
+                listener.handleFlow(active);
+            }
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            monitor.flow(channel, true, System.nanoTime());
+        }
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Connection connection;
+
+        @SuppressWarnings("hiding")
+        Remover(Connection connection) {
+            this.connection = connection;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            monitors.remove(connection);
+        }
+    }
+}
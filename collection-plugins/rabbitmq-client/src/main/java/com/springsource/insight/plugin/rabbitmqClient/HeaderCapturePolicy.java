@@ -0,0 +1,181 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.rabbitmq.client.impl.LongString;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * Bounds the cost of capturing AMQP message headers: only allowed header names
+ * are copied, at most {@link #getMaxHeaders()} of them, and only the first
+ * {@link #getMaxValueBytes()} bytes of a {@link LongString} are decoded (as UTF-8).
+ * The defaults may be overridden via the <code>insight.plugin.rabbitmq.headers.*</code>
+ * system properties.
+ */
+final class HeaderCapturePolicy {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.headers.";
+    static final String INCLUDE_PROPERTY = PROPERTY_PREFIX + "include";
+    static final String EXCLUDE_PROPERTY = PROPERTY_PREFIX + "exclude";
+    static final String MAX_VALUE_BYTES_PROPERTY = PROPERTY_PREFIX + "maxValueBytes";
+    static final String MAX_HEADERS_PROPERTY = PROPERTY_PREFIX + "maxCount";
+
+    public static final int DEFAULT_MAX_VALUE_BYTES = 256;
+    public static final int DEFAULT_MAX_HEADERS = 32;
+
+    private static final String ELLIPSIS = "...";
+    private static final String UTF8 = "UTF-8";
+
+    private final Set<String> includes;
+    private final Set<String> excludes;
+    private final int maxValueBytes;
+    private final int maxHeaders;
+
+    /**
+     * @param includes Header names to capture - <code>null</code>/empty means all
+     * @param excludes Header names never to capture - takes precedence over the includes
+     * @param maxValueBytes Max. bytes (or characters for {@link String} values) kept per value
+     * @param maxHeaders Max. number of headers captured per message
+     */
+    HeaderCapturePolicy(Collection<String> includes, Collection<String> excludes, int maxValueBytes, int maxHeaders) {
+        this.includes = toSet(includes);
+        this.excludes = toSet(excludes);
+        this.maxValueBytes = Math.max(0, maxValueBytes);
+        this.maxHeaders = Math.max(0, maxHeaders);
+    }
+
+    static HeaderCapturePolicy fromSystemProperties() {
+        return new HeaderCapturePolicy(parseNames(System.getProperty(INCLUDE_PROPERTY)),
+                                       parseNames(System.getProperty(EXCLUDE_PROPERTY)),
+                                       Integer.getInteger(MAX_VALUE_BYTES_PROPERTY, DEFAULT_MAX_VALUE_BYTES).intValue(),
+                                       Integer.getInteger(MAX_HEADERS_PROPERTY, DEFAULT_MAX_HEADERS).intValue());
+    }
+
+    int getMaxValueBytes() {
+        return maxValueBytes;
+    }
+
+    int getMaxHeaders() {
+        return maxHeaders;
+    }
+
+    boolean accept(String name) {
+        if ((name == null) || excludes.contains(name)) {
+            return false;
+        }
+
+        return includes.isEmpty() || includes.contains(name);
+    }
+
+    /**
+     * Copies the allowed headers into the target map
+     * @return Number of captured headers
+     */
+    int capture(Map<String, Object> headers, OperationMap target) {
+        int captured = 0;
+
+        for (Entry<String, Object> entry : headers.entrySet()) {
+            if (captured >= maxHeaders) {
+                break;
+            }
+
+            String name = entry.getKey();
+            if (!accept(name)) {
+                continue;
+            }
+
+            target.putAnyNonEmpty(name, captureValue(entry.getValue()));
+            captured++;
+        }
+
+        return captured;
+    }
+
+    Object captureValue(Object value) {
+        if (value instanceof LongString) {
+            return decode(((LongString) value).getBytes());
+        } else if (value instanceof byte[]) {
+            return decode((byte[]) value);
+        } else if (value instanceof String) {
+            String str = (String) value;
+            if (str.length() > maxValueBytes) {
+                return str.substring(0, maxValueBytes) + ELLIPSIS;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Decodes only the retained prefix of the value, backing off to the start
+     * of a UTF-8 sequence so that no character is cut in the middle
+     */
+    String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        int len = bytes.length;
+        boolean truncated = len > maxValueBytes;
+        if (truncated) {
+            len = maxValueBytes;
+            while ((len > 0) && ((bytes[len] & 0xC0) == 0x80)) {
+                len--;
+            }
+        }
+
+        String str;
+        try {
+            str = new String(bytes, 0, len, UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported: " + e.getMessage());   // should not happen
+        }
+
+        return truncated ? str + ELLIPSIS : str;
+    }
+
+    static Collection<String> parseNames(String value) {
+        if ((value == null) || (value.trim().length() == 0)) {
+            return Collections.emptyList();
+        }
+
+        Set<String> names = new HashSet<String>();
+        for (String name : value.split(",")) {
+            name = name.trim();
+            if (name.length() > 0) {
+                names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    private static Set<String> toSet(Collection<String> names) {
+        if ((names == null) || names.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return Collections.unmodifiableSet(new HashSet<String>(names));
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.Arrays;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * A fixed-bucket histogram whose bucket upper bounds are powers of 2 - i.e.,
+ * bucket <I>i</I> holds the values in the range (2<sup>i-1</sup>, 2<sup>i</sup>].
+ * Used to report latency/size distributions as a small, fixed set of counters.
+ * The exact count, sum, min and max are kept as well, so the percentiles are
+ * estimated within a factor of 2 while the mean is exact.
+ * <B>Note:</B> not thread-safe.
+ */
+final class LogHistogram {
+    public static final int NUM_BUCKETS = 32;
+    /**
+     * Prefix of the bucket names - followed by the bucket upper bound
+     */
+    public static final String BUCKET_PREFIX = "le";
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long count, sum;
+    private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+    LogHistogram() {
+        super();
+    }
+
+    /**
+     * @param value The value - negative values are counted as zero
+     * @return The matching bucket index - values above the last bucket upper
+     * bound are counted in the last bucket
+     */
+    static int bucketOf(long value) {
+        if (value <= 1L) {
+            return 0;
+        }
+
+        // ceil(log2(value))
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(value - 1L);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        return 1L << bucket;
+    }
+
+    static String bucketName(int bucket) {
+        return BUCKET_PREFIX + upperBound(bucket);
+    }
+
+    void record(long value) {
+        record(value, 1L);
+    }
+
+    void record(long value, long times) {
+        if (times <= 0L) {
+            return;
+        }
+
+        counts[bucketOf(value)] += times;
+        count += times;
+        sum += value * times;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0L);
+        count = 0L;
+        sum = 0L;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    boolean isEmpty() {
+        return count <= 0L;
+    }
+
+    /**
+     * @return The smallest recorded value - zero if empty
+     */
+    long getMin() {
+        return isEmpty() ? 0L : min;
+    }
+
+    /**
+     * @return The largest recorded value - zero if empty
+     */
+    long getMax() {
+        return isEmpty() ? 0L : max;
+    }
+
+    long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The (exact) mean of the recorded values - zero if empty
+     */
+    long getMean() {
+        return isEmpty() ? 0L : sum / count;
+    }
+
+    /**
+     * @param percent The requested percentile - (0, 100]
+     * @return An estimate of the value at the percentile - the upper bound of the
+     * bucket in which it falls, clamped to the recorded min/max values. Zero if empty
+     */
+    long getPercentile(double percent) {
+        if (isEmpty()) {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(count * Math.min(Math.max(percent, 0.0d), 100.0d) / 100.0d);
+        long seen = 0L;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if ((seen >= rank) && (counts[bucket] > 0L)) {
+                return Math.max(min, Math.min(max, upperBound(bucket)));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Stores the non-empty buckets as a map of bucket name to count
+     * @param op The {@link Operation} to update
+     * @param name The map name
+     */
+    Operation applyTo(Operation op, String name) {
+        OperationMap map = op.createMap(name);
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            if (counts[bucket] > 0L) {
+                map.put(bucketName(bucket), counts[bucket]);
+            }
+        }
+        return op;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * A thread-confined stack of in-progress {@link Operation}s along with the
+ * {@link System#nanoTime()} at which each was started. Backed by parallel
+ * arrays so that pushing/popping does not allocate. <B>Note:</B> not thread-safe.
+ */
+final class OperationStack {
+    private Operation[] operations = new Operation[4];
+    private long[] timestamps = new long[4];
+    private boolean[] entered = new boolean[4];
+    private int size;
+
+    OperationStack() {
+        super();
+    }
+
+    /**
+     * @param op The {@link Operation} - may be <code>null</code> as a place holder
+     * for a call that is not being collected
+     * @param timestamp The {@link System#nanoTime()} at which the call started
+     */
+    void push(Operation op, long timestamp) {
+        push(op, timestamp, op != null);
+    }
+
+    /**
+     * @param op The {@link Operation} - may be <code>null</code> as a place holder
+     * for a call that is not being collected
+     * @param timestamp The {@link System#nanoTime()} at which the call started
+     * @param opEntered <code>false</code> if entering the operation was deferred
+     * to the call exit
+     */
+    void push(Operation op, long timestamp, boolean opEntered) {
+        if (size == operations.length) {
+            Operation[] newOps = new Operation[size * 2];
+            System.arraycopy(operations, 0, newOps, 0, size);
+            operations = newOps;
+
+            long[] newTimestamps = new long[size * 2];
+            System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+            timestamps = newTimestamps;
+
+            boolean[] newEntered = new boolean[size * 2];
+            System.arraycopy(entered, 0, newEntered, 0, size);
+            entered = newEntered;
+        }
+
+        operations[size] = op;
+        timestamps[size] = timestamp;
+        entered[size] = opEntered;
+        size++;
+    }
+
+    /**
+     * @return The start time of the top entry
+     * @throws IllegalStateException if the stack is empty
+     */
+    long peekTimestamp() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+        return timestamps[size - 1];
+    }
+
+    /**
+     * @return <code>true</code> if the top entry operation has been entered
+     * @throws IllegalStateException if the stack is empty
+     */
+    boolean peekEntered() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+        return entered[size - 1];
+    }
+
+    /**
+     * @return The top {@link Operation} (which may be <code>null</code>)
+     * @throws IllegalStateException if the stack is empty
+     */
+    Operation pop() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+
+        size--;
+        Operation op = operations[size];
+        operations[size] = null;    // don't hold on to it
+        return op;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
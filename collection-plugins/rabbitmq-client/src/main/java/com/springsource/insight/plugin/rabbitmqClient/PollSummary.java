@@ -0,0 +1,195 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Coalesces the empty <code>basicGet</code> polls of a queue by a thread. The
+ * first empty poll of an idle streak is reported as is, so that idleness shows
+ * up right away. The following empty polls are not reported individually but
+ * accumulated - per thread and queue - and reported as a single summary either
+ * on the next poll that returns a message or on the empty poll that reaches the
+ * configured limits. The limits may be overridden via the
+ * <code>insight.plugin.rabbitmq.poll.*</code> system properties.
+ */
+final class PollSummary {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.poll.";
+    static final String MAX_EMPTY_POLLS_PROPERTY = PROPERTY_PREFIX + "maxEmptyPolls";
+    static final String MAX_INTERVAL_PROPERTY = PROPERTY_PREFIX + "maxIntervalMillis";
+
+    /**
+     * Name of the {@link Operation} property holding the summary map
+     */
+    public static final String SUMMARY_MAP = "pollSummary";
+    public static final String SUMMARY_LABEL = "Poll Summary";
+
+    public static final int DEFAULT_MAX_EMPTY_POLLS = 1000;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 60000L;
+
+    private final int maxEmptyPolls;
+    private final long maxIntervalNanos;
+    // the idle streaks of the current thread per queue
+    private final ThreadLocal<Map<String, Streak>> streaks = new ThreadLocal<Map<String, Streak>>() {
+        @Override
+        protected Map<String, Streak> initialValue() {
+            return new HashMap<String, Streak>();
+        }
+    };
+
+    /**
+     * @param maxEmptyPolls Max. number of empty polls folded into a single
+     * summary - zero or less disables the coalescing, i.e., every empty poll
+     * is reported
+     * @param maxIntervalMillis Max. time span (msec.) of the empty polls folded
+     * into a single summary
+     */
+    PollSummary(int maxEmptyPolls, long maxIntervalMillis) {
+        this.maxEmptyPolls = maxEmptyPolls;
+        this.maxIntervalNanos = maxIntervalMillis * 1000000L;
+    }
+
+    static PollSummary fromSystemProperties() {
+        return new PollSummary(Integer.getInteger(MAX_EMPTY_POLLS_PROPERTY, DEFAULT_MAX_EMPTY_POLLS).intValue(),
+                               Long.getLong(MAX_INTERVAL_PROPERTY, DEFAULT_MAX_INTERVAL_MILLIS).longValue());
+    }
+
+    boolean isEnabled() {
+        return maxEmptyPolls > 0;
+    }
+
+    int getMaxEmptyPolls() {
+        return maxEmptyPolls;
+    }
+
+    long getMaxIntervalNanos() {
+        return maxIntervalNanos;
+    }
+
+    /**
+     * @param queue The polled queue
+     * @return <code>true</code> if the current thread's latest poll of the queue
+     * was empty - i.e., its next poll is expected to be empty as well
+     */
+    boolean isIdle(String queue) {
+        Streak streak = isEnabled() ? streaks.get().get(queue) : null;
+        return (streak != null) && streak.isIdle();
+    }
+
+    /**
+     * @param queue The polled queue
+     * @param create <code>true</code> if a streak should be created if none exists
+     * @return The current thread's {@link Streak} of the queue - <code>null</code>
+     * if none exists and none was created
+     */
+    Streak getStreak(String queue, boolean create) {
+        Map<String, Streak> queueStreaks = streaks.get();
+        Streak streak = queueStreaks.get(queue);
+        if ((streak == null) && create) {
+            streak = new Streak(this);
+            queueStreaks.put(queue, streak);
+        }
+        return streak;
+    }
+
+    /**
+     * The empty polls of a queue by a single thread. <B>Note:</B> not thread-safe -
+     * instances are thread-confined.
+     */
+    static final class Streak {
+        private final PollSummary limits;
+        private boolean idle;
+        private int emptyCount;
+        private long totalWaitNanos;
+        private long firstPollTime;
+
+        Streak(PollSummary limits) {
+            this.limits = limits;
+        }
+
+        boolean isIdle() {
+            return idle;
+        }
+
+        int getEmptyCount() {
+            return emptyCount;
+        }
+
+        long getTotalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        /**
+         * @return <code>true</code> if there are accumulated polls that were not reported yet
+         */
+        boolean isPending() {
+            return emptyCount > 0;
+        }
+
+        /**
+         * Ends the idle streak - i.e., a poll returned a message
+         */
+        void received() {
+            idle = false;
+        }
+
+        /**
+         * @param startTime The {@link System#nanoTime()} at which the poll started
+         * @param endTime The {@link System#nanoTime()} at which the poll ended
+         * @return <code>true</code> if the limits have been reached and the summary
+         * should be reported now
+         */
+        boolean recordEmptyPoll(long startTime, long endTime) {
+            if (emptyCount <= 0) {
+                firstPollTime = startTime;
+            }
+
+            idle = true;
+            emptyCount++;
+            totalWaitNanos += Math.max(0L, endTime - startTime);
+            return (emptyCount >= limits.getMaxEmptyPolls()) || ((endTime - firstPollTime) >= limits.getMaxIntervalNanos());
+        }
+
+        /**
+         * Adds the accumulated counters to the operation and resets them
+         * @param op The reported {@link Operation}
+         * @param received <code>true</code> if the operation itself received a
+         * message - which also ends the idle streak
+         * @param waitNanos The wait time of the reported poll itself
+         */
+        Operation applyTo(Operation op, boolean received, long waitNanos) {
+            int pollCount = received ? emptyCount + 1 : emptyCount;
+            long waitTime = received ? totalWaitNanos + Math.max(0L, waitNanos) : totalWaitNanos;
+
+            op.createMap(SUMMARY_MAP)
+              .put("pollCount", pollCount)
+              .put("emptyCount", emptyCount)
+              .put("totalWaitTime", waitTime / 1000000L)
+              ;
+
+            emptyCount = 0;
+            totalWaitNanos = 0L;
+            if (received) {
+                idle = false;
+            }
+            return op;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Keeps the <code>basicQos</code> prefetch count of a {@link Channel} along with
+ * the number of its in-flight deliveries - i.e., delivered but not acknowledged
+ * yet. Unlike the {@link DeliveryTracker}, every manually acknowledged delivery
+ * is counted - sampled or not - so the in-flight count can be compared with the
+ * prefetch count: a consumer whose in-flight deliveries stay at the prefetch
+ * limit is bound by its acknowledgments, while a large prefetch with few in-flight
+ * deliveries only buffers messages in the client memory.
+ */
+final class PrefetchMonitor {
+    /**
+     * Name of the {@link Operation} property holding the channel prefetch count
+     */
+    public static final String PREFETCH_COUNT = "prefetchCount";
+    /**
+     * Name of the {@link Operation} property holding the channel in-flight deliveries count
+     */
+    public static final String IN_FLIGHT = "inFlight";
+
+    /**
+     * Max. number of tracked channels - a safety net for channels that are
+     * never closed
+     */
+    static final int MAX_CHANNELS = 4096;
+    private static final ConcurrentMap<Channel, PrefetchMonitor> monitors = new ConcurrentHashMap<Channel, PrefetchMonitor>();
+
+    // negative means unknown - zero means unlimited
+    private volatile int prefetchCount = -1;
+    private long lastDeliveredTag;
+    private long inFlight;
+
+    PrefetchMonitor() {
+        super();
+    }
+
+    /**
+     * @param channel The {@link Channel}
+     * @param create <code>true</code> if a monitor should be created if none exists
+     * @return The {@link PrefetchMonitor} of the channel - <code>null</code> if
+     * none exists and none was created
+     */
+    static PrefetchMonitor forChannel(Channel channel, boolean create) {
+        if (channel == null) {
+            return null;
+        }
+
+        PrefetchMonitor monitor = monitors.get(channel);
+        if ((monitor != null) || (!create) || (monitors.size() >= MAX_CHANNELS)) {
+            return monitor;
+        }
+
+        monitor = new PrefetchMonitor();
+        PrefetchMonitor prev = monitors.putIfAbsent(channel, monitor);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the channel is already closed the listener is invoked immediately
+        channel.addShutdownListener(new Remover(channel));
+        return monitor;
+    }
+
+    static int getTrackedChannels() {
+        return monitors.size();
+    }
+
+    /**
+     * @return The prefetch count set via <code>basicQos</code> - zero if unlimited,
+     * negative if not set since the monitoring started
+     */
+    int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    void setPrefetchCount(int count) {
+        prefetchCount = Math.max(0, count);
+    }
+
+    /**
+     * @param deliveryTag The delivery tag of a manually acknowledged delivery
+     * @return The updated in-flight count
+     */
+    synchronized long delivered(long deliveryTag) {
+        if (deliveryTag < lastDeliveredTag) {
+            inFlight = 0L;  // the channel delivery tags restarted
+        }
+
+        lastDeliveredTag = deliveryTag;
+        inFlight++;
+        return inFlight;
+    }
+
+    /**
+     * @param deliveryTag The acknowledged (or rejected) delivery tag
+     * @param multiple <code>true</code> if all tags up to and including this one are acknowledged
+     * @return The updated in-flight count
+     */
+    synchronized long acknowledged(long deliveryTag, boolean multiple) {
+        if (multiple) {
+            // at most the deliveries made after the acknowledged tag remain in-flight
+            inFlight = Math.min(inFlight, Math.max(0L, lastDeliveredTag - deliveryTag));
+        } else {
+            inFlight = Math.max(0L, inFlight - 1L);
+        }
+        return inFlight;
+    }
+
+    synchronized long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Adds the {@link #IN_FLIGHT} count and the {@link #PREFETCH_COUNT} - if known
+     * @param op The {@link Operation} to update
+     */
+    Operation applyTo(Operation op) {
+        int count = getPrefetchCount();
+        if (count >= 0) {
+            op.put(PREFETCH_COUNT, count);
+        }
+        return op.put(IN_FLIGHT, getInFlight());
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Channel channel;
+
+        @SuppressWarnings("hiding")
+        Remover(Channel channel) {
+            this.channel = channel;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            monitors.remove(channel);
+        }
+    }
+}
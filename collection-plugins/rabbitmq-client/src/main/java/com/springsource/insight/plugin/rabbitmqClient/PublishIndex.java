@@ -0,0 +1,228 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Opt-in linking of the consumption of a message to its publishing when both
+ * happen in the same JVM: each publish carrying a message id is remembered
+ * along with the publishing thread and time, so that the consumer
+ * side operation can reference its producer and report the end-to-end latency.
+ * In order to keep the memory flat at high message rates the index is split
+ * into insertion-ordered segments that are bounded both by count - the oldest
+ * entries are evicted first - and by age. An entry is not removed when matched
+ * since the same message may be consumed from several queues. The correlation id
+ * is not used as a key since it is shared by a request and its reply. Controlled
+ * via the <code>insight.plugin.rabbitmq.stitch.*</code> system properties - the
+ * index is disabled unless explicitly enabled, and a zero max. entries disables it too.
+ */
+final class PublishIndex {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.stitch.";
+    static final String ENABLED_PROPERTY = PROPERTY_PREFIX + "enabled";
+    static final String MAX_ENTRIES_PROPERTY = PROPERTY_PREFIX + "maxEntries";
+    static final String MAX_AGE_PROPERTY = PROPERTY_PREFIX + "maxAgeMillis";
+
+    public static final int DEFAULT_MAX_ENTRIES = 8192;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 60000L;
+
+    /**
+     * Name of the {@link Operation} map describing the producer of a consumed message
+     */
+    public static final String PRODUCER_MAP = "producer";
+    /**
+     * Name of the producer map property holding the publish-to-consume time (msec.)
+     */
+    public static final String END_TO_END_LATENCY = "endToEndLatency";
+
+    static final int SEGMENTS = 16;     // must be a power of 2
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maxEntries;
+    private final long maxAgeNanos;
+
+    PublishIndex(int maxEntries, long maxAgeMillis) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Bad max. entries: " + maxEntries);
+        }
+        if (maxAgeMillis <= 0L) {
+            throw new IllegalArgumentException("Bad max. age: " + maxAgeMillis);
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = maxAgeMillis * 1000000L;
+        // at least one entry per segment if enabled
+        int segmentCapacity = (maxEntries + SEGMENTS - 1) / SEGMENTS;
+        for (int index = 0; index < segments.length; index++) {
+            segments[index] = new Segment(segmentCapacity);
+        }
+    }
+
+    static PublishIndex fromSystemProperties() {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+            return new PublishIndex(0, DEFAULT_MAX_AGE_MILLIS);
+        }
+
+        int maxEntries = Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES).intValue();
+        long maxAgeMillis = Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE_MILLIS).longValue();
+        try {
+            return new PublishIndex(maxEntries, maxAgeMillis);
+        } catch (IllegalArgumentException e) {
+            // bad configuration must not prevent the collection
+            return new PublishIndex(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MILLIS);
+        }
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param props The message {@link BasicProperties} - may be <code>null</code>
+     * @return The key the message is indexed by - i.e., its message id,
+     * <code>null</code> if none
+     */
+    static String keyOf(BasicProperties props) {
+        return (props == null) ? null : props.getMessageId();
+    }
+
+    /**
+     * @param key The message key - ignored if <code>null</code>
+     * @param exchange The exchange the message was published to
+     * @param routingKey The publish routing key
+     * @param now The {@link System#nanoTime()} of the publish
+     */
+    void published(String key, String exchange, String routingKey, long now) {
+        if ((key == null) || (!isEnabled())) {
+            return;
+        }
+
+        segmentOf(key).put(key, new Publish(exchange, routingKey, Thread.currentThread().getName(), System.currentTimeMillis(), now), now, maxAgeNanos);
+    }
+
+    /**
+     * @param key The message key - may be <code>null</code>
+     * @param now The {@link System#nanoTime()} of the consumption
+     * @return The matching {@link Publish} - <code>null</code> if none (or too old)
+     */
+    Publish lookup(String key, long now) {
+        if ((key == null) || (!isEnabled())) {
+            return null;
+        }
+
+        Publish publish = segmentOf(key).get(key);
+        if ((publish == null) || (now - publish.timestamp >= maxAgeNanos)) {
+            return null;
+        }
+        return publish;
+    }
+
+    /**
+     * Adds the {@link #PRODUCER_MAP} to a consumer operation - if its producer is known
+     * @param op The consumer {@link Operation}
+     * @param props The consumed message {@link BasicProperties} - may be <code>null</code>
+     */
+    Operation applyTo(Operation op, BasicProperties props) {
+        String key = keyOf(props);
+        long now = System.nanoTime();
+        Publish publish = lookup(key, now);
+        if (publish != null) {
+            op.createMap(PRODUCER_MAP)
+              .put("key", key)
+              .putAnyNonEmpty("exchange", publish.exchange)
+              .putAnyNonEmpty("routingKey", publish.routingKey)
+              .putAnyNonEmpty("thread", publish.thread)
+              .put("publishTime", publish.publishTime)
+              .put(END_TO_END_LATENCY, Math.max(0L, now - publish.timestamp) / 1000000L)
+              ;
+        }
+        return op;
+    }
+
+    private Segment segmentOf(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    static final class Publish {
+        final String exchange, routingKey, thread;
+        final long publishTime;   // msec. since epoch
+        final long timestamp;     // System.nanoTime()
+
+        @SuppressWarnings("hiding")
+        Publish(String exchange, String routingKey, String thread, long publishTime, long timestamp) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.thread = thread;
+            this.publishTime = publishTime;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<String, Publish> entries = new LinkedHashMap<String, Publish>();
+        private final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void put(String key, Publish publish, long now, long maxAgeNanos) {
+            // evict the entries that are too old - the rest are more recent
+            for (Iterator<Publish> iter = entries.values().iterator(); iter.hasNext(); ) {
+                if (now - iter.next().timestamp < maxAgeNanos) {
+                    break;
+                }
+                iter.remove();
+            }
+
+            // re-inserted so that the segment remains ordered by the publish time
+            entries.remove(key);
+            if (entries.size() >= capacity) {
+                Iterator<Publish> iter = entries.values().iterator();
+                iter.next();
+                iter.remove();
+            }
+            entries.put(key, publish);
+        }
+
+        synchronized Publish get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * In addition to the acknowledgments count, reports a counter per acknowledgment
+ * type, the requeued messages and the delivery-to-ack latency histogram buckets -
+ * e.g., <code>rabbitmq-client-ack.latency.le16ms:type=counter</code>
+ */
+public class RabbitMQAckMetricsGenerator extends AbstractRabbitMetricsGenerator {
+    static final String REQUEUE_KEY = ".requeue";
+
+    RabbitMQAckMetricsGenerator() {
+        super(RabbitPluginOperationType.ACK);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getAckCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The acknowledgment {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the extra counter metric keys and their values
+     */
+    static Map<String, Integer> getAckCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        Integer ackCount = op.get("ackCount", Integer.class);
+        int count = (ackCount == null) ? 1 : Math.max(1, ackCount.intValue());
+
+        String ackType = op.get("ackType", String.class);
+        if (ackType != null) {
+            counters.put(opTypeName + "." + ackType + RABBIT_COUNT_SUFFIX, Integer.valueOf(count));
+        }
+
+        Boolean requeue = op.get("requeue", Boolean.class);
+        if ((requeue != null) && requeue.booleanValue()) {
+            counters.put(opTypeName + REQUEUE_KEY + RABBIT_COUNT_SUFFIX, Integer.valueOf(count));
+        }
+
+        OperationMap latencies = op.get(RabbitMQAckCollectionAspect.LATENCY_MAP, OperationMap.class);
+        addHistogramCounters(counters, opTypeName + LATENCY_KEY, "ms", latencies);
+        return counters;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import com.springsource.insight.intercept.endpoint.EndPointAnalysis;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Trace;
+
+/**
+ * Attributes acknowledgments to the queue of the acknowledged delivery.
+ * Acknowledgments never define an endpoint by themselves - the endpoint is
+ * the one of the delivery they belong to.
+ */
+public class RabbitMQAckResourceAnalyzer extends AbstractRabbitMQResourceAnalyzer {
+
+    RabbitMQAckResourceAnalyzer() {
+        super(RabbitPluginOperationType.ACK);
+    }
+
+    @Override
+    public EndPointAnalysis locateEndPoint(Trace trace) {
+        return null;
+    }
+
+    // NOTE: without exchange/routing key the resource is named after the queue
+    @Override
+    protected String getRoutingKey(Operation op) {
+        return null;
+    }
+
+    @Override
+    protected String getExchange(Operation op) {
+        return null;
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * In addition to the confirms count, reports the number of confirmed/rejected
+ * publishes, the confirm round-trip latency histogram buckets - e.g.,
+ * <code>rabbitmq-client-confirm.latency.le16ms:type=counter</code> - and the
+ * outstanding un-confirmed publishes to the exchange, sampled once per second
+ * per channel - <code>rabbitmq-client-confirm.outstanding:type=counter</code>.
+ * Dividing the latter by the length (seconds) of the interval yields the
+ * average number of outstanding publishes.
+ */
+public class RabbitMQConfirmMetricsGenerator extends AbstractRabbitMetricsGenerator {
+
+    static final String OUTSTANDING_KEY = ".outstanding";
+
+    RabbitMQConfirmMetricsGenerator() {
+        super(RabbitPluginOperationType.CONFIRM);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getConfirmCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The confirm {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the extra counter metric keys and their values
+     */
+    static Map<String, Integer> getConfirmCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        Integer confirmCount = op.get("confirmCount", Integer.class);
+        int count = (confirmCount == null) ? 1 : Math.max(1, confirmCount.intValue());
+
+        String confirmType = op.get("confirmType", String.class);
+        if (confirmType != null) {
+            counters.put(opTypeName + "." + confirmType + RABBIT_COUNT_SUFFIX, Integer.valueOf(count));
+        }
+
+        OperationMap latencies = op.get(RabbitMQConfirmCollectionAspect.LATENCY_MAP, OperationMap.class);
+        addHistogramCounters(counters, opTypeName + LATENCY_KEY, "ms", latencies);
+
+        Integer outstanding = op.get(RabbitMQConfirmCollectionAspect.OUTSTANDING_SAMPLE, Integer.class);
+        if ((outstanding != null) && (outstanding.intValue() > 0)) {
+            counters.put(opTypeName + OUTSTANDING_KEY + RABBIT_COUNT_SUFFIX, outstanding);
+        }
+        return counters;
+    }
+}
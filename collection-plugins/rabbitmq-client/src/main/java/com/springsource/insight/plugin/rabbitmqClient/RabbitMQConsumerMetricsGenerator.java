@@ -17,10 +17,134 @@
 
 package com.springsource.insight.plugin.rabbitmqClient;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * In addition to the messages count, reports the broker dwell time of messages
+ * stamped by the publisher (see {@link DwellTimeHeader}) - as a total time counter
+ * and as histogram bucket counters, e.g., <code>rabbitmq-client-consumer.dwell.le16ms:type=counter</code>.
+ * Messages whose dwell time is negative due to clock skew are only counted.
+ * Redelivered messages are counted as well, and the delivery tag gap of the
+ * channel (see {@link DeliveryTracker#getDeliveryTagGap()}) is reported as bucket
+ * counters. Messages whose producer is known (see {@link PublishIndex}) report their
+ * end-to-end latency histogram buckets - e.g., <code>rabbitmq-client-consumer.e2e.le32ms:type=counter</code>.
+ * The in-flight deliveries of the channel (see {@link PrefetchMonitor}) and their
+ * percentage of the prefetch count are reported as bucket counters as well.
+ */
 public class RabbitMQConsumerMetricsGenerator extends AbstractRabbitMetricsGenerator {
+    static final String DWELL_KEY = ".dwell.";
+    static final String REDELIVERED_KEY = ".redelivered";
+    static final String GAP_KEY = ".deliveryTagGap";
+    static final String END_TO_END_KEY = ".e2e.";
+    static final String IN_FLIGHT_KEY = ".inFlight";
+    static final String PREFETCH_USAGE_KEY = ".prefetchUsage";
 
     RabbitMQConsumerMetricsGenerator() {
         super(RabbitPluginOperationType.CONSUME);
     }
-}
\ No newline at end of file
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>(getDwellCounters(opType.getName(), op));
+        counters.putAll(getRedeliveryCounters(opType.getName(), op));
+        counters.putAll(getEndToEndCounters(opType.getName(), op));
+        counters.putAll(getPrefetchCounters(opType.getName(), op));
+        return counters;
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The consumer {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the in-flight deliveries bucket counter - if the
+     * delivery was manually acknowledged - and the prefetch usage (%) bucket counter
+     * - if the channel prefetch count is known
+     */
+    static Map<String, Integer> getPrefetchCounters(String opTypeName, Operation op) {
+        Number inFlight = (op == null) ? null : op.get(PrefetchMonitor.IN_FLIGHT, Number.class);
+        if (inFlight == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        int count = getMessageCount(op);
+        addBucketCounter(counters, opTypeName + IN_FLIGHT_KEY + ".", "", inFlight, count);
+
+        Number prefetchCount = op.get(PrefetchMonitor.PREFETCH_COUNT, Number.class);
+        // zero means unlimited
+        if ((prefetchCount != null) && (prefetchCount.intValue() > 0)) {
+            Long usage = Long.valueOf(inFlight.longValue() * 100L / prefetchCount.intValue());
+            addBucketCounter(counters, opTypeName + PREFETCH_USAGE_KEY + ".", "pct", usage, count);
+        }
+        return counters;
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The consumer {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the end-to-end latency bucket counter - empty if
+     * the producer of the message is unknown
+     */
+    static Map<String, Integer> getEndToEndCounters(String opTypeName, Operation op) {
+        OperationMap producer = (op == null) ? null : op.get(PublishIndex.PRODUCER_MAP, OperationMap.class);
+        Number latency = (producer == null) ? null : producer.get(PublishIndex.END_TO_END_LATENCY, Number.class);
+        if (latency == null) {
+            return Collections.emptyMap();
+        }
+
+        String bucket = LogHistogram.bucketName(LogHistogram.bucketOf(latency.longValue()));
+        return Collections.singletonMap(opTypeName + END_TO_END_KEY + bucket + "ms" + RABBIT_COUNT_SUFFIX, Integer.valueOf(getMessageCount(op)));
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The consumer {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the redelivered messages counter - if the message
+     * was redelivered - and the delivery tag gap bucket counter - if the delivery was tracked
+     */
+    static Map<String, Integer> getRedeliveryCounters(String opTypeName, Operation op) {
+        if (op == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        OperationMap envelope = op.get("envelope", OperationMap.class);
+        Boolean redeliver = (envelope == null) ? null : envelope.get("redeliver", Boolean.class);
+        if ((redeliver != null) && redeliver.booleanValue()) {
+            counters.put(opTypeName + REDELIVERED_KEY + RABBIT_COUNT_SUFFIX, Integer.valueOf(getMessageCount(op)));
+        }
+
+        addBucketCounter(counters, opTypeName + GAP_KEY + ".", "", op.get(RabbitMQConsumerCollectionAspect.DELIVERY_TAG_GAP, Number.class), getMessageCount(op));
+        return counters;
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The consumer {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the dwell time metric keys and their values - empty
+     * if the message was not stamped
+     */
+    static Map<String, Integer> getDwellCounters(String opTypeName, Operation op) {
+        Long dwellTime = (op == null) ? null : op.get(DwellTimeHeader.DWELL_TIME, Long.class);
+        if (dwellTime == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        Integer count = Integer.valueOf(getMessageCount(op));
+        long value = dwellTime.longValue();
+        if (value < 0L) {
+            counters.put(opTypeName + DWELL_KEY + "skewed" + RABBIT_COUNT_SUFFIX, count);
+            return counters;
+        }
+
+        // the total divided by the bucket counters sum is the mean dwell time
+        addTotalCounter(counters, opTypeName + DWELL_KEY + "time", Long.valueOf(value * count.intValue()));
+        addBucketCounter(counters, opTypeName + DWELL_KEY, "ms", dwellTime, count.intValue());
+        return counters;
+    }
+}
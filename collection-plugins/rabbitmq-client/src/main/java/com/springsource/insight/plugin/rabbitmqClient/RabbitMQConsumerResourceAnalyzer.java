@@ -28,13 +28,13 @@ public class RabbitMQConsumerResourceAnalyzer extends AbstractRabbitMQResourceAn
     @Override
     protected String getRoutingKey(Operation op) {
         OperationMap envelopeMap = op.get("envelope", OperationMap.class);
-        return envelopeMap.get("routingKey", String.class);
+        return (envelopeMap == null) ? null : envelopeMap.get("routingKey", String.class);
     }
     
     @Override
     protected String getExchange(Operation op) {
         OperationMap envelopeMap = op.get("envelope", OperationMap.class);
-        return envelopeMap.get("exchange", String.class);
+        return (envelopeMap == null) ? null : envelopeMap.get("exchange", String.class);
     }
 
 }
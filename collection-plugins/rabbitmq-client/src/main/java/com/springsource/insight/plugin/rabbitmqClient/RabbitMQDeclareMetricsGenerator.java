@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the declarations count, reports the count per declaration type
+ * (exchange, queue, bind, qos) and the declaration round-trip time histogram
+ * buckets - e.g., <code>rabbitmq-client-declare.latency.le2048us:type=counter</code>.
+ */
+public class RabbitMQDeclareMetricsGenerator extends AbstractRabbitMetricsGenerator {
+
+    RabbitMQDeclareMetricsGenerator() {
+        super(RabbitPluginOperationType.DECLARE);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getDeclareCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The declaration {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the extra counter metric keys and their values
+     */
+    static Map<String, Integer> getDeclareCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        String declareType = op.get("declareType", String.class);
+        if (declareType != null) {
+            counters.put(opTypeName + "." + declareType + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+        }
+
+        Number declareTime = op.get(RabbitMQDeclareCollectionAspect.DECLARE_TIME, Number.class);
+        if (declareTime != null) {
+            String bucket = LogHistogram.bucketName(LogHistogram.bucketOf(declareTime.longValue()));
+            counters.put(opTypeName + LATENCY_KEY + bucket + "us" + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+        }
+        return counters;
+    }
+}
@@ -17,10 +17,44 @@
 
 package com.springsource.insight.plugin.rabbitmqClient;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the publishes count, reports the publishes stalled by the broker
+ * flow control (see {@link FlowControlMonitor}) - their number and stall time as
+ * counters, e.g., <code>rabbitmq-client-publish.flow.stallTime:type=counter</code>.
+ */
 public class RabbitMQPublishMetricsGenerator extends AbstractRabbitMetricsGenerator {
+    static final String FLOW_KEY = ".flow.";
 
     RabbitMQPublishMetricsGenerator() {
         super(RabbitPluginOperationType.PUBLISH);
     }
-}
\ No newline at end of file
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getFlowControlCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The publish {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the flow control metric keys and their values -
+     * empty if the publish did not overlap a flow-control window
+     */
+    static Map<String, Integer> getFlowControlCounters(String opTypeName, Operation op) {
+        Number stallTime = (op == null) ? null : op.get(FlowControlMonitor.FLOW_STALL_TIME, Number.class);
+        if (stallTime == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        counters.put(opTypeName + FLOW_KEY + "stalled" + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+        counters.put(opTypeName + FLOW_KEY + "stallTime" + RABBIT_COUNT_SUFFIX, Integer.valueOf((int) Math.min(stallTime.longValue(), Integer.MAX_VALUE)));
+        return counters;
+    }
+}
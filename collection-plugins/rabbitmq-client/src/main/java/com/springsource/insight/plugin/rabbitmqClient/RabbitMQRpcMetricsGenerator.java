@@ -0,0 +1,62 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the RPC operations count, reports the replies and timed out
+ * requests as counters, the round-trip time histogram buckets - e.g.,
+ * <code>rabbitmq-client-rpc.latency.le64ms:type=counter</code> - and the total
+ * round-trip time, from which the mean round-trip time can be derived.
+ */
+public class RabbitMQRpcMetricsGenerator extends AbstractRabbitMetricsGenerator {
+    static final String ROUND_TRIP_KEY = ".roundTrip";
+
+    RabbitMQRpcMetricsGenerator() {
+        super(RabbitPluginOperationType.RPC);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getRpcCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The RPC {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the extra counter metric keys and their values
+     */
+    static Map<String, Integer> getRpcCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        String outcome = (op == null) ? null : op.get(RpcTracker.OUTCOME, String.class);
+        if (RpcTracker.REPLY.equals(outcome)) {
+            counters.put(opTypeName + "." + RpcTracker.REPLY + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+            Number roundTrip = op.get(RpcTracker.ROUND_TRIP_TIME, Number.class);
+            addBucketCounter(counters, opTypeName + LATENCY_KEY, "ms", roundTrip, 1);
+            addTotalCounter(counters, opTypeName + ROUND_TRIP_KEY, roundTrip);
+        } else if (RpcTracker.TIMEOUT.equals(outcome)) {
+            Number count = op.get(RpcTracker.TIMEOUT_COUNT, Number.class);
+            counters.put(opTypeName + "." + RpcTracker.TIMEOUT + RABBIT_COUNT_SUFFIX, Integer.valueOf((count == null) ? 1 : count.intValue()));
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the transactions count, reports the number of commits/rollbacks,
+ * the batched messages and bytes (the messages divided by the transactions count
+ * being the mean batch size), and the commit/rollback round-trip time histogram
+ * buckets - e.g., <code>rabbitmq-client-tx.latency.le512us:type=counter</code>.
+ * Comparing these with the confirm latencies shows the cost of transactional
+ * publishing versus publisher confirms.
+ */
+public class RabbitMQTxMetricsGenerator extends AbstractRabbitMetricsGenerator {
+    static final String MESSAGES_KEY = ".messages";
+
+    RabbitMQTxMetricsGenerator() {
+        super(RabbitPluginOperationType.TX);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(Operation op) {
+        return getTxCounters(opType.getName(), op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The transaction {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the extra counter metric keys and their values
+     */
+    static Map<String, Integer> getTxCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        String txType = op.get("txType", String.class);
+        if (txType != null) {
+            counters.put(opTypeName + "." + txType + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+        }
+
+        Number messageCount = op.get("messageCount", Number.class);
+        if (messageCount != null) {
+            counters.put(opTypeName + MESSAGES_KEY + RABBIT_COUNT_SUFFIX, Integer.valueOf(messageCount.intValue()));
+        }
+
+        Number totalBytes = op.get("totalBytes", Number.class);
+        if (totalBytes != null) {
+            counters.put(opTypeName + BYTES_KEY + RABBIT_COUNT_SUFFIX, Integer.valueOf((int) Math.min(totalBytes.longValue(), Integer.MAX_VALUE)));
+        }
+
+        Number txTime = op.get(RabbitMQTxCollectionAspect.TX_TIME, Number.class);
+        if (txTime != null) {
+            String bucket = LogHistogram.bucketName(LogHistogram.bucketOf(txTime.longValue()));
+            counters.put(opTypeName + LATENCY_KEY + bucket + "us" + RABBIT_COUNT_SUFFIX, Integer.valueOf(1));
+        }
+        return counters;
+    }
+}
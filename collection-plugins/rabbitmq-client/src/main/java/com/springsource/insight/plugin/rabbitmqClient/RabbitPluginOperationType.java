@@ -21,7 +21,12 @@ import com.springsource.insight.intercept.operation.OperationType;
 
 enum RabbitPluginOperationType {
     CONSUME("rabbitmq-client-consumer", "Consume", "RabbitMQ Consume from: "),
-    PUBLISH("rabbitmq-client-publish", "Publish", "RabbitMQ Publish to: ");
+    PUBLISH("rabbitmq-client-publish", "Publish", "RabbitMQ Publish to: "),
+    ACK("rabbitmq-client-ack", "Ack", "RabbitMQ Ack of: "),
+    CONFIRM("rabbitmq-client-confirm", "Confirm", "RabbitMQ Confirm of: "),
+    TX("rabbitmq-client-tx", "Transaction", "RabbitMQ Transaction on: "),
+    RPC("rabbitmq-client-rpc", "RPC", "RabbitMQ RPC to: "),
+    DECLARE("rabbitmq-client-declare", "Declare", "RabbitMQ Declare of: ");
 
     
     private OperationType operationType;
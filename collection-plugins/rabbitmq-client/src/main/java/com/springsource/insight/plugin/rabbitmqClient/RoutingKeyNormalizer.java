@@ -0,0 +1,250 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes routing keys before they are used to name endpoints and external
+ * resources, so that keys embedding ids (e.g., <code>orders.12345.created</code>)
+ * map to a bounded set of names. The configured rules are tried in order and
+ * the first match wins - a rule is either a <code>regex=&gt;replacement</code>
+ * pair or a segment template such as <code>orders.{id}.created</code>, where each
+ * <code>{...}</code> segment matches any single segment. If no rule matches,
+ * numeric and UUID segments are masked as <code>{n}</code> and <code>{uuid}</code>.
+ * The results are memoized in a bounded LRU cache so the per-frame cost stays
+ * constant. Configured via the <code>insight.plugin.rabbitmq.routingKey.*</code>
+ * system properties.
+ */
+final class RoutingKeyNormalizer {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.routingKey.";
+    static final String RULES_PROPERTY = PROPERTY_PREFIX + "rules";
+    static final String MASK_IDS_PROPERTY = PROPERTY_PREFIX + "maskIds";
+    static final String CACHE_SIZE_PROPERTY = PROPERTY_PREFIX + "cacheSize";
+
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    public static final String NUMBER_MASK = "{n}";
+    public static final String UUID_MASK = "{uuid}";
+
+    static final String RULES_SEPARATOR = ";";
+    static final String REPLACEMENT_SEPARATOR = "=>";
+    private static final String SEGMENT_DELIMITERS = "./:";
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern TEMPLATE_SEGMENT = Pattern.compile("\\{[^.{}]*\\}");
+
+    private final List<Rule> rules;
+    private final boolean maskIds;
+    private final Map<String, String> cache;
+
+    RoutingKeyNormalizer(List<Rule> rules, boolean maskIds, final int cacheSize) {
+        this.rules = (rules == null) ? Collections.<Rule>emptyList() : new ArrayList<Rule>(rules);
+        this.maskIds = maskIds;
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    static RoutingKeyNormalizer fromSystemProperties() {
+        boolean maskIds = Boolean.valueOf(System.getProperty(MASK_IDS_PROPERTY, Boolean.TRUE.toString())).booleanValue();
+        int cacheSize = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE).intValue();
+        List<Rule> rules;
+        try {
+            rules = parseRules(System.getProperty(RULES_PROPERTY));
+        } catch (IllegalArgumentException e) {
+            // bad configuration must not prevent the analysis
+            rules = Collections.emptyList();
+        }
+
+        return new RoutingKeyNormalizer(rules, maskIds, cacheSize);
+    }
+
+    /**
+     * @param routingKey The raw routing key - may be <code>null</code>/empty
+     * @return The normalized key
+     */
+    String normalize(String routingKey) {
+        if ((routingKey == null) || (routingKey.length() == 0)) {
+            return routingKey;
+        }
+
+        synchronized (cache) {
+            String normalized = cache.get(routingKey);
+            if (normalized != null) {
+                return normalized;
+            }
+        }
+
+        String normalized = doNormalize(routingKey);
+        synchronized (cache) {
+            cache.put(routingKey, normalized);
+        }
+        return normalized;
+    }
+
+    int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    String doNormalize(String routingKey) {
+        for (Rule rule : rules) {
+            String normalized = rule.apply(routingKey);
+            if (normalized != null) {
+                return normalized;
+            }
+        }
+
+        return maskIds ? maskIds(routingKey) : routingKey;
+    }
+
+    static String maskIds(String routingKey) {
+        StringBuilder sb = null;
+        int start = 0, len = routingKey.length();
+        for (int index = 0; index <= len; index++) {
+            if ((index < len) && (SEGMENT_DELIMITERS.indexOf(routingKey.charAt(index)) < 0)) {
+                continue;
+            }
+
+            String mask = getMask(routingKey, start, index);
+            if ((mask != null) && (sb == null)) {
+                sb = new StringBuilder(len).append(routingKey, 0, start);
+            }
+            if (sb != null) {
+                sb.append((mask == null) ? routingKey.substring(start, index) : mask);
+                if (index < len) {
+                    sb.append(routingKey.charAt(index));
+                }
+            }
+            start = index + 1;
+        }
+
+        return (sb == null) ? routingKey : sb.toString();
+    }
+
+    private static String getMask(String routingKey, int start, int end) {
+        if (end <= start) {
+            return null;
+        }
+
+        boolean numeric = true;
+        for (int index = start; (index < end) && numeric; index++) {
+            numeric = Character.isDigit(routingKey.charAt(index));
+        }
+        if (numeric) {
+            return NUMBER_MASK;
+        }
+
+        if ((end - start == 36) && UUID_PATTERN.matcher(routingKey.substring(start, end)).matches()) {
+            return UUID_MASK;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param value A {@link #RULES_SEPARATOR} separated list of rules
+     * @return The parsed {@link Rule}s
+     * @throws IllegalArgumentException if a regular expression is malformed
+     */
+    static List<Rule> parseRules(String value) {
+        if ((value == null) || (value.trim().length() == 0)) {
+            return Collections.emptyList();
+        }
+
+        List<Rule> rules = new ArrayList<Rule>();
+        for (String rule : value.split(RULES_SEPARATOR)) {
+            rule = rule.trim();
+            if (rule.length() <= 0) {
+                continue;
+            }
+
+            int pos = rule.indexOf(REPLACEMENT_SEPARATOR);
+            if (pos < 0) {
+                rules.add(Rule.fromTemplate(rule));
+            } else {
+                rules.add(new Rule(Pattern.compile(rule.substring(0, pos).trim()),
+                                   rule.substring(pos + REPLACEMENT_SEPARATOR.length()).trim()));
+            }
+        }
+
+        return rules;
+    }
+
+    static final class Rule {
+        private final Pattern pattern;
+        private final String replacement;
+
+        @SuppressWarnings("hiding")
+        Rule(Pattern pattern, String replacement) {
+            if ((pattern == null) || (replacement == null)) {
+                throw new IllegalArgumentException("Incomplete rule");
+            }
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+
+        /**
+         * @param template A '.' separated template - any <code>{...}</code> segment
+         * matches a single segment of the routing key
+         * @return A {@link Rule} that replaces a matching key with the template itself
+         */
+        static Rule fromTemplate(String template) {
+            StringBuilder regex = new StringBuilder("^");
+            String[] segments = template.split("\\.", -1);
+            for (int index = 0; index < segments.length; index++) {
+                if (index > 0) {
+                    regex.append("\\.");
+                }
+
+                String segment = segments[index];
+                if (TEMPLATE_SEGMENT.matcher(segment).matches()) {
+                    regex.append("[^.]+");
+                } else {
+                    regex.append(Pattern.quote(segment));
+                }
+            }
+            regex.append('$');
+
+            return new Rule(Pattern.compile(regex.toString()), Matcher.quoteReplacement(template));
+        }
+
+        /**
+         * @return The normalized key - <code>null</code> if the rule does not match
+         */
+        String apply(String routingKey) {
+            Matcher matcher = pattern.matcher(routingKey);
+            if (!matcher.find()) {
+                return null;
+            }
+
+            return matcher.replaceFirst(replacement);
+        }
+    }
+}
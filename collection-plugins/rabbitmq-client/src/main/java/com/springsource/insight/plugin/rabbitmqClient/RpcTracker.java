@@ -0,0 +1,312 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Pairs the requests published with a <code>replyTo</code> and <code>correlationId</code>
+ * with the delivery of their reply - carrying the same correlation id and delivered
+ * from the <code>replyTo</code> queue - in order to report the RPC round-trip time.
+ * The pending requests are kept in insertion - i.e., publish time - order, so the
+ * ones that received no reply within the timeout are expired from the head of the
+ * index and counted as timeouts of their routing key, until drained by the next
+ * collected publish or delivery. At most {@link #getMaxPending()} requests are
+ * pending - beyond that the oldest ones are dropped. The tracking may be disabled
+ * and the defaults overridden via the <code>insight.plugin.rabbitmq.rpc.*</code>
+ * system properties.
+ */
+final class RpcTracker {
+    static final String PROPERTY_PREFIX = "insight.plugin.rabbitmq.rpc.";
+    static final String ENABLED_PROPERTY = PROPERTY_PREFIX + "enabled";
+    static final String TIMEOUT_PROPERTY = PROPERTY_PREFIX + "timeoutMillis";
+    static final String MAX_PENDING_PROPERTY = PROPERTY_PREFIX + "maxPending";
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000L;
+    public static final int DEFAULT_MAX_PENDING = 4096;
+
+    /**
+     * Values of the {@link #OUTCOME} property of the RPC operations
+     */
+    public static final String OUTCOME = "outcome";
+    public static final String REPLY = "reply";
+    public static final String TIMEOUT = "timeout";
+    /**
+     * Name of the {@link Operation} property holding the request-to-reply time (msec.)
+     */
+    public static final String ROUND_TRIP_TIME = "roundTripTime";
+    /**
+     * Name of the {@link Operation} property holding the number of timed out requests
+     */
+    public static final String TIMEOUT_COUNT = "timeoutCount";
+
+    /**
+     * Max. number of routing keys whose timeouts are counted separately - the
+     * timeouts of any others are not reported
+     */
+    static final int MAX_KEYS = 1024;
+
+    private final boolean enabled;
+    private final long timeoutNanos;
+    private final int maxPending;
+    private final LinkedHashMap<String, Request> pending = new LinkedHashMap<String, Request>();
+    // the timed out requests of each routing key since the last drain
+    private final Map<String, Timeouts> timeouts = new LinkedHashMap<String, Timeouts>();
+    // allow skipping the lock for the (vast majority of) non-reply deliveries
+    private volatile int pendingCount;
+    private volatile long oldestTimestamp;
+    private volatile int timeoutKeys;
+    private long dropped;
+
+    RpcTracker(long timeoutMillis, int maxPending) {
+        this(true, timeoutMillis, maxPending);
+    }
+
+    RpcTracker(boolean enabled, long timeoutMillis, int maxPending) {
+        if (timeoutMillis <= 0L) {
+            throw new IllegalArgumentException("Bad RPC timeout: " + timeoutMillis);
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Bad max. pending RPC requests: " + maxPending);
+        }
+
+        this.enabled = enabled;
+        this.timeoutNanos = timeoutMillis * 1000000L;
+        this.maxPending = maxPending;
+    }
+
+    static RpcTracker fromSystemProperties() {
+        String enabled = System.getProperty(ENABLED_PROPERTY);
+        boolean enable = (enabled == null) || Boolean.valueOf(enabled).booleanValue();
+        long timeoutMillis = Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_MILLIS).longValue();
+        int maxPending = Integer.getInteger(MAX_PENDING_PROPERTY, DEFAULT_MAX_PENDING).intValue();
+        try {
+            return new RpcTracker(enable, timeoutMillis, maxPending);
+        } catch (IllegalArgumentException e) {
+            // bad configuration must not prevent the collection
+            return new RpcTracker(enable, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_PENDING);
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutNanos / 1000000L;
+    }
+
+    int getMaxPending() {
+        return maxPending;
+    }
+
+    int getPending() {
+        return pendingCount;
+    }
+
+    /**
+     * @return Number of requests dropped since more than {@link #getMaxPending()}
+     * were pending
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @param correlationId The request correlation id - ignored if <code>null</code>
+     * @param replyTo The queue the reply is expected on - ignored if <code>null</code>
+     * @param exchange The exchange the request was published to
+     * @param routingKey The request routing key
+     * @param now The {@link System#nanoTime()} of the publish
+     */
+    synchronized void request(String correlationId, String replyTo, String exchange, String routingKey, long now) {
+        if ((correlationId == null) || (replyTo == null)) {
+            return;
+        }
+
+        expire(now);
+        // re-inserted so that the index remains ordered by the publish time
+        pending.remove(correlationId);
+        if (pending.size() >= maxPending) {
+            Iterator<Request> iter = pending.values().iterator();
+            iter.next();
+            iter.remove();
+            dropped++;
+        }
+
+        pending.put(correlationId, new Request(replyTo, exchange, routingKey, now));
+        updatePending();
+    }
+
+    /**
+     * @param correlationId The correlation id of the delivered message - may be <code>null</code>
+     * @param queue The queue the message was delivered from - may be <code>null</code>
+     * if unknown, in which case no request is matched
+     * @param now The {@link System#nanoTime()} of the delivery
+     * @return The matching pending {@link Request} - <code>null</code> if none
+     * (including a reply that arrived after its request timed out, and a message
+     * that carries the correlation id of a request but was not delivered from
+     * its <code>replyTo</code> queue - e.g., the request itself)
+     */
+    Request reply(String correlationId, String queue, long now) {
+        if ((correlationId == null) || (queue == null)) {
+            sweep(now);
+            return null;
+        }
+        if (pendingCount <= 0) {
+            return null;
+        }
+
+        synchronized (this) {
+            expire(now);
+            Request request = pending.get(correlationId);
+            if ((request == null) || (!request.replyTo.equals(queue))) {
+                return null;
+            }
+
+            pending.remove(correlationId);
+            updatePending();
+            return request;
+        }
+    }
+
+    /**
+     * Expires the requests that timed out - if any. Cheap unless the oldest
+     * pending request timed out
+     * @param now The current {@link System#nanoTime()}
+     */
+    void sweep(long now) {
+        if ((pendingCount <= 0) || (now - oldestTimestamp < timeoutNanos)) {
+            return;
+        }
+
+        synchronized (this) {
+            expire(now);
+        }
+    }
+
+    /**
+     * @return The {@link Timeouts} of each routing key since the last call -
+     * which resets them
+     */
+    List<Timeouts> drainTimeouts() {
+        if (timeoutKeys <= 0) {
+            return Collections.emptyList();
+        }
+
+        synchronized (this) {
+            List<Timeouts> drained = new ArrayList<Timeouts>(timeouts.values());
+            timeouts.clear();
+            timeoutKeys = 0;
+            return drained;
+        }
+    }
+
+    private void expire(long now) {
+        for (Iterator<Request> iter = pending.values().iterator(); iter.hasNext(); ) {
+            Request request = iter.next();
+            if (now - request.timestamp < timeoutNanos) {
+                break;  // the rest are more recent
+            }
+
+            iter.remove();
+            String key = safeKey(request.routingKey);
+            Timeouts count = timeouts.get(key);
+            if (count == null) {
+                if (timeouts.size() >= MAX_KEYS) {
+                    continue;
+                }
+                count = new Timeouts(request.exchange, request.routingKey);
+                timeouts.put(key, count);
+            }
+            count.count++;
+        }
+        updatePending();
+        timeoutKeys = timeouts.size();
+    }
+
+    private void updatePending() {
+        oldestTimestamp = pending.isEmpty() ? 0L : pending.values().iterator().next().timestamp;
+        pendingCount = pending.size();
+    }
+
+    private static String safeKey(String routingKey) {
+        return (routingKey == null) ? "" : routingKey;
+    }
+
+    /**
+     * @return An {@link Operation} reporting the reply of a request
+     */
+    static Operation createReplyOperation(String correlationId, Request request, long now) {
+        return createOperation(REPLY, "RPC Reply", request.exchange, request.routingKey)
+                .put("correlationId", correlationId)
+                .put(ROUND_TRIP_TIME, Math.max(0L, now - request.timestamp) / 1000000L)
+                ;
+    }
+
+    /**
+     * @return An {@link Operation} reporting the timed out requests to a routing key
+     */
+    static Operation createTimeoutOperation(Timeouts timeouts) {
+        return createOperation(TIMEOUT, "RPC Timeout", timeouts.exchange, timeouts.routingKey)
+                .put(TIMEOUT_COUNT, timeouts.count)
+                ;
+    }
+
+    private static Operation createOperation(String outcome, String label, String exchange, String routingKey) {
+        return new Operation()
+                .type(RabbitPluginOperationType.RPC.getOperationType())
+                .label(label)
+                .put(OUTCOME, outcome)
+                .putAnyNonEmpty("exchange", exchange)
+                .putAnyNonEmpty("routingKey", routingKey)
+                ;
+    }
+
+    static final class Request {
+        final String replyTo, exchange, routingKey;
+        final long timestamp;
+
+        @SuppressWarnings("hiding")
+        Request(String replyTo, String exchange, String routingKey, long timestamp) {
+            this.replyTo = replyTo;
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.timestamp = timestamp;
+        }
+    }
+
+    static final class Timeouts {
+        // the exchange of the first timed out request
+        final String exchange, routingKey;
+        int count;
+
+        @SuppressWarnings("hiding")
+        Timeouts(String exchange, String routingKey) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+/**
+ * Counts the messages, bytes and redelivered messages published to an exchange
+ * or consumed from a queue in a ring of one second buckets, from which the
+ * per second rates over the last {@link #WINDOWS} seconds are derived. The ring is
+ * striped by thread, each stripe having its own buckets, so that concurrent
+ * publishers/consumers update different counters without any locking - a bucket
+ * is recycled by the first thread that CAS-es its second. Recycling may lose the
+ * (few) updates racing with it, so the rates are approximate. Once per
+ * {@link #PUBLISH_SECONDS} the totals of the seconds completed since the previous
+ * publication are handed to a single operation, so that they are reported as
+ * counters which add up across traces.
+ */
+final class ThroughputMeter {
+    /**
+     * Name of the {@link Operation} property holding the rates map
+     */
+    public static final String THROUGHPUT_MAP = "throughput";
+    /**
+     * Name of the {@link Operation} property holding the totals published
+     * for the last interval - see {@link #PUBLISH_SECONDS}
+     */
+    public static final String INTERVAL_MAP = "throughputInterval";
+    /**
+     * Min. number of seconds between the publications of the totals - the
+     * seconds not published within {@link #WINDOWS}' largest one are lost
+     */
+    static final int PUBLISH_SECONDS = 10;
+    /**
+     * The sliding windows (seconds) over which the rates are reported
+     */
+    static final int[] WINDOWS = { 1, 10, 60 };
+    /**
+     * Names of the counters kept per bucket - the rates of each window are
+     * reported in this order
+     */
+    static final String[] COUNTERS = { "msgs", "bytes", "redelivered" };
+    static final int MESSAGES = 0, BYTES = 1, REDELIVERED = 2;
+    private static final int NUM_COUNTERS = COUNTERS.length;
+
+    static final int BUCKETS = 64;  // must be a power of 2 above the largest window
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    static final int STRIPES = 8;   // must be a power of 2
+    private static final int STRIPE_MASK = STRIPES - 1;
+
+    /**
+     * Max. number of metered exchanges/queues - a safety net for applications
+     * using (many) temporary queues
+     */
+    static final int MAX_METERS = 1024;
+    // the seconds are counted from here (plus a whole ring) so that they are never
+    // negative - and never match the initial (zero) bucket seconds
+    private static final long TIME_BASE = System.nanoTime();
+    private static final ConcurrentMap<String, ThroughputMeter> exchangeMeters = new ConcurrentHashMap<String, ThroughputMeter>();
+    private static final ConcurrentMap<String, ThroughputMeter> queueMeters = new ConcurrentHashMap<String, ThroughputMeter>();
+
+    // the second of each bucket - stripe major so that each stripe is contiguous
+    private final AtomicLongArray seconds = new AtomicLongArray(STRIPES * BUCKETS);
+    // the COUNTERS of each bucket
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_COUNTERS * STRIPES * BUCKETS);
+    // the rates are computed at most once per second
+    private volatile Rates rates = new Rates(Long.MIN_VALUE, new long[NUM_COUNTERS * WINDOWS.length]);
+    // the last second whose totals were published - the seconds are never zero
+    private final AtomicLong publishedSecond = new AtomicLong(0L);
+
+    ThroughputMeter() {
+        super();
+    }
+
+    /**
+     * @param exchange The exchange name
+     * @return The exchange meter - <code>null</code> if too many are metered already
+     */
+    static ThroughputMeter forExchange(String exchange) {
+        return forName(exchangeMeters, (exchange == null) ? "" : exchange);
+    }
+
+    /**
+     * @param queue The queue name
+     * @return The queue meter - <code>null</code> if too many are metered already
+     */
+    static ThroughputMeter forQueue(String queue) {
+        return forName(queueMeters, (queue == null) ? "" : queue);
+    }
+
+    private static ThroughputMeter forName(ConcurrentMap<String, ThroughputMeter> meters, String name) {
+        ThroughputMeter meter = meters.get(name);
+        if ((meter != null) || (getMeterCount() >= MAX_METERS)) {
+            return meter;
+        }
+
+        meter = new ThroughputMeter();
+        ThroughputMeter prev = meters.putIfAbsent(name, meter);
+        return (prev == null) ? meter : prev;
+    }
+
+    static int getMeterCount() {
+        return exchangeMeters.size() + queueMeters.size();
+    }
+
+    /**
+     * @return The current second on the meters time base
+     */
+    static long currentSecond() {
+        return (System.nanoTime() - TIME_BASE) / 1000000000L + BUCKETS;
+    }
+
+    /**
+     * @param second The current second - see {@link #currentSecond()}
+     * @param bytes The message body size
+     */
+    void record(long second, long bytes) {
+        record(second, bytes, false);
+    }
+
+    /**
+     * @param second The current second - see {@link #currentSecond()}
+     * @param bytes The message body size
+     * @param redelivered <code>true</code> if this is a redelivery of the message
+     */
+    void record(long second, long bytes, boolean redelivered) {
+        record(second, (int) Thread.currentThread().getId() & STRIPE_MASK, bytes, redelivered);
+    }
+
+    void record(long second, int stripe, long bytes, boolean redelivered) {
+        int slot = stripe * BUCKETS + (int) (second & BUCKET_MASK);
+        long bucketSecond = seconds.get(slot);
+        if (bucketSecond != second) {
+            if (bucketSecond > second) {
+                return; // a (very) late update - its bucket is gone
+            }
+            if (seconds.compareAndSet(slot, bucketSecond, second)) {
+                for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                    counts.set(NUM_COUNTERS * slot + counter, 0L);
+                }
+            }
+        }
+
+        counts.incrementAndGet(NUM_COUNTERS * slot + MESSAGES);
+        counts.addAndGet(NUM_COUNTERS * slot + BYTES, Math.max(0L, bytes));
+        if (redelivered) {
+            counts.incrementAndGet(NUM_COUNTERS * slot + REDELIVERED);
+        }
+    }
+
+    /**
+     * @param second The current second - see {@link #currentSecond()}
+     * @return The rates of the {@link #COUNTERS} - in this order - for each of
+     * the {@link #WINDOWS}, computed from the complete seconds preceding the
+     * current one. E.g., the bytes/sec over the 2nd window are at
+     * <code>2 * COUNTERS.length + BYTES</code>
+     */
+    long[] getRates(long second) {
+        Rates current = rates;
+        if (current.second == second) {
+            return current.values;
+        }
+
+        long[] values = new long[NUM_COUNTERS * WINDOWS.length];
+        int maxWindow = WINDOWS[WINDOWS.length - 1];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int age = 1; age <= maxWindow; age++) {
+                long bucketSecond = second - age;
+                int slot = stripe * BUCKETS + (int) (bucketSecond & BUCKET_MASK);
+                if (seconds.get(slot) != bucketSecond) {
+                    continue;   // nothing recorded in that second
+                }
+
+                for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                    long count = counts.get(NUM_COUNTERS * slot + counter);
+                    for (int index = 0; index < WINDOWS.length; index++) {
+                        if (age <= WINDOWS[index]) {
+                            values[NUM_COUNTERS * index + counter] += count;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int index = 0; index < WINDOWS.length; index++) {
+            for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                values[NUM_COUNTERS * index + counter] /= WINDOWS[index];
+            }
+        }
+
+        rates = new Rates(second, values);
+        return values;
+    }
+
+    /**
+     * Claims the publication of the seconds completed since the previous one -
+     * at most once per {@link #PUBLISH_SECONDS}, by a single caller
+     * @param second The current second - see {@link #currentSecond()}
+     * @return The totals of the {@link #COUNTERS} - in this order - over the
+     * claimed seconds, <code>null</code> if not the time to publish or another
+     * caller claimed them
+     */
+    long[] publish(long second) {
+        long published = publishedSecond.get();
+        if ((second - published) <= PUBLISH_SECONDS) {
+            return null;
+        }
+        if (!publishedSecond.compareAndSet(published, second - 1L)) {
+            return null;
+        }
+
+        long[] totals = new long[NUM_COUNTERS];
+        long first = Math.max(published + 1L, second - WINDOWS[WINDOWS.length - 1]);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (long bucketSecond = first; bucketSecond < second; bucketSecond++) {
+                int slot = stripe * BUCKETS + (int) (bucketSecond & BUCKET_MASK);
+                if (seconds.get(slot) != bucketSecond) {
+                    continue;   // nothing recorded in that second
+                }
+
+                for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                    totals[counter] += counts.get(NUM_COUNTERS * slot + counter);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Stores the rates as a map of <code>&lt;counter&gt;&lt;window&gt;s</code>
+     * entries - e.g., <code>msgs10s</code> - along with the published totals
+     * (see {@link #publish(long)}) if it is the time to publish them
+     * @param op The {@link Operation} to update
+     * @param second The current second - see {@link #currentSecond()}
+     */
+    Operation applyTo(Operation op, long second) {
+        long[] values = getRates(second);
+        OperationMap map = op.createMap(THROUGHPUT_MAP);
+        for (int index = 0; index < WINDOWS.length; index++) {
+            for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                map.put(COUNTERS[counter] + WINDOWS[index] + "s", values[NUM_COUNTERS * index + counter]);
+            }
+        }
+
+        long[] totals = publish(second);
+        if (totals != null) {
+            OperationMap interval = op.createMap(INTERVAL_MAP);
+            for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+                interval.put(COUNTERS[counter], totals[counter]);
+            }
+        }
+        return op;
+    }
+
+    private static final class Rates {
+        final long second;
+        final long[] values;
+
+        @SuppressWarnings("hiding")
+        Rates(long second, long[] values) {
+            this.second = second;
+            this.values = values;
+        }
+    }
+}
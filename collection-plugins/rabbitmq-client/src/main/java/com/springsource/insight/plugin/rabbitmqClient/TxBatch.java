@@ -0,0 +1,159 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * Accumulates the publishes made on a {@link Channel} in transactional mode
+ * (i.e., after <code>txSelect</code>) so that they are reported as a single
+ * batch by the matching <code>txCommit/txRollback</code> instead of a frame
+ * per publish. A channel remains transactional until it is closed, so the
+ * batch is reset - not removed - when reported.
+ */
+final class TxBatch {
+    /**
+     * Max. number of tracked channels - a safety net for channels that are
+     * never closed
+     */
+    static final int MAX_CHANNELS = 4096;
+    private static final ConcurrentMap<Channel, TxBatch> batches = new ConcurrentHashMap<Channel, TxBatch>();
+
+    private int messageCount;
+    private long totalBytes;
+    private long firstPublishTime;
+    private String exchange, routingKey;
+    private boolean mixedExchanges, mixedRoutingKeys;
+
+    TxBatch() {
+        super();
+    }
+
+    /**
+     * @param channel The {@link Channel}
+     * @param create <code>true</code> if a batch should be created if none exists
+     * - i.e., the channel has just been put in transactional mode
+     * @return The {@link TxBatch} of the channel - <code>null</code> if the
+     * channel is not known to be transactional and none was created
+     */
+    static TxBatch forChannel(Channel channel, boolean create) {
+        if (channel == null) {
+            return null;
+        }
+
+        TxBatch batch = batches.get(channel);
+        if ((batch != null) || (!create) || (batches.size() >= MAX_CHANNELS)) {
+            return batch;
+        }
+
+        batch = new TxBatch();
+        TxBatch prev = batches.putIfAbsent(channel, batch);
+        if (prev != null) {
+            return prev;
+        }
+
+        // NOTE: if the channel is already closed the listener is invoked immediately
+        channel.addShutdownListener(new Remover(channel));
+        return batch;
+    }
+
+    static int getTrackedChannels() {
+        return batches.size();
+    }
+
+    synchronized void published(String publishExchange, String publishRoutingKey, int bytes, long timestamp) {
+        if (messageCount <= 0) {
+            firstPublishTime = timestamp;
+            exchange = publishExchange;
+            routingKey = publishRoutingKey;
+        } else {
+            mixedExchanges |= !safeEquals(exchange, publishExchange);
+            mixedRoutingKeys |= !safeEquals(routingKey, publishRoutingKey);
+        }
+
+        messageCount++;
+        totalBytes += Math.max(0, bytes);
+    }
+
+    synchronized int getMessageCount() {
+        return messageCount;
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Adds the accumulated batch data to the operation - the batch is reset
+     * separately once the transaction ended (see {@link #reset()}). The exchange (resp. routing key) is reported only if all the publishes
+     * of the batch used the same one
+     * @param op The transaction {@link Operation}
+     * @param now The {@link System#nanoTime()} at which the transaction ended
+     */
+    synchronized Operation applyTo(Operation op, long now) {
+        op.put("messageCount", messageCount)
+          .put("totalBytes", totalBytes)
+          ;
+        if (messageCount > 0) {
+            op.put("batchTime", Math.max(0L, now - firstPublishTime) / 1000000L);
+            if (!mixedExchanges) {
+                op.putAnyNonEmpty("exchange", exchange);
+            }
+            if (!mixedRoutingKeys) {
+                op.putAnyNonEmpty("routingKey", routingKey);
+            }
+        }
+        return op;
+    }
+
+    /**
+     * Starts a new batch - called when the transaction is committed/rolled back,
+     * whether collected or not
+     */
+    synchronized void reset() {
+        messageCount = 0;
+        totalBytes = 0L;
+        exchange = null;
+        routingKey = null;
+        mixedExchanges = false;
+        mixedRoutingKeys = false;
+    }
+
+    private static boolean safeEquals(String s1, String s2) {
+        return (s1 == null) ? (s2 == null) : s1.equals(s2);
+    }
+
+    private static final class Remover implements ShutdownListener {
+        private final Channel channel;
+
+        @SuppressWarnings("hiding")
+        Remover(Channel channel) {
+            this.channel = channel;
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            batches.remove(channel);
+        }
+    }
+}
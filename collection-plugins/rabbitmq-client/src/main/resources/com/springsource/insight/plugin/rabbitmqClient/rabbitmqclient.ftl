@@ -15,15 +15,127 @@
 	    <@insight.entry name="Mandatory" value=operation.mandatory />
 	    <@insight.entry name="Immediate" value=operation.immediate />
 	    <@insight.entry name="Body Length" value=operation.bytes if=operation.bytes?? />
+	    <@insight.entry name="Publish Sequence Number" value=operation.publishSeqNo if=operation.publishSeqNo?? />
+	    <@insight.entry name="Flow Control Stall (ms)" value=operation.flowStallTime if=operation.flowStallTime?? />
+	    <@insight.entry name="Connection Stall Total (ms)" value=operation.connectionStallTime if=operation.connectionStallTime?? />
 	</@insight.group>
+<#elseif operation.confirmType??>
+	<@insight.group label="Publisher Confirm">
+	    <@insight.entry name="Type" value=operation.confirmType />
+	    <@insight.entry name="Sequence Number" value=operation.seqNo />
+	    <@insight.entry name="Multiple" value=operation.multiple />
+	    <@insight.entry name="Confirmed Publishes" value=operation.confirmCount />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Outstanding (Exchange)" value=operation.outstanding />
+	    <@insight.entry name="Outstanding (Channel)" value=operation.channelOutstanding />
+	</@insight.group>
+	<#if operation.confirmLatency?? && operation.confirmLatency?has_content>
+		<@insight.group label="Confirm Latency (ms)" collection=operation.confirmLatency?keys ; key>
+			<@insight.entry name=key value=operation.confirmLatency[key] />
+		</@insight.group>
+	</#if>
+<#elseif operation.txType??>
+	<@insight.group label="Transaction">
+	    <@insight.entry name="Type" value=operation.txType />
+	    <@insight.entry name="Published Messages" value=operation.messageCount />
+	    <@insight.entry name="Total Bytes" value=operation.totalBytes />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Batch Time (ms)" value=operation.batchTime if=operation.batchTime?? />
+	    <@insight.entry name="Commit/Rollback Time (us)" value=operation.txTime if=operation.txTime?? />
+	</@insight.group>
+<#elseif operation.outcome??>
+	<@insight.group label="RPC">
+	    <@insight.entry name="Outcome" value=operation.outcome />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Correlation Id" value=operation.correlationId if=operation.correlationId?? />
+	    <@insight.entry name="Round-Trip Time (ms)" value=operation.roundTripTime if=operation.roundTripTime?? />
+	    <@insight.entry name="Timed Out Requests" value=operation.timeoutCount if=operation.timeoutCount?? />
+	</@insight.group>
+<#elseif operation.declareType??>
+	<@insight.group label="Declaration">
+	    <@insight.entry name="Type" value=operation.declareType />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Exchange Type" value=operation.exchangeType if=operation.exchangeType?? />
+	    <@insight.entry name="Queue" value=operation.queue if=operation.queue?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Durable" value=operation.durable if=operation.durable?? />
+	    <@insight.entry name="Exclusive" value=operation.exclusive if=operation.exclusive?? />
+	    <@insight.entry name="Auto Delete" value=operation.autoDelete if=operation.autoDelete?? />
+	    <@insight.entry name="Prefetch Count" value=operation.prefetchCount if=operation.prefetchCount?? />
+	    <@insight.entry name="Prefetch Size" value=operation.prefetchSize if=operation.prefetchSize?? />
+	    <@insight.entry name="Global" value=operation.global if=operation.global?? />
+	    <@insight.entry name="Declaration Time (us)" value=operation.declareTime if=operation.declareTime?? />
+	</@insight.group>
+	<#if operation.declareSummary?? && operation.declareSummary?has_content>
+		<@insight.group label="Declarations So Far">
+		    <@insight.entry name="Count" value=operation.declareSummary.count />
+		    <@insight.entry name="Exchanges" value=operation.declareSummary.exchanges />
+		    <@insight.entry name="Queues" value=operation.declareSummary.queues />
+		    <@insight.entry name="Bindings" value=operation.declareSummary.bindings />
+		    <@insight.entry name="QoS" value=operation.declareSummary.qos />
+		    <@insight.entry name="Total Time (us)" value=operation.declareSummary.totalTime />
+		    <@insight.entry name="Time Span (ms)" value=operation.declareSummary.span />
+		    <@insight.entry name="Slowest Type" value=operation.declareSummary.slowestType />
+		    <@insight.entry name="Slowest Name" value=operation.declareSummary.slowestName if=operation.declareSummary.slowestName?? />
+		    <@insight.entry name="Slowest Time (us)" value=operation.declareSummary.slowestTime />
+		</@insight.group>
+	</#if>
+<#elseif operation.ackType??>
+	<@insight.group label="Acknowledgment">
+	    <@insight.entry name="Type" value=operation.ackType />
+	    <@insight.entry name="Delivery Tag" value=operation.deliveryTag />
+	    <@insight.entry name="Multiple" value=operation.multiple />
+	    <@insight.entry name="Requeue" value=operation.requeue if=operation.requeue?? />
+	    <@insight.entry name="In-flight Deliveries" value=operation.inFlight if=operation.inFlight?? />
+	    <@insight.entry name="Acknowledged Deliveries" value=operation.ackCount />
+	    <@insight.entry name="Queue" value=operation.queue if=operation.queue?? />
+	</@insight.group>
+	<#if operation.ackLatency?? && operation.ackLatency?has_content>
+		<@insight.group label="Delivery to Ack Latency (ms)" collection=operation.ackLatency?keys ; key>
+			<@insight.entry name=key value=operation.ackLatency[key] />
+		</@insight.group>
+	</#if>
 <#else>
 	<#if operation.envelope?? && operation.envelope?has_content>
 		<@insight.group label="Envelope">
 		    <@insight.entry name="Delivery Tag" value=operation.envelope.deliveryTag />
 		    <@insight.entry name="Routing Key" value=operation.envelope.routingKey if=operation.envelope.routingKey?? />
 		    <@insight.entry name="Body Length" value=operation.envelope.bytes if=operation.bytes?? />
+		    <@insight.entry name="Redelivered" value=operation.envelope.redeliver if=operation.envelope.redeliver?? />
+		    <@insight.entry name="Un-acked Delivery Tag Gap" value=operation.deliveryTagGap if=operation.deliveryTagGap?? />
+		    <@insight.entry name="In-flight Deliveries" value=operation.inFlight if=operation.inFlight?? />
+		    <@insight.entry name="Channel Prefetch Count" value=operation.prefetchCount if=operation.prefetchCount?? />
+		    <@insight.entry name="Dwell Time (ms)" value=operation.dwellTime if=(operation.dwellTime?? && !operation.clockSkew??) />
+		    <@insight.entry name="Dwell Time (ms, clock skew)" value=operation.dwellTime if=operation.clockSkew?? />
 		</@insight.group>
 	</#if>	
+	<#if operation.producer?? && operation.producer?has_content>
+		<@insight.group label="Producer">
+		    <@insight.entry name="Message Key" value=operation.producer.key />
+		    <@insight.entry name="Exchange" value=operation.producer.exchange if=operation.producer.exchange?? />
+		    <@insight.entry name="Routing Key" value=operation.producer.routingKey if=operation.producer.routingKey?? />
+		    <@insight.entry name="Thread" value=operation.producer.thread if=operation.producer.thread?? />
+		    <@insight.entry name="Publish Time (ms since epoch)" value=operation.producer.publishTime />
+		    <@insight.entry name="End-to-End Latency (ms)" value=operation.producer.endToEndLatency />
+		</@insight.group>
+	</#if>
+	<#if operation.pollSummary?? && operation.pollSummary?has_content>
+		<@insight.group label="Poll Summary">
+		    <@insight.entry name="Queue" value=operation.queue if=operation.queue?? />
+		    <@insight.entry name="Polls" value=operation.pollSummary.pollCount />
+		    <@insight.entry name="Empty Polls" value=operation.pollSummary.emptyCount />
+		    <@insight.entry name="Total Wait Time (ms)" value=operation.pollSummary.totalWaitTime />
+		</@insight.group>
+	</#if>
+</#if>
+
+<#if operation.throughput?? && operation.throughput?has_content>
+	<@insight.group label="Throughput (per sec.)" collection=operation.throughput?keys ; key>
+		<@insight.entry name=key value=operation.throughput[key] />
+	</@insight.group>
 </#if>
 
 <#if operation.props??>
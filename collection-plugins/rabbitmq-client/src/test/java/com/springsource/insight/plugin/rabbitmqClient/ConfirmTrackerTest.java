@@ -0,0 +1,164 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+
+public class ConfirmTrackerTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testSingleConfirm() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        tracker.published(1L, 0L, "exchange1", "key1");
+        tracker.published(2L, 0L, "exchange2", "key2");
+        tracker.published(3L, 0L, "exchange1", "key3");
+        assertEquals(3, tracker.getOutstanding());
+        assertEquals(2, tracker.getOutstanding("exchange1"));
+
+        // out of order confirmation
+        ConfirmTracker.Confirmation result = new ConfirmTracker.Confirmation();
+        assertEquals(1, tracker.confirm(2L, false, 10L * MSEC, result));
+        assertEquals(1, result.getCount());
+        assertEquals("exchange2", result.getExchange());
+        assertEquals("key2", result.getRoutingKey());
+        assertEquals(1L, result.getLatencies().getCount(LogHistogram.bucketOf(10L)));
+        assertEquals(2, tracker.getOutstanding());
+        assertEquals(0, tracker.getOutstanding("exchange2"));
+
+        // confirming again has no effect
+        assertEquals(0, tracker.confirm(2L, false, 0L, result.reset()));
+        assertEquals(0, result.getCount());
+        assertNull(result.getExchange());
+        assertTrue(result.getLatencies().isEmpty());
+        assertEquals(1, tracker.confirm(1L, false, 0L, null));
+        assertEquals(1, tracker.getOutstanding("exchange1"));
+    }
+
+    @Test
+    public void testMultipleConfirm() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        for (long seqNo = 1L; seqNo <= 10L; seqNo++) {
+            tracker.published(seqNo, seqNo * MSEC, "exchange", "key");
+        }
+
+        assertEquals(1, tracker.confirm(3L, false, 5L * MSEC, null));
+        // the already confirmed publish is not counted again
+        ConfirmTracker.Confirmation result = new ConfirmTracker.Confirmation();
+        assertEquals(4, tracker.confirm(5L, true, 5L * MSEC, result));
+        assertEquals(4L, result.getLatencies().getCount());
+        assertEquals(4, result.getCount());
+        assertEquals(5, tracker.getOutstanding("exchange"));
+
+        assertEquals(5, tracker.confirm(10L, true, 10L * MSEC, null));
+        assertEquals(0, tracker.getOutstanding());
+        assertEquals(0, tracker.getOutstanding("exchange"));
+    }
+
+    @Test
+    public void testGrowAndDrop() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        int total = ConfirmTracker.MAX_OUTSTANDING + 10;
+        for (long seqNo = 1L; seqNo <= total; seqNo++) {
+            tracker.published(seqNo, 0L, "exchange", null);
+        }
+
+        assertEquals(ConfirmTracker.MAX_OUTSTANDING, tracker.getCapacity());
+        assertEquals(ConfirmTracker.MAX_OUTSTANDING, tracker.getOutstanding());
+        assertEquals(10L, tracker.getDropped());
+        assertEquals(0, tracker.confirm(1L, false, 0L, null));
+        assertEquals(1, tracker.confirm(total, false, 0L, null));
+        assertEquals(ConfirmTracker.MAX_OUTSTANDING - 1, tracker.confirm(total, true, 0L, null));
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    public void testSequenceRestart() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        tracker.published(5L, 0L, "exchange", "key");
+        tracker.published(1L, 0L, "exchange", "key");
+        assertEquals(1, tracker.getOutstanding());
+        assertEquals(0, tracker.confirm(5L, false, 0L, null));
+        assertEquals(1, tracker.confirm(1L, false, 0L, null));
+    }
+
+    @Test
+    public void testSampleOutstanding() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        assertEquals(0, tracker.sampleOutstanding("exchange", 1L));
+
+        tracker.published(1L, 0L, "exchange", "key");
+        tracker.published(2L, 0L, "exchange", "key");
+        assertEquals(2, tracker.sampleOutstanding("exchange", 1L));
+        // sampled at most once per second
+        assertEquals(0, tracker.sampleOutstanding("exchange", 1L));
+        assertEquals(0, tracker.sampleOutstanding("other", 1L));
+
+        tracker.confirm(1L, false, 0L, null);
+        assertEquals(1, tracker.sampleOutstanding("exchange", 2L));
+    }
+
+    @Test
+    public void testForListener() {
+        Channel channel = mock(Channel.class);
+        ConfirmTracker tracker = ConfirmTracker.forChannel(channel, true);
+        ConfirmListener listener = mock(ConfirmListener.class);
+        assertNull(ConfirmTracker.forListener(listener));
+
+        tracker.bind(listener);
+        assertSame(tracker, ConfirmTracker.forListener(listener));
+        assertSame(channel, tracker.getChannel());
+
+        // re-binding releases the previous listener
+        ConfirmListener other = mock(ConfirmListener.class);
+        tracker.bind(other);
+        assertNull(ConfirmTracker.forListener(listener));
+        assertSame(tracker, ConfirmTracker.forListener(other));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(ConfirmTracker.forListener(other));
+    }
+
+    @Test
+    public void testForChannel() {
+        Channel channel = mock(Channel.class);
+        assertNull(ConfirmTracker.forChannel(channel, false));
+        ConfirmTracker tracker = ConfirmTracker.forChannel(channel, true);
+        assertNotNull(tracker);
+        assertSame(tracker, ConfirmTracker.forChannel(channel, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(ConfirmTracker.forChannel(channel, false));
+    }
+}
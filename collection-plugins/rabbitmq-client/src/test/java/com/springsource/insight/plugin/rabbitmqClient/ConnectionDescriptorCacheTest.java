@@ -0,0 +1,129 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class ConnectionDescriptorCacheTest {
+
+    @Test
+    public void testDescriptorValues() throws UnknownHostException {
+        Connection conn = createConnection();
+        ConnectionDescriptor descriptor = new ConnectionDescriptor(conn);
+
+        assertEquals("127.0.0.1", descriptor.getHost());
+        assertEquals(5672, descriptor.getPort());
+        assertEquals("amqp://127.0.0.1:5672", descriptor.getConnectionUrl());
+        assertEquals("2.5.1", descriptor.getServerVersion());
+        assertNull(descriptor.getClientVersion());
+
+        Operation op = descriptor.applyTo(new Operation());
+        assertEquals("127.0.0.1", op.get("host", String.class));
+        assertEquals(Integer.valueOf(5672), op.get("port", Integer.class));
+        assertEquals("amqp://127.0.0.1:5672", op.get("connectionUrl", String.class));
+        assertEquals("2.5.1", op.get("serverVersion", String.class));
+    }
+
+    @Test
+    public void testResolvedOncePerConnection() throws UnknownHostException {
+        ConnectionDescriptorCache cache = new ConnectionDescriptorCache();
+        Connection conn = createConnection();
+
+        ConnectionDescriptor descriptor = cache.get(conn);
+        for (int i = 0; i < 10; i++) {
+            assertSame(descriptor, cache.get(conn));
+        }
+
+        assertEquals(1, cache.size());
+        verify(conn, times(1)).getAddress();
+        verify(conn, times(1)).getServerProperties();
+        verify(conn, times(1)).addShutdownListener((ShutdownListener) any());
+    }
+
+    @Test
+    public void testInvalidatedOnShutdown() throws UnknownHostException {
+        ConnectionDescriptorCache cache = new ConnectionDescriptorCache();
+        Connection conn = createConnection();
+
+        ConnectionDescriptor descriptor = cache.get(conn);
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(conn).addShutdownListener(captor.capture());
+
+        captor.getValue().shutdownCompleted(null);
+        assertEquals(0, cache.size());
+        assertNotSame(descriptor, cache.get(conn));
+    }
+
+    @Test
+    public void testClosedConnectionNotCached() throws UnknownHostException {
+        ConnectionDescriptorCache cache = new ConnectionDescriptorCache();
+        Connection conn = createConnection();
+        when(conn.isOpen()).thenReturn(Boolean.FALSE);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("127.0.0.1", cache.get(conn).getHost());
+        }
+
+        assertEquals(0, cache.size());
+        verify(conn, never()).addShutdownListener((ShutdownListener) any());
+    }
+
+    @Test
+    public void testCapacity() throws UnknownHostException {
+        ConnectionDescriptorCache cache = new ConnectionDescriptorCache();
+        for (int i = 0; i < ConnectionDescriptorCache.MAX_CONNECTIONS; i++) {
+            cache.get(createConnection());
+        }
+        assertEquals(ConnectionDescriptorCache.MAX_CONNECTIONS, cache.size());
+
+        Connection conn = createConnection();
+        assertEquals("127.0.0.1", cache.get(conn).getHost());
+        assertEquals(ConnectionDescriptorCache.MAX_CONNECTIONS, cache.size());
+        verify(conn, never()).addShutdownListener((ShutdownListener) any());
+    }
+
+    private static Connection createConnection() throws UnknownHostException {
+        Map<String, Object> serverProps = Collections.<String, Object>singletonMap("version", "2.5.1");
+        Connection conn = mock(Connection.class);
+        when(conn.getAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        when(conn.getPort()).thenReturn(Integer.valueOf(5672));
+        when(conn.getServerProperties()).thenReturn(serverProps);
+        when(conn.isOpen()).thenReturn(Boolean.TRUE);
+        return conn;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConsumerQueuesTest {
+
+    @Test
+    public void testRegisterUnregister() {
+        ConsumerQueues.register("testRegisterUnregister", "queue", true);
+        assertEquals("queue", ConsumerQueues.queueOf("testRegisterUnregister"));
+        assertTrue(ConsumerQueues.isAutoAck("testRegisterUnregister"));
+        ConsumerQueues.unregister("testRegisterUnregister");
+        assertNull(ConsumerQueues.queueOf("testRegisterUnregister"));
+        assertFalse(ConsumerQueues.isAutoAck("testRegisterUnregister"));
+    }
+
+    @Test
+    public void testManualAck() {
+        ConsumerQueues.register("testManualAck", "queue", false);
+        assertFalse(ConsumerQueues.isAutoAck("testManualAck"));
+        ConsumerQueues.unregister("testManualAck");
+    }
+
+    @Test
+    public void testNullValues() {
+        int size = ConsumerQueues.size();
+        ConsumerQueues.register(null, "queue", false);
+        ConsumerQueues.register("testNullValues", null, false);
+        assertEquals(size, ConsumerQueues.size());
+        assertNull(ConsumerQueues.queueOf(null));
+        ConsumerQueues.unregister(null);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class DeclareSummaryTest {
+
+    @Test
+    public void testRecord() {
+        DeclareSummary summary = new DeclareSummary();
+        summary.record(DeclareSummary.EXCHANGE, "orders", 0L, 2000000L);
+        summary.record(DeclareSummary.QUEUE, "orders.q", 2000000L, 7000000L);
+        summary.record(DeclareSummary.BIND, "orders.q->orders", 7000000L, 8000000L);
+
+        assertEquals(3, summary.getCount());
+        assertEquals(1, summary.getCount(DeclareSummary.QUEUE));
+        assertEquals(0, summary.getCount(DeclareSummary.QOS));
+        assertEquals(8000000L, summary.getTotalNanos());
+
+        Operation op = new Operation();
+        assertSame(op, summary.applyTo(op));
+
+        OperationMap map = op.get(DeclareSummary.SUMMARY_MAP, OperationMap.class);
+        assertNotNull(map);
+        assertEquals(Integer.valueOf(3), map.get("count", Integer.class));
+        assertEquals(Integer.valueOf(1), map.get("exchanges", Integer.class));
+        assertEquals(Integer.valueOf(1), map.get("bindings", Integer.class));
+        assertEquals(Long.valueOf(8000L), map.get("totalTime", Long.class));
+        assertEquals(Long.valueOf(8L), map.get("span", Long.class));
+        assertEquals("queue", map.get("slowestType", String.class));
+        assertEquals("orders.q", map.get("slowestName", String.class));
+        assertEquals(Long.valueOf(5000L), map.get("slowestTime", Long.class));
+    }
+
+    @Test
+    public void testUnknownKindIgnored() {
+        DeclareSummary summary = new DeclareSummary();
+        summary.record(-1, "x", 0L, 1L);
+        summary.record(DeclareSummary.DECLARE_TYPES.length, "x", 0L, 1L);
+        assertEquals(0, summary.getCount());
+    }
+
+    @Test
+    public void testEmptySummaryNotApplied() {
+        Operation op = new DeclareSummary().applyTo(new Operation());
+        assertNull(op.get(DeclareSummary.SUMMARY_MAP));
+    }
+
+    @Test
+    public void testForConnection() {
+        assertNull(DeclareSummary.forConnection(null, true));
+
+        Connection connection = mock(Connection.class);
+        assertNull(DeclareSummary.forConnection(connection, false));
+        DeclareSummary summary = DeclareSummary.forConnection(connection, true);
+        assertNotNull(summary);
+        assertSame(summary, DeclareSummary.forConnection(connection, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(connection).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(DeclareSummary.forConnection(connection, false));
+    }
+}
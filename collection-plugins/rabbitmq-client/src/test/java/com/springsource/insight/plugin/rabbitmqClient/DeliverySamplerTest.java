@@ -0,0 +1,85 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.springsource.insight.plugin.rabbitmqClient.DeliverySampler.Mode;
+
+public class DeliverySamplerTest {
+
+    @Test
+    public void testAllMode() {
+        DeliverySampler sampler = new DeliverySampler(Mode.ALL, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, sampler.sample("tag"));
+        }
+        assertEquals(0L, sampler.getPendingUnsampled());
+    }
+
+    @Test
+    public void testOneInN() {
+        DeliverySampler sampler = new DeliverySampler(Mode.ONE_IN_N, 3);
+        assertEquals(1, sampler.sample("tag"));
+        assertEquals(0, sampler.sample("tag"));
+        assertEquals(0, sampler.sample("tag"));
+        assertEquals(2L, sampler.getPendingUnsampled());
+        // the sampled message accounts for the 2 skipped ones
+        assertEquals(3, sampler.sample("tag"));
+        assertEquals(0L, sampler.getPendingUnsampled());
+    }
+
+    @Test
+    public void testKeysSampledIndependently() {
+        DeliverySampler sampler = new DeliverySampler(Mode.ONE_IN_N, 2);
+        assertEquals(1, sampler.sample("q1"));
+        assertEquals(1, sampler.sample("q2"));
+        assertEquals(0, sampler.sample("q1"));
+        assertEquals(1, sampler.sample(null));
+    }
+
+    @Test
+    public void testTokenBucket() {
+        DeliverySampler sampler = new DeliverySampler(Mode.TOKEN_BUCKET, 5);
+        int sampled = 0;
+        int total = 0;
+        for (int i = 0; i < 1000; i++) {
+            int weight = sampler.sample("tag");
+            if (weight > 0) {
+                sampled++;
+                total += weight;
+            }
+        }
+
+        // initial burst is the bucket capacity - some refill may occur while looping
+        assertTrue("Too many samples: " + sampled, sampled <= 10);
+        assertEquals(1000L, total + sampler.getPendingUnsampled());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadRate() {
+        new DeliverySampler(Mode.ONE_IN_N, 0);
+    }
+
+    @Test
+    public void testDefaultIsAll() {
+        assertEquals(Mode.ALL, DeliverySampler.fromSystemProperties().getMode());
+    }
+}
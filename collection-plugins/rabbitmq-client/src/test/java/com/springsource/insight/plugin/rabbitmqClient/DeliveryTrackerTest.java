@@ -0,0 +1,147 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+
+public class DeliveryTrackerTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testSingleAck() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        tracker.delivered(1L, 0L, "queue1");
+        tracker.delivered(2L, 0L, "queue2");
+        assertEquals(2, tracker.getOutstanding());
+
+        DeliveryTracker.Acknowledgment result = new DeliveryTracker.Acknowledgment();
+        assertEquals(1, tracker.acknowledge(2L, false, 10L * MSEC, result));
+        assertEquals("queue2", result.getQueue());
+        assertEquals(1, result.getCount());
+        assertEquals(1L, result.getLatencies().getCount(LogHistogram.bucketOf(10L)));
+        assertEquals(1, tracker.getOutstanding());
+
+        // acknowledging again has no effect
+        assertEquals(0, tracker.acknowledge(2L, false, 10L * MSEC, result.reset()));
+        assertNull(result.getQueue());
+        assertEquals(0, result.getCount());
+        assertTrue(result.getLatencies().isEmpty());
+    }
+
+    @Test
+    public void testMultipleAck() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        for (long tag = 1L; tag <= 10L; tag++) {
+            tracker.delivered(tag, tag * MSEC, "queue");
+        }
+
+        DeliveryTracker.Acknowledgment result = new DeliveryTracker.Acknowledgment();
+        assertEquals(5, tracker.acknowledge(5L, true, 5L * MSEC, result));
+        assertEquals(5L, result.getLatencies().getCount());
+        assertEquals(5, result.getCount());
+        assertEquals(5, tracker.getOutstanding());
+
+        assertEquals(5, tracker.acknowledge(10L, true, 10L * MSEC, null));
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    public void testRingOverwrite() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long lastTag = DeliveryTracker.CAPACITY + 10L;
+        for (long tag = 1L; tag <= lastTag; tag++) {
+            tracker.delivered(tag, 0L, "queue");
+        }
+        assertEquals(DeliveryTracker.CAPACITY, tracker.getOutstanding());
+
+        // the oldest deliveries have been overwritten
+        assertEquals(0, tracker.acknowledge(1L, false, 0L, null));
+        assertEquals(DeliveryTracker.CAPACITY, tracker.acknowledge(lastTag, true, 0L, null));
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    public void testDeliveryTagGap() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        assertEquals(0L, tracker.getDeliveryTagGap());
+        for (long tag = 1L; tag <= 5L; tag++) {
+            tracker.delivered(tag, 0L, "queue");
+        }
+        assertEquals(4L, tracker.getDeliveryTagGap());
+
+        // out of order acknowledgment does not close the gap
+        tracker.acknowledge(3L, false, 0L, null);
+        assertEquals(4L, tracker.getDeliveryTagGap());
+        tracker.acknowledge(1L, false, 0L, null);
+        assertEquals(3L, tracker.getDeliveryTagGap());
+        // ... but skips the already acknowledged tag
+        tracker.acknowledge(2L, false, 0L, null);
+        assertEquals(1L, tracker.getDeliveryTagGap());
+
+        tracker.acknowledge(5L, true, 0L, null);
+        assertEquals(0L, tracker.getDeliveryTagGap());
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    public void testDeliveryTagGapUntrackedTags() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        // e.g., the delivery tags of automatically acknowledged basicGet calls
+        tracker.delivered(10L, 0L, "queue");
+        tracker.delivered(20L, 0L, "queue");
+        assertEquals(10L, tracker.getDeliveryTagGap());
+        tracker.acknowledge(10L, false, 0L, null);
+        assertEquals(0L, tracker.getDeliveryTagGap());
+        assertEquals(1, tracker.getOutstanding());
+    }
+
+    @Test
+    public void testDeliveryTagGapCapped() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long lastTag = 3L * DeliveryTracker.CAPACITY;
+        for (long tag = 1L; tag <= lastTag; tag++) {
+            tracker.delivered(tag, 0L, "queue");
+        }
+        assertEquals(DeliveryTracker.CAPACITY - 1L, tracker.getDeliveryTagGap());
+    }
+
+    @Test
+    public void testForChannel() {
+        Channel channel = mock(Channel.class);
+        assertNull(DeliveryTracker.forChannel(channel, false));
+        DeliveryTracker tracker = DeliveryTracker.forChannel(channel, true);
+        assertNotNull(tracker);
+        assertSame(tracker, DeliveryTracker.forChannel(channel, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(DeliveryTracker.forChannel(channel, false));
+    }
+}
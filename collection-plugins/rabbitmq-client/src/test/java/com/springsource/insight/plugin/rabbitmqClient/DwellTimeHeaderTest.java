@@ -0,0 +1,92 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class DwellTimeHeaderTest {
+
+    @Test
+    public void testStampKeepsProperties() {
+        Map<String, Object> headers = Collections.<String, Object>singletonMap("custom", "value");
+        BasicProperties props = new BasicProperties.Builder()
+                .appId("app")
+                .contentType("text/plain")
+                .correlationId("corr")
+                .deliveryMode(Integer.valueOf(2))
+                .headers(headers)
+                .build();
+
+        BasicProperties stamped = DwellTimeHeader.stamp(props, 1000L);
+        assertNotSame(props, stamped);
+        assertEquals("app", stamped.getAppId());
+        assertEquals("text/plain", stamped.getContentType());
+        assertEquals("corr", stamped.getCorrelationId());
+        assertEquals(Integer.valueOf(2), stamped.getDeliveryMode());
+        assertEquals("value", stamped.getHeaders().get("custom"));
+        assertEquals(1000L, DwellTimeHeader.getSentTime(stamped));
+
+        // the original headers are left untouched
+        assertFalse(headers.containsKey(DwellTimeHeader.headerName));
+    }
+
+    @Test
+    public void testStampNoProperties() {
+        assertEquals(1000L, DwellTimeHeader.getSentTime(DwellTimeHeader.stamp(null, 1000L)));
+    }
+
+    @Test
+    public void testGetSentTime() {
+        assertEquals(-1L, DwellTimeHeader.getSentTime(null));
+        assertEquals(-1L, DwellTimeHeader.getSentTime(new BasicProperties.Builder().build()));
+        assertEquals(77L, DwellTimeHeader.getSentTime(createProperties(LongStringHelper.asLongString("77"))));
+        assertEquals(-1L, DwellTimeHeader.getSentTime(createProperties("garbage")));
+    }
+
+    @Test
+    public void testApplyTo() {
+        BasicProperties props = DwellTimeHeader.stamp(null, 1000L);
+        Operation op = DwellTimeHeader.applyTo(new Operation(), props, 1250L);
+        assertEquals(Long.valueOf(250L), op.get(DwellTimeHeader.DWELL_TIME, Long.class));
+        assertNull(op.get(DwellTimeHeader.CLOCK_SKEW));
+
+        op = DwellTimeHeader.applyTo(new Operation(), props, 900L);
+        assertEquals(Long.valueOf(-100L), op.get(DwellTimeHeader.DWELL_TIME, Long.class));
+        assertEquals(Boolean.TRUE, op.get(DwellTimeHeader.CLOCK_SKEW, Boolean.class));
+
+        op = DwellTimeHeader.applyTo(new Operation(), new BasicProperties.Builder().build(), 900L);
+        assertNull(op.get(DwellTimeHeader.DWELL_TIME));
+    }
+
+    private static BasicProperties createProperties(Object sentTime) {
+        return new BasicProperties.Builder()
+                .headers(Collections.<String, Object>singletonMap(DwellTimeHeader.headerName, sentTime))
+                .build();
+    }
+}
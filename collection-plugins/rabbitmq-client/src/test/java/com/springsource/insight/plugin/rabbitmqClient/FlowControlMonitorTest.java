@@ -0,0 +1,186 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.FlowListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class FlowControlMonitorTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testStallTime() {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel1 = mock(Channel.class);
+        Channel channel2 = mock(Channel.class);
+
+        monitor.flow(channel1, false, 10L * MSEC);
+        monitor.flow(channel2, false, 20L * MSEC);
+        assertTrue(monitor.isBlocked());
+        assertEquals(1, monitor.getWindowCount());
+        assertEquals(15L * MSEC, monitor.getStallNanos(25L * MSEC));
+
+        // the connection is stalled until the last channel is released
+        monitor.flow(channel1, true, 30L * MSEC);
+        assertTrue(monitor.isBlocked());
+        monitor.flow(channel2, true, 40L * MSEC);
+        assertFalse(monitor.isBlocked());
+        assertEquals(30L * MSEC, monitor.getStallNanos(100L * MSEC));
+
+        // a repeated notification does not start a new window
+        monitor.flow(channel1, true, 50L * MSEC);
+        monitor.flow(channel1, false, 60L * MSEC);
+        monitor.flow(channel1, false, 70L * MSEC);
+        assertEquals(2, monitor.getWindowCount());
+        monitor.flow(channel1, true, 80L * MSEC);
+        assertEquals(50L * MSEC, monitor.getStallNanos(100L * MSEC));
+    }
+
+    @Test
+    public void testOverlap() {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel = mock(Channel.class);
+        assertEquals(0L, monitor.getOverlapNanos(0L, 10L * MSEC));
+
+        monitor.flow(channel, false, 10L * MSEC);
+        // publish still blocked
+        assertEquals(5L * MSEC, monitor.getOverlapNanos(5L * MSEC, 15L * MSEC));
+        assertEquals(3L * MSEC, monitor.getOverlapNanos(12L * MSEC, 15L * MSEC));
+
+        monitor.flow(channel, true, 20L * MSEC);
+        assertEquals(10L * MSEC, monitor.getOverlapNanos(5L * MSEC, 25L * MSEC));
+        assertEquals(5L * MSEC, monitor.getOverlapNanos(15L * MSEC, 25L * MSEC));
+        // started after the window ended
+        assertEquals(0L, monitor.getOverlapNanos(21L * MSEC, 25L * MSEC));
+    }
+
+    @Test
+    public void testApplyTo() {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel = mock(Channel.class);
+        Operation op = monitor.applyTo(new Operation(), 0L, 10L * MSEC);
+        assertNull(op.get(FlowControlMonitor.FLOW_STALL_TIME));
+
+        monitor.flow(channel, false, 5L * MSEC);
+        monitor.flow(channel, true, 8L * MSEC);
+        op = monitor.applyTo(new Operation(), 0L, 10L * MSEC);
+        assertEquals(Long.valueOf(3L), op.get(FlowControlMonitor.FLOW_STALL_TIME, Long.class));
+        assertEquals(Long.valueOf(3L), op.get(FlowControlMonitor.CONNECTION_STALL_TIME, Long.class));
+    }
+
+    @Test
+    public void testRegister() throws IOException {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel = mock(Channel.class);
+        monitor.register(channel);
+
+        ArgumentCaptor<FlowListener> flowCaptor = ArgumentCaptor.forClass(FlowListener.class);
+        verify(channel).setFlowListener(flowCaptor.capture());
+        flowCaptor.getValue().handleFlow(false);
+        assertTrue(monitor.isBlocked());
+
+        // closing a blocked channel ends its window
+        ArgumentCaptor<ShutdownListener> shutdownCaptor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(shutdownCaptor.capture());
+        shutdownCaptor.getValue().shutdownCompleted(null);
+        assertFalse(monitor.isBlocked());
+    }
+
+    @Test
+    public void testRegisterChainsApplicationListener() throws IOException {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel = mock(Channel.class);
+        FlowListener appListener = mock(FlowListener.class);
+        when(channel.getFlowListener()).thenReturn(appListener);
+        monitor.register(channel);
+
+        ArgumentCaptor<FlowListener> flowCaptor = ArgumentCaptor.forClass(FlowListener.class);
+        verify(channel).setFlowListener(flowCaptor.capture());
+        FlowListener listener = flowCaptor.getValue();
+        listener.handleFlow(false);
+        assertTrue(monitor.isBlocked());
+        verify(appListener).handleFlow(false);
+
+        // already registered
+        when(channel.getFlowListener()).thenReturn(listener);
+        monitor.register(channel);
+        verify(channel, times(1)).setFlowListener(any(FlowListener.class));
+    }
+
+    @Test
+    public void testChainLaterListener() throws IOException {
+        FlowControlMonitor monitor = new FlowControlMonitor();
+        Channel channel = mock(Channel.class);
+        FlowListener appListener = mock(FlowListener.class);
+        // not monitored - set as is
+        assertSame(appListener, FlowControlMonitor.chain(channel, appListener));
+
+        monitor.register(channel);
+        ArgumentCaptor<FlowListener> flowCaptor = ArgumentCaptor.forClass(FlowListener.class);
+        verify(channel).setFlowListener(flowCaptor.capture());
+        FlowListener listener = flowCaptor.getValue();
+        when(channel.getFlowListener()).thenReturn(listener);
+
+        // the monitoring listener stays in place and invokes the application's one
+        assertSame(listener, FlowControlMonitor.chain(channel, appListener));
+        listener.handleFlow(false);
+        assertTrue(monitor.isBlocked());
+        verify(appListener).handleFlow(false);
+
+        // removing the application listener keeps the monitoring
+        assertSame(listener, FlowControlMonitor.chain(channel, null));
+        listener.handleFlow(true);
+        assertFalse(monitor.isBlocked());
+        verify(appListener, never()).handleFlow(true);
+    }
+
+    @Test
+    public void testForConnection() {
+        Connection connection = mock(Connection.class);
+        assertNull(FlowControlMonitor.forConnection(connection, false));
+        FlowControlMonitor monitor = FlowControlMonitor.forConnection(connection, true);
+        assertNotNull(monitor);
+        assertSame(monitor, FlowControlMonitor.forConnection(connection, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(connection).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(FlowControlMonitor.forConnection(connection, false));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class HeaderCapturePolicyTest {
+
+    @Test
+    public void testIncludesAndExcludes() {
+        HeaderCapturePolicy policy = new HeaderCapturePolicy(Arrays.asList("a", "b"), Arrays.asList("b"), 16, 8);
+        assertTrue(policy.accept("a"));
+        assertFalse(policy.accept("b"));
+        assertFalse(policy.accept("c"));
+
+        policy = new HeaderCapturePolicy(null, Arrays.asList("secret"), 16, 8);
+        assertTrue(policy.accept("c"));
+        assertFalse(policy.accept("secret"));
+    }
+
+    @Test
+    public void testLongStringPrefixDecoding() {
+        HeaderCapturePolicy policy = new HeaderCapturePolicy(null, null, 4, 8);
+        assertEquals("abc", policy.captureValue(LongStringHelper.asLongString("abc")));
+        assertEquals("abcd...", policy.captureValue(LongStringHelper.asLongString("abcdefgh")));
+        assertEquals("abcd...", policy.captureValue("abcdefgh"));
+    }
+
+    @Test
+    public void testDecodingDoesNotSplitCharacters() throws Exception {
+        HeaderCapturePolicy policy = new HeaderCapturePolicy(null, null, 4, 8);
+        // "ab" followed by a 3-byte UTF-8 character - cutting at 4 bytes would split it
+        byte[] bytes = "ab\u20accd".getBytes("UTF-8");
+        assertEquals("ab...", policy.decode(bytes));
+        assertNull(policy.decode(null));
+    }
+
+    @Test
+    public void testMaxHeaders() {
+        Map<String, Object> headers = new LinkedHashMap<String, Object>();
+        headers.put("excluded", "x");
+        headers.put("h1", LongStringHelper.asLongString("v1"));
+        headers.put("h2", Integer.valueOf(2));
+        headers.put("h3", "v3");
+
+        HeaderCapturePolicy policy = new HeaderCapturePolicy(null, Arrays.asList("excluded"), 16, 2);
+        OperationMap map = new Operation().createMap("headers");
+
+        assertEquals(2, policy.capture(headers, map));
+        assertNull(map.get("excluded"));
+        assertEquals("v1", map.get("h1"));
+        assertEquals(Integer.valueOf(2), map.get("h2"));
+        assertNull(map.get("h3"));
+    }
+
+    @Test
+    public void testParseNames() {
+        assertTrue(HeaderCapturePolicy.parseNames(null).isEmpty());
+        assertTrue(HeaderCapturePolicy.parseNames(" ").isEmpty());
+        assertEquals(2, HeaderCapturePolicy.parseNames("a, b,,").size());
+    }
+}
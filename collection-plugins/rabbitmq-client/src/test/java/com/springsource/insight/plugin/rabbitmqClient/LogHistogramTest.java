@@ -0,0 +1,104 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class LogHistogramTest {
+
+    @Test
+    public void testBucketOf() {
+        assertEquals(0, LogHistogram.bucketOf(-5L));
+        assertEquals(0, LogHistogram.bucketOf(0L));
+        assertEquals(0, LogHistogram.bucketOf(1L));
+        assertEquals(1, LogHistogram.bucketOf(2L));
+        assertEquals(2, LogHistogram.bucketOf(3L));
+        assertEquals(2, LogHistogram.bucketOf(4L));
+        assertEquals(3, LogHistogram.bucketOf(5L));
+        assertEquals(10, LogHistogram.bucketOf(1024L));
+        assertEquals(11, LogHistogram.bucketOf(1025L));
+        assertEquals(LogHistogram.NUM_BUCKETS - 1, LogHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        for (int bucket = 1; bucket < LogHistogram.NUM_BUCKETS - 1; bucket++) {
+            long bound = LogHistogram.upperBound(bucket);
+            assertEquals(bucket, LogHistogram.bucketOf(bound));
+            assertEquals(bucket + 1, LogHistogram.bucketOf(bound + 1L));
+        }
+        assertEquals("le16", LogHistogram.bucketName(4));
+    }
+
+    @Test
+    public void testRecord() {
+        LogHistogram histogram = new LogHistogram();
+        assertTrue(histogram.isEmpty());
+
+        histogram.record(3L);
+        histogram.record(4L, 2L);
+        histogram.record(100L, 0L);    // ignored
+        assertFalse(histogram.isEmpty());
+        assertEquals(3L, histogram.getCount());
+        assertEquals(3L, histogram.getCount(2));
+    }
+
+    @Test
+    public void testApplyTo() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(1L);
+        histogram.record(10L, 3L);
+
+        Operation op = histogram.applyTo(new Operation(), "latency");
+        OperationMap map = op.get("latency", OperationMap.class);
+        assertNotNull(map);
+        assertEquals(Long.valueOf(1L), map.get("le1", Long.class));
+        assertEquals(Long.valueOf(3L), map.get("le16", Long.class));
+        assertNull(map.get("le2"));
+    }
+
+    @Test
+    public void testStatistics() {
+        LogHistogram histogram = new LogHistogram();
+        assertEquals(0L, histogram.getMin());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0L, histogram.getMean());
+        assertEquals(0L, histogram.getPercentile(50.0d));
+
+        for (long value = 1L; value <= 100L; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1L, histogram.getMin());
+        assertEquals(100L, histogram.getMax());
+        assertEquals(5050L, histogram.getSum());
+        assertEquals(50L, histogram.getMean());
+        // the 50th value falls in the (32, 64] bucket
+        assertEquals(64L, histogram.getPercentile(50.0d));
+        // the 99th value falls in the (64, 128] bucket - clamped to the max
+        assertEquals(100L, histogram.getPercentile(99.0d));
+        assertEquals(1L, histogram.getPercentile(1.0d));
+    }
+}
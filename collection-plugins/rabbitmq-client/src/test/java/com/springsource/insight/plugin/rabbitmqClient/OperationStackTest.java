@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class OperationStackTest {
+
+    @Test
+    public void testPushPop() {
+        OperationStack stack = new OperationStack();
+        Operation[] ops = new Operation[10];   // more than the initial capacity
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = (i == 3) ? null : new Operation();
+            stack.push(ops[i], i);
+        }
+        assertEquals(ops.length, stack.size());
+
+        for (int i = ops.length - 1; i >= 0; i--) {
+            assertEquals(i, stack.peekTimestamp());
+            assertSame(ops[i], stack.pop());
+        }
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testNullPlaceHolder() {
+        OperationStack stack = new OperationStack();
+        stack.push(null, 0L);
+        assertNull(stack.pop());
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testEntered() {
+        OperationStack stack = new OperationStack();
+        stack.push(null, 0L);
+        stack.push(new Operation(), 1L);
+        stack.push(new Operation(), 2L, false);
+        assertFalse(stack.peekEntered());
+        stack.pop();
+        assertTrue(stack.peekEntered());
+        stack.pop();
+        assertFalse(stack.peekEntered());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testPopEmpty() {
+        new OperationStack().pop();
+    }
+}
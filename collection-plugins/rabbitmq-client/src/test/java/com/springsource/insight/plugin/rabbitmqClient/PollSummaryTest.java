@@ -0,0 +1,107 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class PollSummaryTest {
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void testReceivedAfterEmptyPolls() {
+        PollSummary.Streak streak = createSummary(1000, 60000L).getStreak("queue", true);
+        assertFalse(streak.isPending());
+        assertFalse(streak.recordEmptyPoll(0L, 2 * MILLI));
+        assertFalse(streak.recordEmptyPoll(2 * MILLI, 5 * MILLI));
+        assertEquals(2, streak.getEmptyCount());
+        assertEquals(5 * MILLI, streak.getTotalWaitNanos());
+
+        OperationMap map = streak.applyTo(new Operation(), true, MILLI).get(PollSummary.SUMMARY_MAP, OperationMap.class);
+        assertEquals(Integer.valueOf(3), map.get("pollCount", Integer.class));
+        assertEquals(Integer.valueOf(2), map.get("emptyCount", Integer.class));
+        assertEquals(Long.valueOf(6L), map.get("totalWaitTime", Long.class));
+        assertFalse(streak.isPending());
+        assertFalse(streak.isIdle());
+    }
+
+    @Test
+    public void testIdle() {
+        PollSummary summary = createSummary(1000, 60000L);
+        assertFalse(summary.isIdle("queue"));
+        assertNull(summary.getStreak("queue", false));
+
+        PollSummary.Streak streak = summary.getStreak("queue", true);
+        assertSame(streak, summary.getStreak("queue", false));
+        streak.recordEmptyPoll(0L, MILLI);
+        assertTrue(summary.isIdle("queue"));
+        assertFalse(summary.isIdle("other"));
+
+        // reporting the accumulated polls does not end the streak
+        streak.applyTo(new Operation(), false, 0L);
+        assertTrue(summary.isIdle("queue"));
+        streak.received();
+        assertFalse(summary.isIdle("queue"));
+    }
+
+    @Test
+    public void testDisabled() {
+        PollSummary summary = createSummary(0, 60000L);
+        assertFalse(summary.isEnabled());
+        summary.getStreak("queue", true).recordEmptyPoll(0L, MILLI);
+        assertFalse(summary.isIdle("queue"));
+    }
+
+    @Test
+    public void testMaxEmptyPolls() {
+        PollSummary.Streak streak = createSummary(10, 60000L).getStreak("queue", true);
+        for (int i = 1; i < 10; i++) {
+            assertFalse("Premature flush at poll #" + i, streak.recordEmptyPoll(i, i));
+        }
+        assertTrue(streak.recordEmptyPoll(0L, 0L));
+
+        OperationMap map = streak.applyTo(new Operation(), false, 0L).get(PollSummary.SUMMARY_MAP, OperationMap.class);
+        assertEquals(Integer.valueOf(10), map.get("pollCount", Integer.class));
+        assertEquals(Integer.valueOf(10), map.get("emptyCount", Integer.class));
+    }
+
+    @Test
+    public void testMaxInterval() {
+        PollSummary.Streak streak = createSummary(1000, 5L).getStreak("queue", true);
+        assertFalse(streak.recordEmptyPoll(0L, MILLI));
+        assertTrue(streak.recordEmptyPoll(MILLI, 5 * MILLI));
+    }
+
+    @Test
+    public void testFromSystemProperties() {
+        PollSummary summary = PollSummary.fromSystemProperties();
+        assertEquals(PollSummary.DEFAULT_MAX_EMPTY_POLLS, summary.getMaxEmptyPolls());
+        assertEquals(PollSummary.DEFAULT_MAX_INTERVAL_MILLIS * MILLI, summary.getMaxIntervalNanos());
+    }
+
+    private static PollSummary createSummary(int maxEmptyPolls, long maxIntervalMillis) {
+        return new PollSummary(maxEmptyPolls, maxIntervalMillis);
+    }
+}
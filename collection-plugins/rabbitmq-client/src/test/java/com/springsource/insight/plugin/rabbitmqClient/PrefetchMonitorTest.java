@@ -0,0 +1,94 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class PrefetchMonitorTest {
+
+    @Test
+    public void testSingleAck() {
+        PrefetchMonitor monitor = new PrefetchMonitor();
+        assertEquals(1L, monitor.delivered(1L));
+        assertEquals(2L, monitor.delivered(2L));
+        assertEquals(1L, monitor.acknowledged(1L, false));
+        assertEquals(0L, monitor.acknowledged(2L, false));
+        // acknowledging an uncounted delivery has no effect
+        assertEquals(0L, monitor.acknowledged(3L, false));
+    }
+
+    @Test
+    public void testMultipleAck() {
+        PrefetchMonitor monitor = new PrefetchMonitor();
+        for (long tag = 1L; tag <= 10L; tag++) {
+            monitor.delivered(tag);
+        }
+        assertEquals(10L, monitor.getInFlight());
+        assertEquals(4L, monitor.acknowledged(6L, true));
+        assertEquals(0L, monitor.acknowledged(10L, true));
+    }
+
+    @Test
+    public void testDeliveryTagsRestart() {
+        PrefetchMonitor monitor = new PrefetchMonitor();
+        monitor.delivered(5L);
+        monitor.delivered(6L);
+        // e.g., the channel was recovered
+        assertEquals(1L, monitor.delivered(1L));
+    }
+
+    @Test
+    public void testApplyTo() {
+        PrefetchMonitor monitor = new PrefetchMonitor();
+        monitor.delivered(1L);
+
+        Operation op = monitor.applyTo(new Operation());
+        assertNull(op.get(PrefetchMonitor.PREFETCH_COUNT));
+        assertEquals(Long.valueOf(1L), op.get(PrefetchMonitor.IN_FLIGHT, Long.class));
+
+        monitor.setPrefetchCount(20);
+        op = monitor.applyTo(new Operation());
+        assertEquals(Integer.valueOf(20), op.get(PrefetchMonitor.PREFETCH_COUNT, Integer.class));
+    }
+
+    @Test
+    public void testForChannel() {
+        Channel channel = mock(Channel.class);
+        assertNull(PrefetchMonitor.forChannel(channel, false));
+        PrefetchMonitor monitor = PrefetchMonitor.forChannel(channel, true);
+        assertNotNull(monitor);
+        assertSame(monitor, PrefetchMonitor.forChannel(channel, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(PrefetchMonitor.forChannel(channel, false));
+    }
+}
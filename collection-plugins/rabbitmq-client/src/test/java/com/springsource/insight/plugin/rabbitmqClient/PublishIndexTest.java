@@ -0,0 +1,123 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class PublishIndexTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testKeyOf() {
+        assertNull(PublishIndex.keyOf(null));
+        assertNull(PublishIndex.keyOf(new BasicProperties.Builder().build()));
+        // shared by a request and its reply
+        assertNull(PublishIndex.keyOf(new BasicProperties.Builder().correlationId("corr").build()));
+        assertEquals("msg", PublishIndex.keyOf(new BasicProperties.Builder().messageId("msg").correlationId("corr").build()));
+    }
+
+    @Test
+    public void testLookup() {
+        PublishIndex index = new PublishIndex(128, 1000L);
+        index.published("msg1", "exchange", "key", 10L * MSEC);
+        PublishIndex.Publish publish = index.lookup("msg1", 20L * MSEC);
+        assertNotNull(publish);
+        assertEquals("exchange", publish.exchange);
+        assertEquals("key", publish.routingKey);
+        assertEquals(Thread.currentThread().getName(), publish.thread);
+
+        // matched entries remain - e.g., the message is consumed from several queues
+        assertNotNull(index.lookup("msg1", 30L * MSEC));
+        assertNull(index.lookup("msg2", 30L * MSEC));
+        assertNull(index.lookup(null, 30L * MSEC));
+    }
+
+    @Test
+    public void testEvictionByAge() {
+        PublishIndex index = new PublishIndex(128, 100L);
+        index.published("msg1", "exchange", "key", 0L);
+        assertNull(index.lookup("msg1", 100L * MSEC));
+
+        // stale entries are evicted by the later publishes
+        for (int i = 0; i < PublishIndex.SEGMENTS * 4; i++) {
+            index.published("msg" + (i + 2), "exchange", "key", 200L * MSEC);
+        }
+        assertNull(index.lookup("msg1", 200L * MSEC));
+        assertTrue(index.size() <= 128);
+    }
+
+    @Test
+    public void testEvictionByCount() {
+        PublishIndex index = new PublishIndex(64, 60000L);
+        for (int i = 0; i < 10000; i++) {
+            index.published("msg" + i, "exchange", "key", i);
+        }
+        assertTrue("Size: " + index.size(), index.size() <= 64);
+        // the most recent one is always kept
+        assertNotNull(index.lookup("msg9999", 10000L));
+    }
+
+    @Test
+    public void testDisabled() {
+        PublishIndex index = new PublishIndex(0, 1000L);
+        assertFalse(index.isEnabled());
+        index.published("msg1", "exchange", "key", 0L);
+        assertEquals(0, index.size());
+        assertNull(index.lookup("msg1", 0L));
+    }
+
+    @Test
+    public void testOptIn() {
+        assertFalse(PublishIndex.fromSystemProperties().isEnabled());
+
+        System.setProperty(PublishIndex.ENABLED_PROPERTY, "true");
+        try {
+            PublishIndex index = PublishIndex.fromSystemProperties();
+            assertTrue(index.isEnabled());
+            assertEquals(PublishIndex.DEFAULT_MAX_ENTRIES, index.getMaxEntries());
+        } finally {
+            System.clearProperty(PublishIndex.ENABLED_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testApplyTo() {
+        PublishIndex index = new PublishIndex(128, 60000L);
+        index.published("msg1", "exchange", "key", System.nanoTime());
+
+        Operation op = index.applyTo(new Operation(), new BasicProperties.Builder().messageId("msg1").build());
+        OperationMap producer = op.get(PublishIndex.PRODUCER_MAP, OperationMap.class);
+        assertNotNull(producer);
+        assertEquals("msg1", producer.get("key", String.class));
+        assertEquals("exchange", producer.get("exchange", String.class));
+        assertNotNull(producer.get(PublishIndex.END_TO_END_LATENCY, Long.class));
+
+        op = index.applyTo(new Operation(), new BasicProperties.Builder().messageId("msg2").build());
+        assertNull(op.get(PublishIndex.PRODUCER_MAP));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+import com.springsource.insight.plugin.rabbitmqClient.RabbitMQConsumerCollectionAspectTest.MockChannel;
+
+public class RabbitMQAckCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testBasicAck() throws IOException {
+        MockChannel channel = createDeliveringChannel(7L);
+        channel.basicGet("acked", false);
+        channel.basicAck(7L, false);
+        assertTrue(RabbitMQAckCollectionAspect.opHolder.get().isEmpty());
+
+        Operation op = assertAckOperation(RabbitMQAckCollectionAspect.ACK, "Ack", 7L, 1);
+        assertNull(op.get("requeue"));
+        assertEquals("acked", op.get("queue", String.class));
+        assertNull(op.get("envelope"));
+        assertNotNull(op.get(RabbitMQAckCollectionAspect.LATENCY_MAP, OperationMap.class));
+    }
+
+    @Test
+    public void testBasicNack() throws IOException {
+        MockChannel channel = createDeliveringChannel(3L);
+        channel.basicGet("nacked", false);
+        channel.basicNack(3L, true, true);
+
+        Operation op = assertAckOperation(RabbitMQAckCollectionAspect.NACK, "Nack", 3L, 1);
+        assertEquals(Boolean.TRUE, op.get("requeue", Boolean.class));
+        assertEquals(Boolean.TRUE, op.get("multiple", Boolean.class));
+        assertEquals("nacked", op.get("queue", String.class));
+    }
+
+    @Test
+    public void testUntrackedReject() throws IOException {
+        MockChannel channel = createDeliveringChannel(1L);
+        channel.basicReject(5L, false);
+
+        Operation op = assertAckOperation(RabbitMQAckCollectionAspect.REJECT, "Reject", 5L, 0);
+        assertEquals(Boolean.FALSE, op.get("requeue", Boolean.class));
+        assertNull(op.get("queue"));
+        assertNull(op.get(RabbitMQAckCollectionAspect.LATENCY_MAP));
+    }
+
+    private Operation assertAckOperation(String ackType, String label, long deliveryTag, int ackCount) {
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitPluginOperationType.ACK.getOperationType(), op.getType());
+        assertEquals(label, op.getLabel());
+        assertEquals(ackType, op.get("ackType", String.class));
+        assertEquals(Long.valueOf(deliveryTag), op.get("deliveryTag", Long.class));
+        assertEquals(Integer.valueOf(ackCount), op.get("ackCount", Integer.class));
+        return op;
+    }
+
+    private static MockChannel createDeliveringChannel(long deliveryTag) {
+        Envelope envelope = new Envelope(deliveryTag, false, "exchange", "routingKey");
+        return new MockChannel(envelope, new BasicProperties.Builder().build(), new byte[10]);
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitMQAckCollectionAspect.aspectOf();
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+
+public class RabbitMQAckMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
+
+	public RabbitMQAckMetricsGeneratorTest() {
+		super(RabbitPluginOperationType.ACK);
+	}
+
+	@Override
+	protected AbstractRabbitMetricsGenerator getMetricsGenerator() {
+		return new RabbitMQAckMetricsGenerator();
+	}
+
+	@Test
+	public void testAckCounters() {
+		String prefix = RabbitPluginOperationType.ACK.getOperationType().getName();
+		LogHistogram latencies = new LogHistogram();
+		latencies.record(3L, 2L);
+		latencies.record(100L);
+
+		Operation op = new Operation()
+				.type(RabbitPluginOperationType.ACK.getOperationType())
+				.put("ackType", RabbitMQAckCollectionAspect.NACK)
+				.put("ackCount", 3)
+				.put("requeue", true);
+		latencies.applyTo(op, RabbitMQAckCollectionAspect.LATENCY_MAP);
+
+		Map<String, Integer> counters = RabbitMQAckMetricsGenerator.getAckCounters(prefix, op);
+		assertEquals(4, counters.size());
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".nack" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".requeue" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(2), counters.get(prefix + ".latency.le4ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".latency.le128ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testCountersSummedAcrossFrames() {
+		String prefix = RabbitPluginOperationType.ACK.getOperationType().getName();
+		Frame first = mockAckFrame(2), second = mockAckFrame(3);
+		Map<String, Integer> counters = getMetricsGenerator().sumExtraCounters(Arrays.asList(first, second));
+		assertEquals(Integer.valueOf(5), counters.get(prefix + ".nack" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(5), counters.get(prefix + ".requeue" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoAckCounters() {
+		String prefix = RabbitPluginOperationType.ACK.getOperationType().getName();
+		assertTrue(RabbitMQAckMetricsGenerator.getAckCounters(prefix, null).isEmpty());
+		assertTrue(RabbitMQAckMetricsGenerator.getAckCounters(prefix, new Operation()).isEmpty());
+	}
+
+	private static Frame mockAckFrame(int ackCount) {
+		Operation op = new Operation()
+				.type(RabbitPluginOperationType.ACK.getOperationType())
+				.put("ackType", RabbitMQAckCollectionAspect.NACK)
+				.put("ackCount", ackCount)
+				.put("requeue", true);
+		Frame frame = mock(Frame.class);
+		when(frame.getOperation()).thenReturn(op);
+		return frame;
+	}
+}
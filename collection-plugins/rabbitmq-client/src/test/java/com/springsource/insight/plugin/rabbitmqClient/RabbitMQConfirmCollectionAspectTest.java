@@ -0,0 +1,122 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.ConfirmListener;
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+import com.springsource.insight.plugin.rabbitmqClient.RabbitMQPublishCollectionAspectTest.MockChannel;
+
+public class RabbitMQConfirmCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testMultipleAck() throws IOException {
+        MockChannel channel = createConfirmingChannel();
+        for (int i = 0; i < 3; i++) {
+            channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        }
+        assertEquals(3, ConfirmTracker.forChannel(channel, false).getOutstanding());
+
+        channel.confirm(2L, true, true);
+        assertTrue(RabbitMQConfirmCollectionAspect.opHolder.get().isEmpty());
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitPluginOperationType.CONFIRM.getOperationType(), op.getType());
+        assertEquals(RabbitMQConfirmCollectionAspect.ACK, op.get("confirmType", String.class));
+        assertEquals(Long.valueOf(2L), op.get("seqNo", Long.class));
+        assertEquals(Integer.valueOf(2), op.get("confirmCount", Integer.class));
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertEquals("routingKey", op.get("routingKey", String.class));
+        assertEquals(Integer.valueOf(1), op.get("outstanding", Integer.class));
+        assertEquals(Integer.valueOf(1), op.get(RabbitMQConfirmCollectionAspect.OUTSTANDING_SAMPLE, Integer.class));
+        assertNotNull(op.get(RabbitMQConfirmCollectionAspect.LATENCY_MAP, OperationMap.class));
+    }
+
+    @Test
+    public void testListenerSetAfterConfirmSelect() throws IOException {
+        MockChannel channel = new MockChannel();
+        channel.confirmSelect();
+        channel.setConfirmListener(new MockConfirmListener());
+        channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        channel.confirm(1L, false, true);
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(Long.valueOf(1L), op.get("seqNo", Long.class));
+        assertEquals(0, ConfirmTracker.forChannel(channel, false).getOutstanding());
+    }
+
+    @Test
+    public void testNack() throws IOException {
+        MockChannel channel = createConfirmingChannel();
+        channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        channel.confirm(1L, false, false);
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitMQConfirmCollectionAspect.NACK, op.get("confirmType", String.class));
+        assertEquals(Integer.valueOf(0), op.get("outstanding", Integer.class));
+    }
+
+    @Test
+    public void testUntrackedConfirmIgnored() throws IOException {
+        MockChannel channel = createConfirmingChannel();
+        channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        channel.confirm(7L, false, true);
+        assertTrue(RabbitMQConfirmCollectionAspect.opHolder.get().isEmpty());
+        assertEquals(1, ConfirmTracker.forChannel(channel, false).getOutstanding());
+    }
+
+    private static MockChannel createConfirmingChannel() throws IOException {
+        MockChannel channel = new MockChannel();
+        channel.setConfirmListener(new MockConfirmListener());
+        channel.confirmSelect();
+        assertNotNull(ConfirmTracker.forChannel(channel, false));
+        return channel;
+    }
+
+    // NOTE: a mock would not be woven
+    static final class MockConfirmListener implements ConfirmListener {
+        MockConfirmListener() {
+            super();
+        }
+
+        public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+            // do nothing
+        }
+
+        public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+            // do nothing
+        }
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitMQConfirmCollectionAspect.aspectOf();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitMQConfirmMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
+
+	public RabbitMQConfirmMetricsGeneratorTest() {
+		super(RabbitPluginOperationType.CONFIRM);
+	}
+
+	@Override
+	protected AbstractRabbitMetricsGenerator getMetricsGenerator() {
+		return new RabbitMQConfirmMetricsGenerator();
+	}
+
+	@Test
+	public void testConfirmCounters() {
+		String prefix = RabbitPluginOperationType.CONFIRM.getOperationType().getName();
+		LogHistogram latencies = new LogHistogram();
+		latencies.record(20L, 4L);
+
+		Operation op = new Operation()
+				.type(RabbitPluginOperationType.CONFIRM.getOperationType())
+				.put("confirmType", RabbitMQConfirmCollectionAspect.ACK)
+				.put("confirmCount", 4)
+				.put(RabbitMQConfirmCollectionAspect.OUTSTANDING_SAMPLE, 7);
+		latencies.applyTo(op, RabbitMQConfirmCollectionAspect.LATENCY_MAP);
+
+		Map<String, Integer> counters = RabbitMQConfirmMetricsGenerator.getConfirmCounters(prefix, op);
+		assertEquals(3, counters.size());
+		assertEquals(Integer.valueOf(7), counters.get(prefix + ".outstanding" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(4), counters.get(prefix + ".ack" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(4), counters.get(prefix + ".latency.le32ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoConfirmCounters() {
+		String prefix = RabbitPluginOperationType.CONFIRM.getOperationType().getName();
+		assertTrue(RabbitMQConfirmMetricsGenerator.getConfirmCounters(prefix, null).isEmpty());
+	}
+}
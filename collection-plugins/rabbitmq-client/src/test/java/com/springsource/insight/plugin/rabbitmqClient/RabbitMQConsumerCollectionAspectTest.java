@@ -17,8 +17,11 @@
 package com.springsource.insight.plugin.rabbitmqClient;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -44,6 +47,7 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.FlowListener;
 import com.rabbitmq.client.GetResponse;
@@ -67,9 +71,9 @@ public class RabbitMQConsumerCollectionAspectTest extends OperationCollectionAsp
         Envelope envelope = new Envelope(1l, false, "exchange", "routingKey");
         BasicProperties props = create();
         byte[] body = new byte[25];
-        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.isEmpty());
+        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
         consumer.handleDelivery(consumerTag, envelope, props, body);
-        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.isEmpty());
+        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
         assertOperation(envelope, props, body);
     }
     
@@ -81,12 +85,251 @@ public class RabbitMQConsumerCollectionAspectTest extends OperationCollectionAsp
         byte[] body = new byte[25];
         
         MockChannel channel = new MockChannel(envelope, props, body);
-        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.isEmpty());
+        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
         channel.basicGet("rk", false);
-        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.isEmpty());
+        assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
         assertOperation(envelope, props, body);
     }
 
+    @Test
+    public void testConsumerQueueThroughput() throws IOException {
+        MockChannel channel = new MockChannel(null, null, null);
+        MockConsumer consumer = new MockConsumer();
+        assertEquals("ctag-orders", channel.basicConsume("orders", false, "ctag-orders", false, false, null, consumer));
+        assertEquals("orders", ConsumerQueues.queueOf("ctag-orders"));
+
+        consumer.handleDelivery("ctag-orders", new Envelope(1L, false, "exchange", "routingKey"), create(), new byte[25]);
+        Operation op = getLastEntered();
+        assertEquals("orders", op.get("queue", String.class));
+        OperationMap rates = op.get(ThroughputMeter.THROUGHPUT_MAP, OperationMap.class);
+        assertNotNull(rates);
+        assertNotNull(rates.get("msgs60s", Long.class));
+        assertNotNull(rates.get("bytes1s", Long.class));
+
+        channel.basicCancel("ctag-orders");
+        assertNull(ConsumerQueues.queueOf("ctag-orders"));
+    }
+
+    @Test
+    public void testRedelivery() throws IOException {
+        Envelope envelope = new Envelope(3L, true, "exchange", "routingKey");
+        MockChannel channel = new MockChannel(envelope, create(), new byte[25]);
+        channel.basicGet("redelivered", false);
+
+        Operation op = getLastEntered();
+        assertEquals(Boolean.TRUE, op.get("envelope", OperationMap.class).get("redeliver", Boolean.class));
+        assertEquals(Long.valueOf(0L), op.get(RabbitMQConsumerCollectionAspect.DELIVERY_TAG_GAP, Long.class));
+        OperationMap rates = op.get(ThroughputMeter.THROUGHPUT_MAP, OperationMap.class);
+        assertNotNull(rates.get("redelivered1s", Long.class));
+    }
+
+    @Test
+    public void testPrefetchInFlight() throws IOException {
+        MockChannel channel = new MockChannel(new Envelope(4L, false, "exchange", "routingKey"), create(), new byte[25]);
+        channel.basicQos(10);
+        channel.basicGet("prefetched", false);
+
+        Operation op = getLastEntered();
+        assertEquals(Integer.valueOf(10), op.get(PrefetchMonitor.PREFETCH_COUNT, Integer.class));
+        assertEquals(Long.valueOf(1L), op.get(PrefetchMonitor.IN_FLIGHT, Long.class));
+
+        channel.basicAck(4L, false);
+        assertEquals(0L, PrefetchMonitor.forChannel(channel, false).getInFlight());
+
+        channel.basicGet("prefetched", false);
+        assertEquals(1L, PrefetchMonitor.forChannel(channel, false).getInFlight());
+        channel.basicReject(4L, true);
+        assertEquals(0L, PrefetchMonitor.forChannel(channel, false).getInFlight());
+
+        // automatically acknowledged deliveries are never in-flight
+        channel.basicGet("prefetched", true);
+        assertNull(getLastEntered().get(PrefetchMonitor.IN_FLIGHT));
+        assertEquals(0L, PrefetchMonitor.forChannel(channel, false).getInFlight());
+    }
+
+    @Test
+    public void testAutoAckDeliveryNotTracked() throws IOException {
+        MockChannel channel = new MockChannel(null, null, null);
+        ChannelConsumer consumer = new ChannelConsumer(channel);
+        channel.basicConsume("manual", false, "ctag-manual", false, false, null, consumer);
+        channel.basicConsume("auto", true, "ctag-auto", false, false, null, consumer);
+
+        consumer.handleDelivery("ctag-manual", new Envelope(1L, false, "exchange", "routingKey"), create(), new byte[25]);
+        assertEquals(Long.valueOf(0L), getLastEntered().get(RabbitMQConsumerCollectionAspect.DELIVERY_TAG_GAP, Long.class));
+
+        consumer.handleDelivery("ctag-auto", new Envelope(2L, false, "exchange", "routingKey"), create(), new byte[25]);
+        assertNull(getLastEntered().get(RabbitMQConsumerCollectionAspect.DELIVERY_TAG_GAP));
+
+        channel.basicCancel("ctag-manual");
+        channel.basicCancel("ctag-auto");
+    }
+
+    @Test
+    public void testRpcReply() throws IOException {
+        RpcTracker tracker = AbstractRabbitMQCollectionAspect.getRpcTracker();
+        tracker.request("rpc-1", "reply.queue", "exchange", "rpc.key", System.nanoTime());
+
+        BasicProperties props = new BasicProperties.Builder().correlationId("rpc-1").build();
+        MockChannel channel = new MockChannel(new Envelope(1L, false, "", "reply.queue"), props, new byte[25]);
+        channel.basicGet("reply.queue", true);
+
+        Operation op = getLastEntered();
+        assertEquals(RabbitPluginOperationType.RPC.getOperationType(), op.getType());
+        assertEquals(RpcTracker.REPLY, op.get(RpcTracker.OUTCOME, String.class));
+        assertEquals("rpc.key", op.get("routingKey", String.class));
+        assertEquals("rpc-1", op.get("correlationId", String.class));
+        assertNotNull(op.get(RpcTracker.ROUND_TRIP_TIME, Long.class));
+        assertNull(tracker.reply("rpc-1", "reply.queue", System.nanoTime()));
+    }
+
+    @Test
+    public void testProducerStitching() throws IOException {
+        PublishIndex original = AbstractRabbitMQCollectionAspect.getPublishIndex();
+        // disabled by default
+        assertFalse(original.isEnabled());
+        AbstractRabbitMQCollectionAspect.setPublishIndex(new PublishIndex(PublishIndex.DEFAULT_MAX_ENTRIES, PublishIndex.DEFAULT_MAX_AGE_MILLIS));
+        try {
+            AbstractRabbitMQCollectionAspect.getPublishIndex().published("stitched-1", "exchange", "stitched.key", System.nanoTime());
+
+            BasicProperties props = new BasicProperties.Builder().messageId("stitched-1").build();
+            MockChannel channel = new MockChannel(new Envelope(1L, false, "exchange", "stitched.key"), props, new byte[25]);
+            channel.basicGet("stitched", true);
+
+            OperationMap producer = getLastEntered().get(PublishIndex.PRODUCER_MAP, OperationMap.class);
+            assertNotNull(producer);
+            assertEquals("stitched.key", producer.get("routingKey", String.class));
+            assertNotNull(producer.get(PublishIndex.END_TO_END_LATENCY, Long.class));
+        } finally {
+            AbstractRabbitMQCollectionAspect.setPublishIndex(original);
+        }
+    }
+
+    @Test
+    public void testEmptyBasicGetPollsCoalesced() throws IOException {
+        PollSummary original = RabbitMQConsumerCollectionAspect.getPollSummary();
+        RabbitMQConsumerCollectionAspect.setPollSummary(new PollSummary(PollSummary.DEFAULT_MAX_EMPTY_POLLS, PollSummary.DEFAULT_MAX_INTERVAL_MILLIS));
+        try {
+            MockChannel emptyChannel = new MockChannel(null, null, null);
+            assertNull(emptyChannel.basicGet("polled", false));
+            // the 1st empty poll is reported right away
+            Operation first = getLastEntered();
+            assertEquals(PollSummary.SUMMARY_LABEL, first.getLabel());
+            OperationMap firstSummary = first.get(PollSummary.SUMMARY_MAP, OperationMap.class);
+            assertEquals(Integer.valueOf(1), firstSummary.get("emptyCount", Integer.class));
+
+            for (int i = 0; i < 3; i++) {
+                assertNull(emptyChannel.basicGet("polled", false));
+                assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
+                assertSame("Unexpected empty poll entered", first, getLastEntered());
+            }
+
+            Envelope envelope = new Envelope(1l, false, "exchange", "routingKey");
+            BasicProperties props = create();
+            byte[] body = new byte[25];
+            MockChannel channel = new MockChannel(envelope, props, body);
+            channel.basicGet("polled", false);
+            assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
+            assertOperation(envelope, props, body);
+
+            Operation op = getLastEntered();
+            assertEquals("polled", op.get("queue", String.class));
+            OperationMap summary = op.get(PollSummary.SUMMARY_MAP, OperationMap.class);
+            assertNotNull(summary);
+            assertEquals(Integer.valueOf(4), summary.get("pollCount", Integer.class));
+            assertEquals(Integer.valueOf(3), summary.get("emptyCount", Integer.class));
+
+            // the summary is reset once reported
+            channel.basicGet("polled", false);
+            assertNull(getLastEntered().get(PollSummary.SUMMARY_MAP));
+        } finally {
+            RabbitMQConsumerCollectionAspect.setPollSummary(original);
+        }
+    }
+
+    @Test
+    public void testEmptyBasicGetPollsLimit() throws IOException {
+        PollSummary original = RabbitMQConsumerCollectionAspect.getPollSummary();
+        RabbitMQConsumerCollectionAspect.setPollSummary(new PollSummary(3, PollSummary.DEFAULT_MAX_INTERVAL_MILLIS));
+        try {
+            MockChannel emptyChannel = new MockChannel(null, null, null);
+            emptyChannel.basicGet("limited", false);
+            Operation first = getLastEntered();
+            emptyChannel.basicGet("limited", false);
+            emptyChannel.basicGet("limited", false);
+            assertSame(first, getLastEntered());
+
+            emptyChannel.basicGet("limited", false);
+            Operation op = getLastEntered();
+            assertNotSame(first, op);
+            assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
+            assertEquals(PollSummary.SUMMARY_LABEL, op.getLabel());
+            OperationMap summary = op.get(PollSummary.SUMMARY_MAP, OperationMap.class);
+            assertEquals(Integer.valueOf(3), summary.get("pollCount", Integer.class));
+            assertEquals(Integer.valueOf(3), summary.get("emptyCount", Integer.class));
+        } finally {
+            RabbitMQConsumerCollectionAspect.setPollSummary(original);
+        }
+    }
+
+    @Test
+    public void testEmptyBasicGetPollsNotCoalesced() throws IOException {
+        PollSummary original = RabbitMQConsumerCollectionAspect.getPollSummary();
+        RabbitMQConsumerCollectionAspect.setPollSummary(new PollSummary(0, PollSummary.DEFAULT_MAX_INTERVAL_MILLIS));
+        try {
+            MockChannel emptyChannel = new MockChannel(null, null, null);
+            emptyChannel.basicGet("uncoalesced", false);
+            Operation first = getLastEntered();
+            emptyChannel.basicGet("uncoalesced", false);
+            Operation second = getLastEntered();
+            assertNotSame(first, second);
+            assertNull(second.get(PollSummary.SUMMARY_MAP));
+        } finally {
+            RabbitMQConsumerCollectionAspect.setPollSummary(original);
+        }
+    }
+
+    @Test
+    public void testSampledHandleDelivery() throws IOException {
+        DeliverySampler original = RabbitMQConsumerCollectionAspect.getSampler();
+        RabbitMQConsumerCollectionAspect.setSampler(new DeliverySampler(DeliverySampler.Mode.ONE_IN_N, 3));
+        try {
+            MockConsumer consumer = new MockConsumer();
+            BasicProperties props = create();
+            byte[] body = new byte[25];
+
+            for (long tag = 1L; tag <= 4L; tag++) {
+                consumer.handleDelivery("sampled", new Envelope(tag, false, "exchange", "routingKey"), props, body);
+                assertTrue(RabbitMQConsumerCollectionAspect.opHolder.get().isEmpty());
+            }
+
+            // 1st and 4th messages are sampled - the 4th one stands for 2 skipped ones as well
+            Operation op = getLastEntered();
+            assertEquals(Long.valueOf(4L), op.get("envelope", OperationMap.class).get("deliveryTag", Long.class));
+            assertEquals(Integer.valueOf(3), op.get(DeliverySampler.SAMPLE_WEIGHT, Integer.class));
+        } finally {
+            RabbitMQConsumerCollectionAspect.setSampler(original);
+        }
+    }
+
+    @Test
+    public void testDwellTime() throws IOException {
+        MockConsumer consumer = new MockConsumer();
+        Envelope envelope = new Envelope(1l, false, "exchange", "routingKey");
+        BasicProperties props = DwellTimeHeader.stamp(create(), System.currentTimeMillis() - 50L);
+        consumer.handleDelivery("dwell", envelope, props, new byte[25]);
+
+        Operation op = getLastEntered();
+        Long dwellTime = op.get(DwellTimeHeader.DWELL_TIME, Long.class);
+        assertNotNull(dwellTime);
+        assertTrue("Bad dwell time: " + dwellTime, dwellTime.longValue() >= 50L);
+        assertNull(op.get(DwellTimeHeader.CLOCK_SKEW));
+
+        // sent "in the future" by a host whose clock is ahead
+        props = DwellTimeHeader.stamp(create(), System.currentTimeMillis() + 60000L);
+        consumer.handleDelivery("dwell", envelope, props, new byte[25]);
+        assertEquals(Boolean.TRUE, getLastEntered().get(DwellTimeHeader.CLOCK_SKEW, Boolean.class));
+    }
+
     void assertOperation(Envelope envelope, BasicProperties props, byte[] body) {
         Operation op = getLastEntered();
         
@@ -162,7 +405,20 @@ public class RabbitMQConsumerCollectionAspectTest extends OperationCollectionAsp
         }
     }
     
-    private static final class MockChannel implements Channel {
+    // NOTE: the library DefaultConsumer is not woven - hence the override
+    static final class ChannelConsumer extends DefaultConsumer {
+        ChannelConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope,
+                BasicProperties props, byte[] body) throws IOException {
+            // do nothing
+        }
+    }
+
+    static final class MockChannel implements Channel {
         private Envelope envelope;
         private BasicProperties props;
         private byte[] body;
@@ -232,11 +488,14 @@ public class RabbitMQConsumerCollectionAspectTest extends OperationCollectionAsp
         public String basicConsume(String arg0, boolean arg1, String arg2,
                 boolean arg3, boolean arg4, Map<String, Object> arg5,
                 Consumer arg6) throws IOException {
-            return null;
+            return arg2;
         }
 
         public GetResponse basicGet(String arg0, boolean arg1)
                 throws IOException {
+            if (envelope == null) {
+                return null;    // empty queue
+            }
 
             GetResponse resp = mock(GetResponse.class);
             when(resp.getBody()).thenReturn(body);
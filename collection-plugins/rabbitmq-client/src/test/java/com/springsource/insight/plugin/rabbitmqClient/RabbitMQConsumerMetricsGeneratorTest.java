@@ -15,6 +15,18 @@
  */
 package com.springsource.insight.plugin.rabbitmqClient;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+import com.springsource.insight.intercept.trace.SimpleFrameBuilder;
+
 public class RabbitMQConsumerMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
 
 	public RabbitMQConsumerMetricsGeneratorTest() {
@@ -26,4 +38,93 @@ public class RabbitMQConsumerMetricsGeneratorTest extends AbstractRabbitMQMetric
         return new RabbitMQConsumerMetricsGenerator();
     }
 
+	@Test
+	public void testSampledMessageCount() {
+		Operation sampled = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(DeliverySampler.SAMPLE_WEIGHT, 5);
+		Operation regular = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType());
+
+		Frame sampledFrame = createFrame(sampled);
+		Frame regularFrame = createFrame(regular);
+		assertEquals(5, AbstractRabbitMetricsGenerator.getMessageCount(sampledFrame));
+		assertEquals(1, AbstractRabbitMetricsGenerator.getMessageCount(regularFrame));
+		assertEquals(6, AbstractRabbitMetricsGenerator.getMessageCount(Arrays.asList(sampledFrame, regularFrame)));
+	}
+
+	@Test
+	public void testDwellCounters() {
+		String prefix = RabbitPluginOperationType.CONSUME.getOperationType().getName();
+		Operation op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(DwellTimeHeader.DWELL_TIME, 100L)
+				.put(DeliverySampler.SAMPLE_WEIGHT, 2);
+		Map<String, Integer> counters = RabbitMQConsumerMetricsGenerator.getDwellCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(200), counters.get(prefix + ".dwell.time" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(2), counters.get(prefix + ".dwell.le128ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(DwellTimeHeader.DWELL_TIME, -5L)
+				.put(DwellTimeHeader.CLOCK_SKEW, true);
+		counters = RabbitMQConsumerMetricsGenerator.getDwellCounters(prefix, op);
+		assertEquals(1, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".dwell.skewed" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		assertTrue(RabbitMQConsumerMetricsGenerator.getDwellCounters(prefix, new Operation()).isEmpty());
+	}
+
+	@Test
+	public void testRedeliveryCounters() {
+		String prefix = RabbitPluginOperationType.CONSUME.getOperationType().getName();
+		Operation op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(RabbitMQConsumerCollectionAspect.DELIVERY_TAG_GAP, 7L)
+				.put(DeliverySampler.SAMPLE_WEIGHT, 3);
+		op.createMap("envelope").put("redeliver", true);
+		Map<String, Integer> counters = RabbitMQConsumerMetricsGenerator.getRedeliveryCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".redelivered" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".deliveryTagGap.le8" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType());
+		op.createMap("envelope").put("redeliver", false);
+		assertTrue(RabbitMQConsumerMetricsGenerator.getRedeliveryCounters(prefix, op).isEmpty());
+		assertTrue(RabbitMQConsumerMetricsGenerator.getRedeliveryCounters(prefix, null).isEmpty());
+	}
+
+	@Test
+	public void testPrefetchCounters() {
+		String prefix = RabbitPluginOperationType.CONSUME.getOperationType().getName();
+		Operation op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(PrefetchMonitor.IN_FLIGHT, 5L)
+				.put(PrefetchMonitor.PREFETCH_COUNT, 20);
+		Map<String, Integer> counters = RabbitMQConsumerMetricsGenerator.getPrefetchCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".inFlight.le8" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".prefetchUsage.le32pct" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		// unlimited prefetch
+		op.put(PrefetchMonitor.PREFETCH_COUNT, 0);
+		assertEquals(1, RabbitMQConsumerMetricsGenerator.getPrefetchCounters(prefix, op).size());
+		assertTrue(RabbitMQConsumerMetricsGenerator.getPrefetchCounters(prefix, new Operation()).isEmpty());
+		assertTrue(RabbitMQConsumerMetricsGenerator.getPrefetchCounters(prefix, null).isEmpty());
+	}
+
+	@Test
+	public void testEndToEndCounters() {
+		String prefix = RabbitPluginOperationType.CONSUME.getOperationType().getName();
+		Operation op = new Operation().type(RabbitPluginOperationType.CONSUME.getOperationType())
+				.put(DeliverySampler.SAMPLE_WEIGHT, 2);
+		op.createMap(PublishIndex.PRODUCER_MAP).put(PublishIndex.END_TO_END_LATENCY, 20L);
+		Map<String, Integer> counters = RabbitMQConsumerMetricsGenerator.getEndToEndCounters(prefix, op);
+		assertEquals(1, counters.size());
+		assertEquals(Integer.valueOf(2), counters.get(prefix + ".e2e.le32ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		assertTrue(RabbitMQConsumerMetricsGenerator.getEndToEndCounters(prefix, new Operation()).isEmpty());
+		assertTrue(RabbitMQConsumerMetricsGenerator.getEndToEndCounters(prefix, null).isEmpty());
+	}
+
+	private static Frame createFrame(Operation op) {
+		SimpleFrameBuilder builder = new SimpleFrameBuilder();
+		builder.enter(op);
+		return builder.exit();
+	}
 }
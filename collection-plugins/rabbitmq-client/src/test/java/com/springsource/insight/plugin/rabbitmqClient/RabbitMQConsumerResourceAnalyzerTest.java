@@ -16,6 +16,11 @@
 
 package com.springsource.insight.plugin.rabbitmqClient;
 
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.endpoint.EndPointAnalysis;
 import com.springsource.insight.intercept.operation.Operation;
 import com.springsource.insight.intercept.operation.OperationMap;
 
@@ -43,5 +48,15 @@ public class RabbitMQConsumerResourceAnalyzerTest extends AbstractRabbitMQResour
 		super.addOperationProps(operation, addRouting, addExchange);
 	}
 
+	@Test
+	public void testPollSummaryLocateEndPoint() {
+		Operation op = createOperation();
+		op.put("queue", "q");
+		super.addOperationProps(op, false, false);
+
+		EndPointAnalysis analysis = getAnalyzer().locateEndPoint(createValidTrace(op));
+		assertEquals("Queue#q", analysis.getEndPointName().getName());
+	}
+
 
 }
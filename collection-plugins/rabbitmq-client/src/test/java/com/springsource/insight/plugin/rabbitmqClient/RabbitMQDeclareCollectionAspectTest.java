@@ -0,0 +1,131 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+import com.springsource.insight.plugin.rabbitmqClient.RabbitMQPublishCollectionAspectTest.MockChannel;
+
+public class RabbitMQDeclareCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testExchangeDeclare() throws IOException {
+        new MockChannel(mock(Connection.class)).exchangeDeclare("orders", "topic", true);
+
+        Operation op = assertDeclareOperation("exchange", 1);
+        assertEquals("Declare Exchange", op.getLabel());
+        assertEquals("orders", op.get("exchange", String.class));
+        assertEquals("topic", op.get("exchangeType", String.class));
+        assertEquals(Boolean.TRUE, op.get("durable", Boolean.class));
+    }
+
+    @Test
+    public void testQueueDeclare() throws IOException {
+        new MockChannel(mock(Connection.class)).queueDeclare("orders.q", true, false, true, null);
+
+        Operation op = assertDeclareOperation("queue", 1);
+        assertEquals("orders.q", op.get("queue", String.class));
+        assertEquals(Boolean.TRUE, op.get("durable", Boolean.class));
+        assertEquals(Boolean.FALSE, op.get("exclusive", Boolean.class));
+        assertEquals(Boolean.TRUE, op.get("autoDelete", Boolean.class));
+    }
+
+    @Test
+    public void testQueueBind() throws IOException {
+        new MockChannel(mock(Connection.class)).queueBind("orders.q", "orders", "orders.#");
+
+        Operation op = assertDeclareOperation("bind", 1);
+        assertEquals("orders.q", op.get("queue", String.class));
+        assertEquals("orders", op.get("exchange", String.class));
+        assertEquals("orders.#", op.get("routingKey", String.class));
+    }
+
+    @Test
+    public void testBasicQos() throws IOException {
+        new MockChannel(mock(Connection.class)).basicQos(0, 50, false);
+
+        Operation op = assertDeclareOperation("qos", 1);
+        assertEquals(Integer.valueOf(50), op.get("prefetchCount", Integer.class));
+        assertEquals(Integer.valueOf(0), op.get("prefetchSize", Integer.class));
+        assertEquals(Boolean.FALSE, op.get("global", Boolean.class));
+    }
+
+    @Test
+    public void testSummaryPerConnection() throws IOException {
+        Connection connection = mock(Connection.class);
+        MockChannel channel = new MockChannel(connection);
+        channel.exchangeDeclare("orders", "topic", true);
+        channel.queueDeclare("orders.q", true, false, true, null);
+        assertDeclareOperation("queue", 2);
+
+        new MockChannel(mock(Connection.class)).queueDeclare("other.q", true, false, true, null);
+        assertDeclareOperation("queue", 1);
+
+        // a reconnect starts a new summary
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(connection).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        channel.queueBind("orders.q", "orders", "orders.#");
+        assertDeclareOperation("bind", 1);
+    }
+
+    @Test
+    public void testNoConnectionNoSummary() throws IOException {
+        new MockChannel().queueDeclare("orders.q", true, false, true, null);
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertNull(op.get(DeclareSummary.SUMMARY_MAP));
+    }
+
+    private Operation assertDeclareOperation(String declareType, int expectedCount) {
+        assertTrue(RabbitMQDeclareCollectionAspect.opHolder.get().isEmpty());
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitPluginOperationType.DECLARE.getOperationType(), op.getType());
+        assertEquals(declareType, op.get("declareType", String.class));
+        assertNotNull(op.get(RabbitMQDeclareCollectionAspect.DECLARE_TIME, Long.class));
+
+        OperationMap summary = op.get(DeclareSummary.SUMMARY_MAP, OperationMap.class);
+        assertNotNull(summary);
+        assertEquals(Integer.valueOf(expectedCount), summary.get("count", Integer.class));
+        return op;
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitMQDeclareCollectionAspect.aspectOf();
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitMQDeclareMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
+
+	public RabbitMQDeclareMetricsGeneratorTest() {
+		super(RabbitPluginOperationType.DECLARE);
+	}
+
+	@Override
+	protected AbstractRabbitMetricsGenerator getMetricsGenerator() {
+		return new RabbitMQDeclareMetricsGenerator();
+	}
+
+	@Test
+	public void testDeclareCounters() {
+		String prefix = RabbitPluginOperationType.DECLARE.getOperationType().getName();
+		Operation op = new Operation()
+				.type(RabbitPluginOperationType.DECLARE.getOperationType())
+				.put("declareType", "queue")
+				.put(RabbitMQDeclareCollectionAspect.DECLARE_TIME, 1500L);
+
+		Map<String, Integer> counters = RabbitMQDeclareMetricsGenerator.getDeclareCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".queue" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".latency.le2048us" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoDeclareCounters() {
+		String prefix = RabbitPluginOperationType.DECLARE.getOperationType().getName();
+		assertTrue(RabbitMQDeclareMetricsGenerator.getDeclareCounters(prefix, null).isEmpty());
+	}
+}
@@ -17,7 +17,10 @@
 package com.springsource.insight.plugin.rabbitmqClient;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Date;
@@ -74,10 +77,36 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         assertEquals(routingKey, op.get("routingKey"));
         assertEquals(Boolean.valueOf(mandatory), op.get("mandatory"));
         assertEquals(Boolean.valueOf(immediate), op.get("immediate"));
+        assertNotNull(op.get(ThroughputMeter.THROUGHPUT_MAP, OperationMap.class));
         
         assertOperation(op, props, body);
     }
 
+    @Test
+    public void testStampedPublish() throws IOException {
+        BasicProperties props = create();
+        MockChannel channel = new MockChannel();
+
+        channel.basicPublish("exchange", "routingKey", false, false, props, new byte[5]);
+        assertSame(props, channel.lastProps);
+
+        DwellTimeHeader.setEnabled(true);
+        try {
+            long before = System.currentTimeMillis();
+            channel.basicPublish("exchange", "routingKey", false, false, props, new byte[5]);
+
+            BasicProperties stamped = channel.lastProps;
+            assertNotNull(stamped);
+            assertEquals(props.getMessageId(), stamped.getMessageId());
+            long sentTime = DwellTimeHeader.getSentTime(stamped);
+            assertTrue("Bad send time: " + sentTime, sentTime >= before);
+            // the caller's properties are left untouched
+            assertEquals(-1L, DwellTimeHeader.getSentTime(props));
+        } finally {
+            DwellTimeHeader.setEnabled(false);
+        }
+    }
+
     void assertOperation(Operation op, BasicProperties props, byte[] body) {
         
         assertEquals(OperationType.valueOf("rabbitmq-client-publish"), op.getType());
@@ -119,6 +148,32 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
     }
     
     static final class MockChannel implements Channel {
+        private final Connection connection;
+        private long nextPublishSeqNo;  // zero unless in confirm mode
+        private BasicProperties lastProps;
+        private ConfirmListener confirmListener;
+
+        MockChannel() {
+            this(null);
+        }
+
+        @SuppressWarnings("hiding")
+        MockChannel(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Simulates the broker's confirmation - invokes the confirm listener
+         * the same way the real channel does
+         */
+        void confirm(long seqNo, boolean multiple, boolean ack) throws IOException {
+            if (ack) {
+                confirmListener.handleAck(seqNo, multiple);
+            } else {
+                confirmListener.handleNack(seqNo, multiple);
+            }
+        }
+
         public void addShutdownListener(ShutdownListener arg0) {
             // do nothing
         }
@@ -198,7 +253,10 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         public void basicPublish(String arg0, String arg1, boolean arg2,
                 boolean arg3, BasicProperties arg4, byte[] arg5)
                 throws IOException {
-            // do nothing
+            lastProps = arg4;
+            if (nextPublishSeqNo > 0L) {
+                nextPublishSeqNo++;
+            }
         }
 
         public void basicQos(int arg0) throws IOException {
@@ -235,6 +293,9 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         }
 
         public SelectOk confirmSelect() throws IOException {
+            if (nextPublishSeqNo == 0L) {
+                nextPublishSeqNo = 1L;
+            }
             return null;
         }
 
@@ -302,11 +363,11 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         }
 
         public ConfirmListener getConfirmListener() {
-            return null;
+            return confirmListener;
         }
 
         public Connection getConnection() {
-            return null;
+            return connection;
         }
 
         public Consumer getDefaultConsumer() {
@@ -322,7 +383,7 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         }
 
         public long getNextPublishSeqNo() {
-            return 0;
+            return nextPublishSeqNo;
         }
 
         public ReturnListener getReturnListener() {
@@ -386,7 +447,7 @@ public class RabbitMQPublishCollectionAspectTest extends OperationCollectionAspe
         }
 
         public void setConfirmListener(ConfirmListener arg0) {
-            // do nothing
+            confirmListener = arg0;
         }
 
         public void setDefaultConsumer(Consumer arg0) {
@@ -15,6 +15,19 @@
  */
 package com.springsource.insight.plugin.rabbitmqClient;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+import com.springsource.insight.intercept.trace.SimpleFrameBuilder;
+
 public class RabbitMQPublishMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
     
 	public RabbitMQPublishMetricsGeneratorTest() {
@@ -26,4 +39,78 @@ public class RabbitMQPublishMetricsGeneratorTest extends AbstractRabbitMQMetrics
         return new RabbitMQPublishMetricsGenerator();
     }
 
+	@Test
+	public void testSizeMetrics() {
+		List<Frame> frames = new ArrayList<Frame>();
+		for (int bytes : new int[] { 100, 200, 300, 5000 }) {
+			frames.add(createFrame(new Operation().type(getOperationType()).put("bytes", bytes)));
+		}
+		// no body length - ignored
+		frames.add(createFrame(new Operation().type(getOperationType())));
+
+		LogHistogram sizes = AbstractRabbitMetricsGenerator.getSizeHistogram(frames);
+		assertEquals(4L, sizes.getCount());
+
+		String prefix = getOperationType().getName();
+		Map<String, Integer> metrics = AbstractRabbitMetricsGenerator.getSizeMetrics(prefix, sizes);
+		assertEquals(Integer.valueOf(5600), metrics.get(prefix + ".bytes" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), metrics.get(prefix + ".size.le128b" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), metrics.get(prefix + ".size.le256b" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), metrics.get(prefix + ".size.le512b" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), metrics.get(prefix + ".size.le8192b" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		// only counters, which can be summed across traces
+		assertEquals(5, metrics.size());
+	}
+
+	@Test
+	public void testNoSizeMetrics() {
+		assertTrue(AbstractRabbitMetricsGenerator.getSizeMetrics("publish", new LogHistogram()).isEmpty());
+	}
+
+	@Test
+	public void testThroughputCounters() {
+		ThroughputMeter meter = new ThroughputMeter();
+		for (int i = 0; i < 20; i++) {
+			meter.record(100L, 1000L);
+		}
+
+		String prefix = getOperationType().getName();
+		Operation op = meter.applyTo(new Operation().type(getOperationType()), 101L);
+		Map<String, Integer> counters = AbstractRabbitMetricsGenerator.getThroughputCounters(prefix, op);
+		assertEquals(ThroughputMeter.COUNTERS.length, counters.size());
+		assertEquals(Integer.valueOf(20), counters.get(prefix + ".throughput.msgs" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(20000), counters.get(prefix + ".throughput.bytes" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(0), counters.get(prefix + ".throughput.redelivered" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		// the interval was published already
+		op = meter.applyTo(new Operation().type(getOperationType()), 101L);
+		assertTrue(AbstractRabbitMetricsGenerator.getThroughputCounters(prefix, op).isEmpty());
+	}
+
+	@Test
+	public void testNoThroughputCounters() {
+		assertTrue(AbstractRabbitMetricsGenerator.getThroughputCounters("publish", null).isEmpty());
+		assertTrue(AbstractRabbitMetricsGenerator.getThroughputCounters("publish", new Operation()).isEmpty());
+	}
+
+	@Test
+	public void testFlowControlCounters() {
+		String prefix = getOperationType().getName();
+		Operation op = new Operation().type(getOperationType())
+				.put(FlowControlMonitor.FLOW_STALL_TIME, 250L)
+				.put(FlowControlMonitor.CONNECTION_STALL_TIME, 1500L);
+		Map<String, Integer> counters = RabbitMQPublishMetricsGenerator.getFlowControlCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".flow.stalled" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(250), counters.get(prefix + ".flow.stallTime" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		assertTrue(RabbitMQPublishMetricsGenerator.getFlowControlCounters(prefix, new Operation()).isEmpty());
+		assertTrue(RabbitMQPublishMetricsGenerator.getFlowControlCounters(prefix, null).isEmpty());
+	}
+
+	private static Frame createFrame(Operation op) {
+		SimpleFrameBuilder builder = new SimpleFrameBuilder();
+		builder.enter(op);
+		return builder.exit();
+	}
 }
@@ -16,8 +16,16 @@
 
 package com.springsource.insight.plugin.rabbitmqClient;
 
-import com.springsource.insight.intercept.operation.Operation;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
 
+import org.junit.Test;
+
+import com.springsource.insight.intercept.endpoint.EndPointAnalysis;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.topology.ExternalResourceDescriptor;
+import com.springsource.insight.intercept.trace.Trace;
 
 public class RabbitMQPublishResourceAnalyzerTest extends AbstractRabbitMQResourceAnalyzerTest {
 
@@ -40,4 +48,20 @@ public class RabbitMQPublishResourceAnalyzerTest extends AbstractRabbitMQResourc
 		}
 		super.addOperationProps(operation, addRouting, addExchange);
 	}
+
+	@Test
+	public void testNormalizedRoutingKey() {
+		AbstractRabbitMQResourceAnalyzer analyzer = getAnalyzer();
+		Operation first = createOperation().put("exchange", "e").put("routingKey", "orders.1001.created");
+		Operation second = createOperation().put("exchange", "e").put("routingKey", "orders.2002.created");
+
+		EndPointAnalysis analysis = analyzer.locateEndPoint(createValidTrace(first));
+		assertEquals("Exchange#e RoutingKey#orders.{n}.created", analysis.getEndPointName().getName());
+		assertEquals(analysis.getEndPointName(), analyzer.locateEndPoint(createValidTrace(second)).getEndPointName());
+
+		Trace trace = createValidTrace(second);
+		List<ExternalResourceDescriptor> descriptors = analyzer.locateExternalResourceName(trace);
+		assertEquals(1, descriptors.size());
+		assertEquals("RabbitMQ-Exchange#e RoutingKey#orders.{n}.created", descriptors.get(0).getLabel());
+	}
 }
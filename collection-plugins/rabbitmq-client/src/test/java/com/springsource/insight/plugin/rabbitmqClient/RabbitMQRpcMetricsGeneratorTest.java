@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitMQRpcMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
+
+	public RabbitMQRpcMetricsGeneratorTest() {
+		super(RabbitPluginOperationType.RPC);
+	}
+
+	@Override
+	protected AbstractRabbitMetricsGenerator getMetricsGenerator() {
+		return new RabbitMQRpcMetricsGenerator();
+	}
+
+	@Test
+	public void testReplyCounters() {
+		String prefix = RabbitPluginOperationType.RPC.getOperationType().getName();
+		Operation op = RpcTracker.createReplyOperation("id", new RpcTracker.Request("replies", "exchange", "key", 0L), 40L * 1000000L);
+
+		Map<String, Integer> counters = RabbitMQRpcMetricsGenerator.getRpcCounters(prefix, op);
+		assertEquals(3, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".reply" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".latency.le64ms" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(40), counters.get(prefix + ".roundTrip" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testTimeoutCounters() {
+		String prefix = RabbitPluginOperationType.RPC.getOperationType().getName();
+		RpcTracker.Timeouts timeouts = new RpcTracker.Timeouts("exchange", "key");
+		timeouts.count = 3;
+		Operation op = RpcTracker.createTimeoutOperation(timeouts);
+
+		Map<String, Integer> counters = RabbitMQRpcMetricsGenerator.getRpcCounters(prefix, op);
+		assertEquals(1, counters.size());
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".timeout" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+
+		assertTrue(RabbitMQRpcMetricsGenerator.getRpcCounters(prefix, null).isEmpty());
+		assertTrue(RabbitMQRpcMetricsGenerator.getRpcCounters(prefix, new Operation()).isEmpty());
+	}
+}
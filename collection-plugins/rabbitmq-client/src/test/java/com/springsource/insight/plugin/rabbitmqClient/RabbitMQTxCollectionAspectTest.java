@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.plugin.rabbitmqClient.RabbitMQPublishCollectionAspectTest.MockChannel;
+
+public class RabbitMQTxCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testCommitBatch() throws IOException {
+        MockChannel channel = createTransactionalChannel();
+        for (int i = 0; i < 3; i++) {
+            channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        }
+        // the publishes are folded into the batch
+        assertTrue(RabbitMQPublishCollectionAspect.opHolder.get().isEmpty());
+        assertEquals(3, TxBatch.forChannel(channel, false).getMessageCount());
+
+        channel.txCommit();
+        assertTrue(RabbitMQTxCollectionAspect.opHolder.get().isEmpty());
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitPluginOperationType.TX.getOperationType(), op.getType());
+        assertEquals(RabbitMQTxCollectionAspect.COMMIT, op.get("txType", String.class));
+        assertEquals(Integer.valueOf(3), op.get("messageCount", Integer.class));
+        assertEquals(Long.valueOf(15L), op.get("totalBytes", Long.class));
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertEquals("routingKey", op.get("routingKey", String.class));
+        assertNotNull(op.get(RabbitMQTxCollectionAspect.TX_TIME, Long.class));
+        assertEquals(0, TxBatch.forChannel(channel, false).getMessageCount());
+    }
+
+    @Test
+    public void testRollbackBatch() throws IOException {
+        MockChannel channel = createTransactionalChannel();
+        channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        channel.txRollback();
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(RabbitMQTxCollectionAspect.ROLLBACK, op.get("txType", String.class));
+        assertEquals(Integer.valueOf(1), op.get("messageCount", Integer.class));
+
+        // the channel remains transactional
+        channel.basicPublish("exchange", "routingKey", false, false, null, new byte[5]);
+        assertEquals(1, TxBatch.forChannel(channel, false).getMessageCount());
+    }
+
+    @Test
+    public void testNonTransactionalCommitIgnored() throws IOException {
+        MockChannel channel = new MockChannel();
+        channel.txCommit();
+        assertTrue(RabbitMQTxCollectionAspect.opHolder.get().isEmpty());
+        assertNull(TxBatch.forChannel(channel, false));
+    }
+
+    private static MockChannel createTransactionalChannel() throws IOException {
+        MockChannel channel = new MockChannel();
+        channel.txSelect();
+        assertNotNull(TxBatch.forChannel(channel, false));
+        return channel;
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitMQTxCollectionAspect.aspectOf();
+    }
+}
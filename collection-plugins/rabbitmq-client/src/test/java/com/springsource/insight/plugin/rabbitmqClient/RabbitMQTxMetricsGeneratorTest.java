@@ -0,0 +1,63 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitMQTxMetricsGeneratorTest extends AbstractRabbitMQMetricsGeneratorTest {
+
+	public RabbitMQTxMetricsGeneratorTest() {
+		super(RabbitPluginOperationType.TX);
+	}
+
+	@Override
+	protected AbstractRabbitMetricsGenerator getMetricsGenerator() {
+		return new RabbitMQTxMetricsGenerator();
+	}
+
+	@Test
+	public void testTxCounters() {
+		String prefix = RabbitPluginOperationType.TX.getOperationType().getName();
+		Operation op = new Operation()
+				.type(RabbitPluginOperationType.TX.getOperationType())
+				.put("txType", RabbitMQTxCollectionAspect.COMMIT)
+				.put("messageCount", 3)
+				.put("totalBytes", 300L)
+				.put(RabbitMQTxCollectionAspect.TX_TIME, 400L);
+
+		Map<String, Integer> counters = RabbitMQTxMetricsGenerator.getTxCounters(prefix, op);
+		assertEquals(4, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".commit" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(3), counters.get(prefix + ".messages" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(300), counters.get(prefix + ".bytes" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".latency.le512us" + AbstractRabbitMetricsGenerator.RABBIT_COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoTxCounters() {
+		String prefix = RabbitPluginOperationType.TX.getOperationType().getName();
+		assertTrue(RabbitMQTxMetricsGenerator.getTxCounters(prefix, null).isEmpty());
+	}
+}
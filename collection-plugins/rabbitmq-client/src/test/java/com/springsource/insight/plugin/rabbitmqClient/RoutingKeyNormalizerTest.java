@@ -0,0 +1,82 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RoutingKeyNormalizerTest {
+
+    @Test
+    public void testMaskIds() {
+        RoutingKeyNormalizer normalizer = new RoutingKeyNormalizer(null, true, 16);
+        assertEquals("orders.{n}.created", normalizer.normalize("orders.12345.created"));
+        assertEquals("user/{uuid}:{n}",
+                     normalizer.normalize("user/123e4567-e89b-12d3-a456-426614174000:7"));
+        assertEquals("{n}", normalizer.normalize("42"));
+        assertEquals("orders.v2.created", normalizer.normalize("orders.v2.created"));
+        assertEquals("orders..x", normalizer.normalize("orders..x"));
+        assertNull(normalizer.normalize(null));
+        assertEquals("", normalizer.normalize(""));
+    }
+
+    @Test
+    public void testNoMasking() {
+        RoutingKeyNormalizer normalizer = new RoutingKeyNormalizer(null, false, 16);
+        assertEquals("orders.12345.created", normalizer.normalize("orders.12345.created"));
+    }
+
+    @Test
+    public void testUnchangedKeyNotCopied() {
+        String key = "orders.created";
+        assertSame(key, RoutingKeyNormalizer.maskIds(key));
+    }
+
+    @Test
+    public void testRules() {
+        List<RoutingKeyNormalizer.Rule> rules =
+                RoutingKeyNormalizer.parseRules("tenant.{tenant}.orders ; ^audit\\..*=>audit.* ;");
+        assertEquals(2, rules.size());
+
+        RoutingKeyNormalizer normalizer = new RoutingKeyNormalizer(rules, true, 16);
+        assertEquals("tenant.{tenant}.orders", normalizer.normalize("tenant.acme.orders"));
+        assertEquals("audit.*", normalizer.normalize("audit.login.17"));
+        // template does not match a different number of segments - falls back to masking
+        assertEquals("tenant.acme.orders.{n}", normalizer.normalize("tenant.acme.orders.17"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadRule() {
+        RoutingKeyNormalizer.parseRules("([=>x");
+    }
+
+    @Test
+    public void testBoundedCache() {
+        RoutingKeyNormalizer normalizer =
+                new RoutingKeyNormalizer(Collections.<RoutingKeyNormalizer.Rule>emptyList(), true, 4);
+        for (int index = 0; index < 100; index++) {
+            assertEquals("orders.{n}", normalizer.normalize("orders." + index));
+        }
+        assertEquals(4, normalizer.getCacheSize());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RpcTrackerTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testReply() {
+        RpcTracker tracker = new RpcTracker(1000L, 16);
+        tracker.request("id1", "replies", "exchange", "key", 10L * MSEC);
+        tracker.request("id2", "replies", "exchange", "key", 20L * MSEC);
+        assertEquals(2, tracker.getPending());
+
+        RpcTracker.Request request = tracker.reply("id2", "replies", 50L * MSEC);
+        assertNotNull(request);
+        assertEquals("exchange", request.exchange);
+        assertEquals("key", request.routingKey);
+        assertEquals(1, tracker.getPending());
+
+        // replies are matched once - and unknown ones are ignored
+        assertNull(tracker.reply("id2", "replies", 60L * MSEC));
+        assertNull(tracker.reply("id3", "replies", 60L * MSEC));
+        assertNull(tracker.reply(null, "replies", 60L * MSEC));
+
+        Operation op = RpcTracker.createReplyOperation("id2", request, 50L * MSEC);
+        assertEquals(RabbitPluginOperationType.RPC.getOperationType(), op.getType());
+        assertEquals(RpcTracker.REPLY, op.get(RpcTracker.OUTCOME, String.class));
+        assertEquals(Long.valueOf(30L), op.get(RpcTracker.ROUND_TRIP_TIME, Long.class));
+    }
+
+    @Test
+    public void testReplyFromOtherQueue() {
+        RpcTracker tracker = new RpcTracker(1000L, 16);
+        tracker.request("id1", "replies", "exchange", "key", 0L);
+
+        // e.g., the request itself consumed by the server
+        assertNull(tracker.reply("id1", "key", 10L * MSEC));
+        assertNull(tracker.reply("id1", null, 10L * MSEC));
+        assertEquals(1, tracker.getPending());
+        assertNotNull(tracker.reply("id1", "replies", 20L * MSEC));
+    }
+
+    @Test
+    public void testNoReplyTo() {
+        RpcTracker tracker = new RpcTracker(1000L, 16);
+        tracker.request("id1", null, "exchange", "key", 0L);
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    public void testTimeouts() {
+        RpcTracker tracker = new RpcTracker(100L, 16);
+        tracker.request("id1", "replies", "exchange", "key1", 0L);
+        tracker.request("id2", "replies", "exchange", "key1", 10L * MSEC);
+        tracker.request("id3", "replies", "exchange", "key2", 20L * MSEC);
+
+        // the late reply does not match - its request timed out
+        assertNull(tracker.reply("id1", "replies", 105L * MSEC));
+        assertEquals(2, tracker.getPending());
+        List<RpcTracker.Timeouts> timeouts = tracker.drainTimeouts();
+        assertEquals(1, timeouts.size());
+        assertEquals("key1", timeouts.get(0).routingKey);
+        assertEquals(1, timeouts.get(0).count);
+        assertTrue(tracker.drainTimeouts().isEmpty());
+
+        // expired by any delivery - not only by the next request to the same key
+        assertNull(tracker.reply(null, null, 200L * MSEC));
+        timeouts = tracker.drainTimeouts();
+        assertEquals(2, timeouts.size());
+        assertEquals(0, tracker.getPending());
+
+        Operation op = RpcTracker.createTimeoutOperation(timeouts.get(1));
+        assertEquals(RpcTracker.TIMEOUT, op.get(RpcTracker.OUTCOME, String.class));
+        assertEquals("key2", op.get("routingKey", String.class));
+        assertEquals(Integer.valueOf(1), op.get(RpcTracker.TIMEOUT_COUNT, Integer.class));
+    }
+
+    @Test
+    public void testSweep() {
+        RpcTracker tracker = new RpcTracker(100L, 16);
+        tracker.request("id1", "replies", "exchange", "key", 0L);
+        tracker.sweep(99L * MSEC);
+        assertEquals(1, tracker.getPending());
+        tracker.sweep(100L * MSEC);
+        assertEquals(0, tracker.getPending());
+        assertEquals(1, tracker.drainTimeouts().get(0).count);
+    }
+
+    @Test
+    public void testMaxPending() {
+        RpcTracker tracker = new RpcTracker(1000L, 2);
+        tracker.request("id1", "replies", "exchange", "key", 0L);
+        tracker.request("id2", "replies", "exchange", "key", 0L);
+        tracker.request("id3", "replies", "exchange", "key", 0L);
+        assertEquals(2, tracker.getPending());
+        assertEquals(1L, tracker.getDropped());
+        assertNull(tracker.reply("id1", "replies", 0L));
+        assertNotNull(tracker.reply("id3", "replies", 0L));
+    }
+
+    @Test
+    public void testReusedCorrelationId() {
+        RpcTracker tracker = new RpcTracker(100L, 16);
+        tracker.request("id1", "replies", "exchange", "key", 0L);
+        tracker.request("id2", "replies", "exchange", "key", 50L * MSEC);
+        tracker.request("id1", "replies", "exchange", "key", 90L * MSEC);
+
+        // the re-issued request is no longer the oldest one
+        assertNull(tracker.reply("id2", "replies", 160L * MSEC));
+        assertNotNull(tracker.reply("id1", "replies", 160L * MSEC));
+        assertEquals(1, tracker.drainTimeouts().get(0).count);
+    }
+
+    @Test
+    public void testBadConfiguration() {
+        System.setProperty(RpcTracker.TIMEOUT_PROPERTY, "-1");
+        try {
+            RpcTracker tracker = RpcTracker.fromSystemProperties();
+            assertEquals(RpcTracker.DEFAULT_TIMEOUT_MILLIS, tracker.getTimeoutMillis());
+            assertEquals(RpcTracker.DEFAULT_MAX_PENDING, tracker.getMaxPending());
+            assertTrue(tracker.isEnabled());
+        } finally {
+            System.clearProperty(RpcTracker.TIMEOUT_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        System.setProperty(RpcTracker.ENABLED_PROPERTY, "false");
+        try {
+            assertFalse(RpcTracker.fromSystemProperties().isEnabled());
+        } finally {
+            System.clearProperty(RpcTracker.ENABLED_PROPERTY);
+        }
+    }
+}
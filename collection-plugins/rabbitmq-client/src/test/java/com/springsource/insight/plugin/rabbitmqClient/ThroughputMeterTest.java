@@ -0,0 +1,204 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.operation.OperationMap;
+
+public class ThroughputMeterTest {
+    // well past the initial (zero) bucket seconds - see ThroughputMeter#currentSecond
+    private static final long START = 1000L;
+
+    @Test
+    public void testSlidingWindows() {
+        ThroughputMeter meter = new ThroughputMeter();
+        // 10 msgs/sec of 100 bytes during the last 30 seconds
+        for (long second = START - 30L; second < START; second++) {
+            for (int i = 0; i < 10; i++) {
+                meter.record(second, i % ThroughputMeter.STRIPES, 100L, false);
+            }
+        }
+
+        long[] rates = meter.getRates(START);
+        assertEquals(10L, rate(rates, 0, ThroughputMeter.MESSAGES));
+        assertEquals(1000L, rate(rates, 0, ThroughputMeter.BYTES));
+        assertEquals(10L, rate(rates, 1, ThroughputMeter.MESSAGES));
+        assertEquals(1000L, rate(rates, 1, ThroughputMeter.BYTES));
+        assertEquals(5L, rate(rates, 2, ThroughputMeter.MESSAGES));
+        assertEquals(500L, rate(rates, 2, ThroughputMeter.BYTES));
+    }
+
+    @Test
+    public void testCurrentSecondExcluded() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START, 0, 100L, false);
+        assertEquals(0L, rate(meter.getRates(START), 0, ThroughputMeter.MESSAGES));
+        assertEquals(1L, rate(meter.getRates(START + 1L), 0, ThroughputMeter.MESSAGES));
+    }
+
+    @Test
+    public void testBucketRecycled() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START, 0, 100L, false);
+        // same bucket a whole ring later
+        long later = START + ThroughputMeter.BUCKETS;
+        meter.record(later, 0, 50L, false);
+        // late update of the overwritten second is dropped
+        meter.record(START, 0, 100L, false);
+
+        long[] rates = meter.getRates(later + 1L);
+        assertEquals(1L, rate(rates, 0, ThroughputMeter.MESSAGES));
+        assertEquals(50L, rate(rates, 0, ThroughputMeter.BYTES));
+    }
+
+    @Test
+    public void testExpiredSeconds() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START, 0, 100L, false);
+        long[] rates = meter.getRates(START + 61L);
+        for (long rate : rates) {
+            assertEquals(0L, rate);
+        }
+    }
+
+    @Test
+    public void testRatesComputedOncePerSecond() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START - 1L, 0, 100L, false);
+        long[] rates = meter.getRates(START);
+        meter.record(START - 1L, 0, 100L, false);
+        assertSame(rates, meter.getRates(START));
+        assertEquals(20L, rate(meter.getRates(START + 1L), 1, ThroughputMeter.BYTES));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final ThroughputMeter meter = new ThroughputMeter();
+        final int threads = 8;
+        final int messages = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        // the buckets are recycled up-front, so no update is lost to a racing recycle
+        for (int stripe = 0; stripe < ThroughputMeter.STRIPES; stripe++) {
+            meter.record(START, stripe, 0L, false);
+        }
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < messages; i++) {
+                            meter.record(START, 10L);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "meter-" + t).start();
+        }
+        done.await();
+
+        long[] rates = meter.getRates(START + 1L);
+        assertEquals(threads * messages + ThroughputMeter.STRIPES, rate(rates, 0, ThroughputMeter.MESSAGES));
+        assertEquals(threads * messages * 10L, rate(rates, 0, ThroughputMeter.BYTES));
+    }
+
+    @Test
+    public void testApplyTo() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START - 1L, 0, 100L, false);
+        Operation op = meter.applyTo(new Operation(), START);
+        OperationMap map = op.get(ThroughputMeter.THROUGHPUT_MAP, OperationMap.class);
+        assertNotNull(map);
+        for (int window : ThroughputMeter.WINDOWS) {
+            assertNotNull(map.get("msgs" + window + "s", Long.class));
+            assertNotNull(map.get("bytes" + window + "s", Long.class));
+        }
+        assertEquals(Long.valueOf(100L), map.get("bytes1s", Long.class));
+    }
+
+    @Test
+    public void testPublishOncePerInterval() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.record(START - 2L, 0, 100L, false);
+        meter.record(START - 1L, 1, 50L, true);
+        meter.record(START, 0, 10L, false);     // current second - not complete yet
+
+        long[] totals = meter.publish(START);
+        assertNotNull(totals);
+        assertEquals(2L, totals[ThroughputMeter.MESSAGES]);
+        assertEquals(150L, totals[ThroughputMeter.BYTES]);
+        assertEquals(1L, totals[ThroughputMeter.REDELIVERED]);
+
+        // claimed until the interval elapses
+        assertNull(meter.publish(START + ThroughputMeter.PUBLISH_SECONDS - 1L));
+        meter.record(START + 1L, 0, 10L, false);
+        totals = meter.publish(START + ThroughputMeter.PUBLISH_SECONDS);
+        assertNotNull(totals);
+        // the current second left out of the first publication is not lost
+        assertEquals(2L, totals[ThroughputMeter.MESSAGES]);
+        assertEquals(20L, totals[ThroughputMeter.BYTES]);
+    }
+
+    @Test
+    public void testPublishInterval() {
+        ThroughputMeter meter = new ThroughputMeter();
+        Operation op = meter.applyTo(new Operation(), START);
+        assertNotNull(op.get(ThroughputMeter.INTERVAL_MAP, OperationMap.class));
+
+        op = meter.applyTo(new Operation(), START + 1L);
+        assertNotNull(op.get(ThroughputMeter.THROUGHPUT_MAP, OperationMap.class));
+        assertNull(op.get(ThroughputMeter.INTERVAL_MAP, OperationMap.class));
+    }
+
+    @Test
+    public void testRedeliveries() {
+        ThroughputMeter meter = new ThroughputMeter();
+        for (int i = 0; i < 10; i++) {
+            meter.record(START - 1L, 0, 100L, (i % 5) == 0);
+        }
+
+        long[] rates = meter.getRates(START);
+        assertEquals(10L, rate(rates, 0, ThroughputMeter.MESSAGES));
+        assertEquals(2L, rate(rates, 0, ThroughputMeter.REDELIVERED));
+        assertEquals(0L, rate(rates, 1, ThroughputMeter.REDELIVERED));
+    }
+
+    @Test
+    public void testRegistry() {
+        ThroughputMeter meter = ThroughputMeter.forExchange("testRegistry");
+        assertNotNull(meter);
+        assertSame(meter, ThroughputMeter.forExchange("testRegistry"));
+        assertTrue(meter != ThroughputMeter.forQueue("testRegistry"));
+        assertNotNull(ThroughputMeter.forExchange(null));
+        assertSame(ThroughputMeter.forExchange(null), ThroughputMeter.forExchange(""));
+        assertTrue(ThroughputMeter.currentSecond() >= ThroughputMeter.BUCKETS);
+    }
+
+    private static long rate(long[] rates, int window, int counter) {
+        return rates[window * ThroughputMeter.COUNTERS.length + counter];
+    }
+}
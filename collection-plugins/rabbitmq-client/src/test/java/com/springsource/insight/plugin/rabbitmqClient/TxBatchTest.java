@@ -0,0 +1,99 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.rabbitmqClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class TxBatchTest {
+    private static final long MSEC = 1000000L;
+
+    @Test
+    public void testSingleExchangeBatch() {
+        TxBatch batch = new TxBatch();
+        batch.published("exchange", "key", 10, 5L * MSEC);
+        batch.published("exchange", "key", 20, 6L * MSEC);
+        assertEquals(2, batch.getMessageCount());
+        assertEquals(30L, batch.getTotalBytes());
+
+        Operation op = batch.applyTo(new Operation(), 15L * MSEC);
+        assertEquals(Integer.valueOf(2), op.get("messageCount", Integer.class));
+        assertEquals(Long.valueOf(30L), op.get("totalBytes", Long.class));
+        assertEquals(Long.valueOf(10L), op.get("batchTime", Long.class));
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertEquals("key", op.get("routingKey", String.class));
+
+        // reported batches are reset only when their transaction ends
+        assertEquals(2, batch.getMessageCount());
+        batch.reset();
+        assertEquals(0, batch.getMessageCount());
+        assertEquals(0L, batch.getTotalBytes());
+    }
+
+    @Test
+    public void testMixedBatch() {
+        TxBatch batch = new TxBatch();
+        batch.published("exchange", "key1", 10, 0L);
+        batch.published("exchange", "key2", 10, 0L);
+        batch.published("exchange", "key1", 10, 0L);
+
+        Operation op = batch.applyTo(new Operation(), 0L);
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertNull(op.get("routingKey"));
+        batch.reset();
+
+        batch.published("exchange1", "key", 10, 0L);
+        batch.published("exchange2", "key", 10, 0L);
+        op = batch.applyTo(new Operation(), 0L);
+        assertNull(op.get("exchange"));
+        assertEquals("key", op.get("routingKey", String.class));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        Operation op = new TxBatch().applyTo(new Operation(), 0L);
+        assertEquals(Integer.valueOf(0), op.get("messageCount", Integer.class));
+        assertNull(op.get("batchTime"));
+        assertNull(op.get("exchange"));
+    }
+
+    @Test
+    public void testForChannel() {
+        Channel channel = mock(Channel.class);
+        assertNull(TxBatch.forChannel(channel, false));
+        TxBatch batch = TxBatch.forChannel(channel, true);
+        assertNotNull(batch);
+        assertSame(batch, TxBatch.forChannel(channel, false));
+
+        ArgumentCaptor<ShutdownListener> captor = ArgumentCaptor.forClass(ShutdownListener.class);
+        verify(channel).addShutdownListener(captor.capture());
+        captor.getValue().shutdownCompleted(null);
+        assertNull(TxBatch.forChannel(channel, false));
+    }
+}
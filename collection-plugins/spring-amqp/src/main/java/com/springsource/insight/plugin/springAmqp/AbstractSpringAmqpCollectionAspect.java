@@ -0,0 +1,30 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.springAmqp;
+
+import org.aspectj.lang.JoinPoint;
+
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.strategies.BasicCollectionAspectProperties;
+import com.springsource.insight.collection.strategies.CollectionAspectProperties;
+
+public abstract class AbstractSpringAmqpCollectionAspect extends OperationCollectionAspectSupport {
+    protected static final CollectionAspectProperties aspectProperties=new BasicCollectionAspectProperties(false);
+    protected static final boolean collect (JoinPoint.StaticPart staticPart) {
+        return strategies.collect(aspectProperties, staticPart);
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.springAmqp;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.springsource.insight.intercept.metrics.AbstractMetricsGenerator;
+import com.springsource.insight.intercept.metrics.MetricsBag;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.resource.ResourceKey;
+import com.springsource.insight.intercept.trace.Frame;
+import com.springsource.insight.intercept.trace.Trace;
+
+abstract class AbstractSpringAmqpMetricsGenerator extends AbstractMetricsGenerator {
+	public static final String COUNT_SUFFIX = ":type=counter";
+	/**
+	 * Prefix of the bucket names - followed by the bucket upper bound
+	 */
+	public static final String BUCKET_PREFIX = "le";
+	static final int NUM_BUCKETS = 32;
+
+	private final String   metricKey;
+
+	AbstractSpringAmqpMetricsGenerator(SpringAmqpPluginOperationType opType) {
+		super(opType.getOperationType());
+		metricKey = opType.getOperationType().getName() + COUNT_SUFFIX;
+	}
+
+	@Override
+	protected Collection<MetricsBag> addExtraEndPointMetrics(Trace trace, ResourceKey resourceKey, Collection<Frame> externalFrames) {
+		if ((externalFrames == null) || externalFrames.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		MetricsBag    mb=MetricsBag.create(resourceKey, trace.getRange());
+		addCounterMetricToBag(trace, mb, createMetricKey(), externalFrames.size());
+		addExtraCounters(trace, externalFrames, mb);
+		return Collections.singletonList(mb);
+	}
+
+	@Override
+	protected void addExtraExternalResourceMetrics(Trace trace,  Frame opTypeFrame, MetricsBag mb) {
+		addCounterMetricToBag(trace, mb, createMetricKey(), 1);
+		addExtraCounters(trace, Collections.singletonList(opTypeFrame), mb);
+	}
+
+	private void addExtraCounters(Trace trace, Collection<Frame> frames, MetricsBag mb) {
+		Map<String, Integer> counters = sumExtraCounters(frames);
+		for (Map.Entry<String, Integer> ce : counters.entrySet()) {
+			addCounterMetricToBag(trace, mb, ce.getKey(), ce.getValue().intValue());
+		}
+	}
+
+	/**
+	 * @param frames The reported {@link Frame}s
+	 * @return A {@link Map} of the extra counters of the frames operations -
+	 * summed by key, so that each counter is added once to the bag
+	 */
+	Map<String, Integer> sumExtraCounters(Collection<Frame> frames) {
+		Map<String, Integer> sums = new LinkedHashMap<String, Integer>();
+		for (Frame frame : frames) {
+			Map<String, Integer> counters = getExtraCounters(opType.getName(), frame.getOperation());
+			for (Map.Entry<String, Integer> ce : counters.entrySet()) {
+				String key = ce.getKey();
+				Integer sum = sums.get(key);
+				long total = ce.getValue().longValue() + ((sum == null) ? 0L : sum.longValue());
+				sums.put(key, Integer.valueOf((int) Math.min(total, Integer.MAX_VALUE)));
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * @param opTypeName The operation type name used as the keys prefix
+	 * @param op The reported {@link Operation} - may be <code>null</code>
+	 * @return A {@link Map} of additional counter metric keys and their values
+	 */
+	abstract Map<String, Integer> getExtraCounters(String opTypeName, Operation op);
+
+	@Override
+	protected List<Frame> getExternalFramesForMetricGeneration(Trace trace) {
+		return trace.getLastFramesOfType(opType);
+	}
+
+	/**
+	 * @param value The counted value
+	 * @return The name of the power-of-2 bucket holding the value - i.e.,
+	 * bucket <code>le<I>2<sup>i</sup></I></code> holds the values in the
+	 * range (2<sup>i-1</sup>, 2<sup>i</sup>]
+	 */
+	static String bucketName(long value) {
+		int bucket = 0;
+		if (value > 1L) {
+			// ceil(log2(value))
+			bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(value - 1L), NUM_BUCKETS - 1);
+		}
+		return BUCKET_PREFIX + (1L << bucket);
+	}
+
+	/**
+	 * Counts a value in its power-of-2 bucket - e.g.,
+	 * <code>prefix + "le16" + unit + ":type=counter"</code>. Unlike the value
+	 * itself, the bucket counters can be summed over any period.
+	 * @param counters The counters {@link Map} to update
+	 * @param prefix The counter keys prefix
+	 * @param unit The bucket bounds unit suffix
+	 * @param value The counted value - ignored if <code>null</code>
+	 * @param count The number of times the value is counted
+	 */
+	static void addBucketCounter(Map<String, Integer> counters, String prefix, String unit, Number value, int count) {
+		if (value != null) {
+			counters.put(prefix + bucketName(value.longValue()) + unit + COUNT_SUFFIX, Integer.valueOf(count));
+		}
+	}
+
+	/**
+	 * @param counters The counters {@link Map} to update
+	 * @param name The counter name - without the type suffix
+	 * @param value The value to be added to the counter - ignored if <code>null</code>
+	 */
+	static void addTotalCounter(Map<String, Integer> counters, String name, Number value) {
+		if (value != null) {
+			long total = Math.max(0L, value.longValue());
+			counters.put(name + COUNT_SUFFIX, Integer.valueOf((int) Math.min(total, Integer.MAX_VALUE)));
+		}
+	}
+
+	final String createMetricKey() {
+		return metricKey;
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+/**
+ * Accumulates the time spent by the current thread in Spring AMQP message
+ * conversion (<code>MessageConverter#toMessage/fromMessage</code>) while a
+ * collected <code>RabbitTemplate</code> or listener operation is in progress,
+ * so that it can be reported separately from the broker call/listener time.
+ * Operations may be nested (e.g., a listener replying via a template) - each
+ * one is charged with the conversions that took place during its own extent.
+ * <B>Note:</B> not thread-safe - instances are thread-confined.
+ */
+final class ConversionTimer {
+    private static final ThreadLocal<ConversionTimer> timers = new ThreadLocal<ConversionTimer>() {
+        @Override
+        protected ConversionTimer initialValue() {
+            return new ConversionTimer();
+        }
+    };
+
+    // accumulated conversion time at the start of each in-progress operation
+    private long[] marks = new long[4];
+    private int depth;
+    // nested conversions - e.g., a converter delegating to another one
+    private int converting;
+    private long conversionStart;
+    private long conversionNanos;
+
+    ConversionTimer() {
+        super();
+    }
+
+    static ConversionTimer current() {
+        return timers.get();
+    }
+
+    /**
+     * @return <code>true</code> if the current thread is within a collected
+     * template/listener operation
+     */
+    static boolean isActive() {
+        return current().depth > 0;
+    }
+
+    /**
+     * Marks the start of a collected operation
+     */
+    void begin() {
+        if (depth == marks.length) {
+            long[] newMarks = new long[depth * 2];
+            System.arraycopy(marks, 0, newMarks, 0, depth);
+            marks = newMarks;
+        }
+
+        marks[depth] = conversionNanos;
+        depth++;
+    }
+
+    /**
+     * Marks the end of the innermost collected operation
+     * @return The conversion time (nanos) spent during the operation
+     * @throws IllegalStateException if no operation is in progress
+     */
+    long end() {
+        if (depth <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+
+        depth--;
+        long nanos = conversionNanos - marks[depth];
+        if (depth == 0) {
+            conversionNanos = 0L;   // nobody is interested in the total any more
+        }
+        return nanos;
+    }
+
+    void conversionStarted(long startTime) {
+        if (converting == 0) {
+            conversionStart = startTime;
+        }
+        converting++;
+    }
+
+    void conversionEnded(long endTime) {
+        if (converting <= 0) {
+            return;
+        }
+
+        converting--;
+        if (converting == 0) {
+            conversionNanos += Math.max(0L, endTime - conversionStart);
+        }
+    }
+
+    int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the listener invocations of a single Spring AMQP listener
+ * container - how many are executing concurrently vs. the configured number
+ * of concurrent consumers, and the consumers utilization - i.e., the busy time
+ * of the consumers as a percentage of their available time. The utilization is
+ * measured over fixed windows of {@link #WINDOW_NANOS} - a container whose
+ * utilization is close to 100% while all its consumers are active is
+ * under-provisioned. The stats of a container are kept in a field of the
+ * container itself - see {@link RabbitListenerContainerCollectionAspect}.
+ */
+final class ListenerContainerStats {
+    static final long WINDOW_NANOS = 10L * 1000L * 1000000L;
+    static final int DEFAULT_CONSUMERS = 1;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile int concurrentConsumers = DEFAULT_CONSUMERS;
+    // current window state - guarded by 'this'
+    private long windowStart;
+    private long busyNanos;
+    private int peakActive;
+    // utilization (%) of the last completed window - negative if none yet
+    private int lastUtilization = -1;
+
+    ListenerContainerStats(long now) {
+        windowStart = now;
+    }
+
+    int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    void setConcurrentConsumers(int consumers) {
+        concurrentConsumers = Math.max(consumers, DEFAULT_CONSUMERS);
+    }
+
+    /**
+     * @return Number of listener invocations currently in progress
+     */
+    int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Marks the start of a listener invocation
+     * @return Number of listener invocations in progress - including this one
+     */
+    int enter() {
+        int count = active.incrementAndGet();
+        synchronized (this) {
+            peakActive = Math.max(peakActive, count);
+        }
+        return count;
+    }
+
+    /**
+     * Marks the end of a listener invocation
+     * @param startTime The {@link System#nanoTime()} at which the invocation started
+     * @param endTime The {@link System#nanoTime()} at which the invocation ended
+     */
+    void exit(long startTime, long endTime) {
+        active.decrementAndGet();
+        synchronized (this) {
+            roll(endTime);
+            // an invocation that spans windows is charged to the one it ended in
+            busyNanos += Math.max(0L, endTime - startTime);
+        }
+    }
+
+    /**
+     * @return The peak number of concurrent listener invocations in the current window
+     */
+    synchronized int getPeakActive() {
+        return peakActive;
+    }
+
+    /**
+     * @param now The current {@link System#nanoTime()}
+     * @return The consumers utilization (%) over the last completed window - or
+     * over the current one if none completed yet
+     */
+    synchronized int getUtilization(long now) {
+        roll(now);
+        if (lastUtilization >= 0) {
+            return lastUtilization;
+        }
+        return utilization(busyNanos, now - windowStart);
+    }
+
+    private void roll(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NANOS) {
+            return;
+        }
+
+        // if more than a whole window went by the consumers have been idle since
+        lastUtilization = (elapsed < 2L * WINDOW_NANOS) ? utilization(busyNanos, elapsed) : 0;
+        windowStart = now;
+        busyNanos = 0L;
+        peakActive = active.get();
+    }
+
+    private int utilization(long busy, long elapsed) {
+        if (elapsed <= 0L) {
+            return 0;
+        }
+
+        // the busy time may exceed the available time if the configured consumers count is unknown
+        int consumers = Math.max(concurrentConsumers, peakActive);
+        long percent = (busy * 100L) / (elapsed * consumers);
+        return (int) Math.min(percent, 100L);
+    }
+}
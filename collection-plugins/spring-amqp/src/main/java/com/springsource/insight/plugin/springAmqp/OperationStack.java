@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.springAmqp;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * A thread-confined stack of in-progress {@link Operation}s along with the
+ * {@link System#nanoTime()} at which each was started. Backed by parallel
+ * arrays so that pushing/popping does not allocate. This is a trimmed copy
+ * of the rabbitmq-client plugin one - plugins cannot share code, and the
+ * template/listener operations nest the raw channel operations collected by
+ * that plugin. <B>Note:</B> not thread-safe.
+ */
+final class OperationStack {
+    private Operation[] operations = new Operation[4];
+    private long[] timestamps = new long[4];
+    private int size;
+
+    OperationStack() {
+        super();
+    }
+
+    /**
+     * @param op The {@link Operation} - may be <code>null</code> as a place holder
+     * for a call that is not being collected
+     * @param timestamp The {@link System#nanoTime()} at which the call started
+     */
+    void push(Operation op, long timestamp) {
+        if (size == operations.length) {
+            Operation[] newOps = new Operation[size * 2];
+            System.arraycopy(operations, 0, newOps, 0, size);
+            operations = newOps;
+
+            long[] newTimestamps = new long[size * 2];
+            System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+            timestamps = newTimestamps;
+        }
+
+        operations[size] = op;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    /**
+     * @return The start time of the top entry
+     * @throws IllegalStateException if the stack is empty
+     */
+    long peekTimestamp() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+        return timestamps[size - 1];
+    }
+
+    /**
+     * @return The top {@link Operation} (which may be <code>null</code>)
+     * @throws IllegalStateException if the stack is empty
+     */
+    Operation pop() {
+        if (size <= 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+
+        size--;
+        Operation op = operations[size];
+        operations[size] = null;    // don't hold on to it
+        return op;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the listener invocations count, reports the listener container
+ * active listeners and consumers utilization (%) as bucket counters - e.g.,
+ * <code>spring-amqp-listener.utilization.le64pct:type=counter</code> - and the
+ * total time (usec.) spent in message conversion vs. the listener itself
+ */
+public class RabbitListenerMetricsGenerator extends AbstractSpringAmqpMetricsGenerator {
+
+    RabbitListenerMetricsGenerator() {
+        super(SpringAmqpPluginOperationType.LISTENER);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(String opTypeName, Operation op) {
+        return getListenerCounters(opTypeName, op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The listener {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the counter metric keys and their values
+     */
+    static Map<String, Integer> getListenerCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        addBucketCounter(counters, opTypeName + ".utilization.", "pct", op.get("utilization", Number.class), 1);
+        addBucketCounter(counters, opTypeName + ".activeListeners.", "", op.get("activeListeners", Number.class), 1);
+        addTotalCounter(counters, opTypeName + ".conversion.time", op.get("conversionTime", Number.class));
+        addTotalCounter(counters, opTypeName + ".listener.time", op.get("listenerTime", Number.class));
+        return counters;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+/**
+ * In addition to the <code>RabbitTemplate</code> calls count, reports the total
+ * time (usec.) spent in message conversion vs. the broker call - e.g.,
+ * <code>spring-amqp-template.conversion.time:type=counter</code>
+ */
+public class RabbitTemplateMetricsGenerator extends AbstractSpringAmqpMetricsGenerator {
+
+    RabbitTemplateMetricsGenerator() {
+        super(SpringAmqpPluginOperationType.TEMPLATE);
+    }
+
+    @Override
+    Map<String, Integer> getExtraCounters(String opTypeName, Operation op) {
+        return getTemplateCounters(opTypeName, op);
+    }
+
+    /**
+     * @param opTypeName The operation type name used as the keys prefix
+     * @param op The template {@link Operation} - may be <code>null</code>
+     * @return A {@link Map} of the counter metric keys and their values
+     */
+    static Map<String, Integer> getTemplateCounters(String opTypeName, Operation op) {
+        Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        if (op == null) {
+            return counters;
+        }
+
+        addTotalCounter(counters, opTypeName + ".conversion.time", op.get("conversionTime", Number.class));
+        addTotalCounter(counters, opTypeName + ".broker.time", op.get("brokerTime", Number.class));
+        return counters;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.springAmqp;
+
+import com.springsource.insight.intercept.operation.OperationType;
+
+enum SpringAmqpPluginOperationType {
+    TEMPLATE("spring-amqp-template", "RabbitTemplate"),
+    LISTENER("spring-amqp-listener", "Listener");
+
+    private OperationType operationType;
+    private String label;
+
+    @SuppressWarnings("hiding")
+    private SpringAmqpPluginOperationType(String operationTypeName, String label) {
+        this.operationType = OperationType.valueOf(operationTypeName);
+        this.label = label;
+    }
+
+    public OperationType getOperationType() {
+        return operationType;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,32 @@
+<#ftl strip_whitespace=true>
+<#import "/insight-1.0.ftl" as insight />
+
+<#if operation.listener??>
+	<@insight.group label="Listener">
+	    <@insight.entry name="Listener" value=operation.listener />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Delivery Tag" value=operation.deliveryTag if=operation.deliveryTag?? />
+	    <@insight.entry name="Body Length" value=operation.bytes if=operation.bytes?? />
+	    <@insight.entry name="Conversion Time (us)" value=operation.conversionTime if=operation.conversionTime?? />
+	    <@insight.entry name="Listener Time (us)" value=operation.listenerTime if=operation.listenerTime?? />
+	</@insight.group>
+	<@insight.group label="Listener Container">
+	    <@insight.entry name="Concurrent Consumers" value=operation.concurrentConsumers />
+	    <@insight.entry name="Active Listeners" value=operation.activeListeners />
+	    <@insight.entry name="Peak Active Listeners" value=operation.peakActiveListeners if=operation.peakActiveListeners?? />
+	    <@insight.entry name="Consumers Utilization (%)" value=operation.utilization if=operation.utilization?? />
+	</@insight.group>
+<#else>
+	<@insight.group label="RabbitTemplate">
+	    <@insight.entry name="Method" value=operation.method />
+	    <@insight.entry name="Exchange" value=operation.exchange if=operation.exchange?? />
+	    <@insight.entry name="Routing Key" value=operation.routingKey if=operation.routingKey?? />
+	    <@insight.entry name="Queue" value=operation.queue if=operation.queue?? />
+	    <@insight.entry name="Body Length" value=operation.bytes if=operation.bytes?? />
+	    <@insight.entry name="Received" value=operation.received if=operation.received?? />
+	    <@insight.entry name="Reply Body Length" value=operation.replyBytes if=operation.replyBytes?? />
+	    <@insight.entry name="Conversion Time (us)" value=operation.conversionTime />
+	    <@insight.entry name="Broker Time (us)" value=operation.brokerTime if=operation.brokerTime?? />
+	</@insight.group>
+</#if>
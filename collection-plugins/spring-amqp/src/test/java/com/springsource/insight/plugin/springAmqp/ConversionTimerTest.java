@@ -0,0 +1,102 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConversionTimerTest {
+
+    @Test
+    public void testSingleOperation() {
+        ConversionTimer timer = new ConversionTimer();
+        timer.begin();
+        timer.conversionStarted(10L);
+        timer.conversionEnded(25L);
+        timer.conversionStarted(30L);
+        timer.conversionEnded(35L);
+        assertEquals(20L, timer.end());
+        assertEquals(0, timer.getDepth());
+    }
+
+    @Test
+    public void testNestedOperations() {
+        ConversionTimer timer = new ConversionTimer();
+        timer.begin();
+        timer.conversionStarted(0L);
+        timer.conversionEnded(10L);
+
+        timer.begin();  // e.g., a listener replying via a template
+        timer.conversionStarted(20L);
+        timer.conversionEnded(23L);
+        assertEquals(3L, timer.end());
+
+        assertEquals(13L, timer.end());
+    }
+
+    @Test
+    public void testNestedConversions() {
+        ConversionTimer timer = new ConversionTimer();
+        timer.begin();
+        timer.conversionStarted(0L);
+        timer.conversionStarted(2L);    // delegating converter
+        timer.conversionEnded(5L);
+        timer.conversionEnded(7L);
+        assertEquals(7L, timer.end());
+    }
+
+    @Test
+    public void testUnbalancedConversionEnd() {
+        ConversionTimer timer = new ConversionTimer();
+        timer.begin();
+        timer.conversionEnded(7L);
+        assertEquals(0L, timer.end());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testEndWithoutBegin() {
+        new ConversionTimer().end();
+    }
+
+    @Test
+    public void testDeepNesting() {
+        ConversionTimer timer = new ConversionTimer();
+        for (int i = 0; i < 10; i++) {
+            timer.begin();
+        }
+        assertEquals(10, timer.getDepth());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0L, timer.end());
+        }
+    }
+
+    @Test
+    public void testIsActive() {
+        assertFalse(ConversionTimer.isActive());
+        ConversionTimer.current().begin();
+        try {
+            assertTrue(ConversionTimer.isActive());
+        } finally {
+            ConversionTimer.current().end();
+        }
+        assertFalse(ConversionTimer.isActive());
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ListenerContainerStatsTest {
+    private static final long WINDOW = ListenerContainerStats.WINDOW_NANOS;
+
+    @Test
+    public void testConcurrency() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        assertEquals(1, stats.enter());
+        assertEquals(2, stats.enter());
+        stats.exit(0L, 10L);
+        assertEquals(1, stats.getActive());
+        assertEquals(2, stats.getPeakActive());
+        stats.exit(0L, 10L);
+        assertEquals(0, stats.getActive());
+    }
+
+    @Test
+    public void testUtilization() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        stats.setConcurrentConsumers(4);
+        // 2 consumers busy for the whole window, the other 2 idle
+        stats.enter();
+        stats.enter();
+        stats.exit(0L, WINDOW - 1L);
+        stats.exit(0L, WINDOW - 1L);
+        assertEquals(50, stats.getUtilization(WINDOW - 1L));
+        // the completed window (slightly longer than the nominal one) is reported
+        assertEquals(49, stats.getUtilization(WINDOW + 5L));
+    }
+
+    @Test
+    public void testSaturated() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        stats.setConcurrentConsumers(1);
+        stats.enter();
+        stats.exit(0L, WINDOW / 2L);
+        stats.enter();
+        stats.exit(WINDOW / 2L, WINDOW - 1L);
+        assertEquals(99, stats.getUtilization(WINDOW + 1L));
+    }
+
+    @Test
+    public void testIdleWindows() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        stats.enter();
+        stats.exit(0L, WINDOW / 2L);
+        assertEquals(0, stats.getUtilization(3L * WINDOW));
+    }
+
+    @Test
+    public void testUnknownConsumersCount() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        // more concurrent invocations than the (default) configured consumers
+        stats.enter();
+        stats.enter();
+        stats.exit(0L, WINDOW / 2L);
+        stats.exit(0L, WINDOW / 2L);
+        assertEquals(2, stats.getPeakActive());
+        assertEquals(100, stats.getUtilization(WINDOW / 2L));
+    }
+
+    @Test
+    public void testInvalidConsumersCount() {
+        ListenerContainerStats stats = new ListenerContainerStats(0L);
+        stats.setConcurrentConsumers(0);
+        assertEquals(ListenerContainerStats.DEFAULT_CONSUMERS, stats.getConcurrentConsumers());
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import com.rabbitmq.client.Channel;
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitListenerContainerCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testExecuteListener() throws Throwable {
+        MockContainer container = new MockContainer(new ConvertingListener(false));
+        container.setConcurrentConsumers(3);
+        container.deliver(createMessage(7L));
+
+        Operation op = assertListenerOperation(container);
+        assertEquals("Listener ConvertingListener", op.getLabel());
+        assertEquals(ConvertingListener.class.getName(), op.get("listener", String.class));
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertEquals("routingKey", op.get("routingKey", String.class));
+        assertEquals(Long.valueOf(7L), op.get("deliveryTag", Long.class));
+        assertEquals(Integer.valueOf("payload".length()), op.get("bytes", Integer.class));
+        assertEquals(Integer.valueOf(3), op.get("concurrentConsumers", Integer.class));
+        assertEquals(Integer.valueOf(1), op.get("activeListeners", Integer.class));
+    }
+
+    @Test
+    public void testConcurrentConsumersChange() throws Throwable {
+        MockContainer container = new MockContainer(new ConvertingListener(false));
+        container.setConcurrentConsumers(2);
+        container.deliver(createMessage(1L));
+        assertEquals(Integer.valueOf(2), assertListenerOperation(container).get("concurrentConsumers", Integer.class));
+
+        // read from the container on each invocation
+        container.setConcurrentConsumers(5);
+        container.deliver(createMessage(2L));
+        assertEquals(Integer.valueOf(5), assertListenerOperation(container).get("concurrentConsumers", Integer.class));
+    }
+
+    @Test
+    public void testStatsPerContainer() {
+        MockContainer container = new MockContainer(new ConvertingListener(false));
+        ListenerContainerStats stats = RabbitListenerContainerCollectionAspect.getStats(container);
+        assertSame(stats, RabbitListenerContainerCollectionAspect.getStats(container));
+        assertEquals(ListenerContainerStats.DEFAULT_CONSUMERS, stats.getConcurrentConsumers());
+
+        MockContainer other = new MockContainer(new ConvertingListener(false));
+        assertNotSame(stats, RabbitListenerContainerCollectionAspect.getStats(other));
+    }
+
+    @Test
+    public void testFailingListener() throws Throwable {
+        MockContainer container = new MockContainer(new ConvertingListener(true));
+        try {
+            container.deliver(createMessage(1L));
+            fail("Unexpected listener success");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertListenerOperation(container);
+    }
+
+    private Operation assertListenerOperation(MockContainer container) {
+        assertTrue(RabbitListenerContainerCollectionAspect.opHolder.get().isEmpty());
+        assertFalse(ConversionTimer.isActive());
+        assertEquals(0, RabbitListenerContainerCollectionAspect.getStats(container).getActive());
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(SpringAmqpPluginOperationType.LISTENER.getOperationType(), op.getType());
+        assertNotNull(op.get("conversionTime", Long.class));
+        assertNotNull(op.get("listenerTime", Long.class));
+        assertNotNull(op.get("utilization", Integer.class));
+        return op;
+    }
+
+    private static Message createMessage(long deliveryTag) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        props.setReceivedExchange("exchange");
+        props.setReceivedRoutingKey("routingKey");
+        props.setDeliveryTag(deliveryTag);
+        return new Message("payload".getBytes(), props);
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitListenerContainerCollectionAspect.aspectOf();
+    }
+
+    static final class ConvertingListener implements MessageListener {
+        private final SimpleMessageConverter converter = new SimpleMessageConverter();
+        private final boolean fail;
+
+        ConvertingListener(boolean shouldFail) {
+            fail = shouldFail;
+        }
+
+        public void onMessage(Message message) {
+            Object payload = converter.fromMessage(message);
+            if (fail) {
+                throw new IllegalStateException("Cannot handle " + payload);
+            }
+        }
+    }
+
+    static final class MockContainer extends SimpleMessageListenerContainer {
+        MockContainer(MessageListener listener) {
+            super();
+            setMessageListener(listener);
+        }
+
+        void deliver(Message message) throws Throwable {
+            executeListener(null, message);
+        }
+
+        @Override
+        protected void executeListener(Channel channel, Message message) throws Throwable {
+            ((MessageListener) getMessageListener()).onMessage(message);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.application.ApplicationName;
+import com.springsource.insight.intercept.endpoint.EndPointAnalysis;
+import com.springsource.insight.intercept.endpoint.EndPointName;
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+import com.springsource.insight.intercept.trace.FrameBuilder;
+import com.springsource.insight.intercept.trace.SimpleFrameBuilder;
+import com.springsource.insight.intercept.trace.Trace;
+import com.springsource.insight.intercept.trace.TraceId;
+
+public class RabbitListenerEndPointAnalyzerTest {
+    private final ApplicationName app = ApplicationName.valueOf("app");
+    private final RabbitListenerEndPointAnalyzer analyzer = new RabbitListenerEndPointAnalyzer();
+
+    @Test
+    public void testLocateEndPoint() {
+        Operation op = RabbitListenerContainerCollectionAspect.createOperation(new Object(), null);
+        Trace trace = createTrace(op);
+
+        EndPointAnalysis analysis = analyzer.locateEndPoint(trace);
+        assertEquals(EndPointName.valueOf("Listener Object"), analysis.getEndPointName());
+        assertEquals(Object.class.getName(), analysis.getExample());
+    }
+
+    @Test
+    public void testNoListenerFrame() {
+        assertNull(analyzer.locateEndPoint(createTrace(new Operation())));
+    }
+
+    private Trace createTrace(Operation op) {
+        FrameBuilder b = new SimpleFrameBuilder();
+        b.enter(op);
+        Frame frame = b.exit();
+        return Trace.newInstance(app, TraceId.valueOf("0"), frame);
+    }
+}
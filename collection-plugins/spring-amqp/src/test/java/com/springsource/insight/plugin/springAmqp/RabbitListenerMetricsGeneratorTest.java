@@ -0,0 +1,89 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+import com.springsource.insight.intercept.trace.Frame;
+
+public class RabbitListenerMetricsGeneratorTest extends AbstractSpringAmqpMetricsGeneratorTest {
+
+	public RabbitListenerMetricsGeneratorTest() {
+		super(SpringAmqpPluginOperationType.LISTENER);
+	}
+
+	@Override
+	protected AbstractSpringAmqpMetricsGenerator getMetricsGenerator() {
+		return new RabbitListenerMetricsGenerator();
+	}
+
+	@Test
+	public void testListenerCounters() {
+		String prefix = SpringAmqpPluginOperationType.LISTENER.getOperationType().getName();
+		Operation op = new Operation()
+				.type(SpringAmqpPluginOperationType.LISTENER.getOperationType())
+				.put("utilization", 85)
+				.put("activeListeners", 2)
+				.put("peakActiveListeners", 4)
+				.put("concurrentConsumers", 4)
+				.put("conversionTime", 120L)
+				.put("listenerTime", 3500L);
+
+		Map<String, Integer> counters = RabbitListenerMetricsGenerator.getListenerCounters(prefix, op);
+		assertEquals(4, counters.size());
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".utilization.le128pct" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(1), counters.get(prefix + ".activeListeners.le2" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(120), counters.get(prefix + ".conversion.time" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(3500), counters.get(prefix + ".listener.time" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testCountersSummedAcrossFrames() {
+		String prefix = SpringAmqpPluginOperationType.LISTENER.getOperationType().getName();
+		Frame first = mockListenerFrame(100L), second = mockListenerFrame(250L);
+		Map<String, Integer> counters = getMetricsGenerator().sumExtraCounters(Arrays.asList(first, second));
+		assertEquals(Integer.valueOf(350), counters.get(prefix + ".listener.time" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(2), counters.get(prefix + ".activeListeners.le2" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoCounters() {
+		String prefix = SpringAmqpPluginOperationType.LISTENER.getOperationType().getName();
+		assertTrue(RabbitListenerMetricsGenerator.getListenerCounters(prefix, null).isEmpty());
+		assertTrue(RabbitListenerMetricsGenerator.getListenerCounters(prefix, new Operation()).isEmpty());
+	}
+
+	private static Frame mockListenerFrame(long listenerTime) {
+		Operation op = new Operation()
+				.type(SpringAmqpPluginOperationType.LISTENER.getOperationType())
+				.put("activeListeners", 2)
+				.put("listenerTime", listenerTime);
+		Frame frame = mock(Frame.class);
+		when(frame.getOperation()).thenReturn(op);
+		return frame;
+	}
+}
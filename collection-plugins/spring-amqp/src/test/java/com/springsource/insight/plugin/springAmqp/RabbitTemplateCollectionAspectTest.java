@@ -0,0 +1,130 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.springsource.insight.collection.OperationCollectionAspectSupport;
+import com.springsource.insight.collection.OperationCollectionAspectTestSupport;
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitTemplateCollectionAspectTest extends OperationCollectionAspectTestSupport {
+
+    @Test
+    public void testConvertAndSend() {
+        MockTemplate template = new MockTemplate();
+        template.convertAndSend("exchange", "routingKey", "hello");
+        assertNotNull(template.lastSent);
+
+        // the delegated send is not collected by itself
+        Operation op = assertTemplateOperation("convertAndSend");
+        assertEquals("exchange", op.get("exchange", String.class));
+        assertEquals("routingKey", op.get("routingKey", String.class));
+        assertNull(op.get("bytes"));
+    }
+
+    @Test
+    public void testSend() {
+        MockTemplate template = new MockTemplate();
+        template.send("routingKey", new Message(new byte[12], new MessageProperties()));
+
+        Operation op = assertTemplateOperation("send");
+        assertNull(op.get("exchange"));
+        assertEquals("routingKey", op.get("routingKey", String.class));
+        assertEquals(Integer.valueOf(12), op.get("bytes", Integer.class));
+        assertEquals(Long.valueOf(0L), op.get("conversionTime", Long.class));
+    }
+
+    @Test
+    public void testStringPayloadIsNotDestination() {
+        MockTemplate template = new MockTemplate();
+        template.convertAndSend((Object) "payload");
+
+        Operation op = assertTemplateOperation("convertAndSend");
+        assertNull(op.get("exchange"));
+        assertNull(op.get("routingKey"));
+    }
+
+    @Test
+    public void testReceiveAndConvert() {
+        MockTemplate template = new MockTemplate();
+        assertEquals("received", template.receiveAndConvert("queue"));
+
+        Operation op = assertTemplateOperation("receiveAndConvert");
+        assertEquals("queue", op.get("queue", String.class));
+        assertEquals(Boolean.TRUE, op.get("received", Boolean.class));
+    }
+
+    @Test
+    public void testReceive() {
+        MockTemplate template = new MockTemplate();
+        template.receive("queue");
+
+        Operation op = assertTemplateOperation("receive");
+        assertEquals(Integer.valueOf("received".length()), op.get("bytes", Integer.class));
+    }
+
+    private Operation assertTemplateOperation(String method) {
+        assertTrue(RabbitTemplateCollectionAspect.opHolder.get().isEmpty());
+        assertFalse(ConversionTimer.isActive());
+
+        Operation op = getLastEntered();
+        assertNotNull(op);
+        assertEquals(SpringAmqpPluginOperationType.TEMPLATE.getOperationType(), op.getType());
+        assertEquals("RabbitTemplate " + method, op.getLabel());
+        assertEquals(method, op.get("method", String.class));
+        assertNotNull(op.get("conversionTime", Long.class));
+        assertNotNull(op.get("brokerTime", Long.class));
+        return op;
+    }
+
+    @Override
+    public OperationCollectionAspectSupport getAspect() {
+        return RabbitTemplateCollectionAspect.aspectOf();
+    }
+
+    static final class MockTemplate extends RabbitTemplate {
+        Message lastSent;
+
+        MockTemplate() {
+            super();
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message) throws AmqpException {
+            lastSent = message;
+        }
+
+        @Override
+        public Message receive(String queueName) throws AmqpException {
+            MessageProperties props = new MessageProperties();
+            props.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+            return new Message("received".getBytes(), props);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.springsource.insight.plugin.springAmqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springsource.insight.intercept.operation.Operation;
+
+public class RabbitTemplateMetricsGeneratorTest extends AbstractSpringAmqpMetricsGeneratorTest {
+
+	public RabbitTemplateMetricsGeneratorTest() {
+		super(SpringAmqpPluginOperationType.TEMPLATE);
+	}
+
+	@Override
+	protected AbstractSpringAmqpMetricsGenerator getMetricsGenerator() {
+		return new RabbitTemplateMetricsGenerator();
+	}
+
+	@Test
+	public void testTemplateCounters() {
+		String prefix = SpringAmqpPluginOperationType.TEMPLATE.getOperationType().getName();
+		Operation op = new Operation()
+				.type(SpringAmqpPluginOperationType.TEMPLATE.getOperationType())
+				.put("conversionTime", 40L)
+				.put("brokerTime", 900L);
+
+		Map<String, Integer> counters = RabbitTemplateMetricsGenerator.getTemplateCounters(prefix, op);
+		assertEquals(2, counters.size());
+		assertEquals(Integer.valueOf(40), counters.get(prefix + ".conversion.time" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+		assertEquals(Integer.valueOf(900), counters.get(prefix + ".broker.time" + AbstractSpringAmqpMetricsGenerator.COUNT_SUFFIX));
+	}
+
+	@Test
+	public void testNoCounters() {
+		String prefix = SpringAmqpPluginOperationType.TEMPLATE.getOperationType().getName();
+		assertTrue(RabbitTemplateMetricsGenerator.getTemplateCounters(prefix, null).isEmpty());
+		assertTrue(RabbitTemplateMetricsGenerator.getTemplateCounters(prefix, new Operation()).isEmpty());
+	}
+}